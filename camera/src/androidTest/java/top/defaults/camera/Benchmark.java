@@ -0,0 +1,78 @@
+package top.defaults.camera;
+
+import android.app.Instrumentation;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Times the tasks of the benchmarks and reports their results as instrumentation status, shown
+ * by {@code am instrument} and Android Studio, and to logcat.
+ */
+final class Benchmark {
+
+    private static final String TAG = "Benchmark";
+    // not one of the codes of the test runner, which would take it for a test event
+    private static final int STATUS_RESULT = 2;
+
+    interface Task<E extends Exception> {
+        void run() throws E;
+    }
+
+    private Benchmark() {
+    }
+
+    /**
+     * Runs {@code task} {@code warmUp} times for the JIT first, then times it {@code iterations}
+     * times.
+     *
+     * @return The durations in nanoseconds, sorted.
+     */
+    static <E extends Exception> long[] measure(int warmUp, int iterations, Task<E> task) throws E {
+        for (int i = 0; i < warmUp; i++) {
+            task.run();
+        }
+        long[] nanos = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            task.run();
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos;
+    }
+
+    /**
+     * Reports the median and 90th percentile durations, in milliseconds.
+     */
+    static void reportDuration(String name, long[] sortedNanos) {
+        report(String.format(Locale.US, "%s: median %.3f ms, p90 %.3f ms", name,
+                median(sortedNanos) / 1e6, p90(sortedNanos) / 1e6));
+    }
+
+    /**
+     * Reports the median and 90th percentile throughputs, of tasks processing {@code megabytes}.
+     */
+    static void reportThroughput(String name, double megabytes, long[] sortedNanos) {
+        report(String.format(Locale.US, "%s: median %.0f MB/s, p90 %.0f MB/s", name,
+                megabytes / (median(sortedNanos) / 1e9), megabytes / (p90(sortedNanos) / 1e9)));
+    }
+
+    private static long median(long[] sortedNanos) {
+        return sortedNanos[sortedNanos.length / 2];
+    }
+
+    private static long p90(long[] sortedNanos) {
+        return sortedNanos[sortedNanos.length * 9 / 10];
+    }
+
+    private static void report(String result) {
+        Log.i(TAG, result);
+        Bundle status = new Bundle();
+        status.putString(Instrumentation.REPORT_KEY_STREAMRESULT, result + "\n");
+        InstrumentationRegistry.getInstrumentation().sendStatus(STATUS_RESULT, status);
+    }
+}
@@ -0,0 +1,104 @@
+package top.defaults.camera;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.media.ExifInterface;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares stamping a location into a picture while it is written, like {@link FileCaptureSink}
+ * does, with writing it then stamping it with {@link ExifInterface}, which rewrites the file.
+ */
+@RunWith(AndroidJUnit4.class)
+public class JpegSegmentSplicerBenchmark {
+
+    private static final int WARM_UP = 3;
+    private static final int ITERATIONS = 20;
+    private static final double LATITUDE = 48.858370;
+    private static final double LONGITUDE = 2.294481;
+
+    private ByteBuffer jpeg;
+    private File file;
+
+    @Before
+    public void encodePicture() {
+        // the size of a 12 megapixel camera picture, with some detail for the encoder
+        Bitmap bitmap = Bitmap.createBitmap(4032, 3024, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        for (int i = 0; i < 64; i++) {
+            canvas.drawColor(Color.rgb(i * 4, 255 - i * 4, i * 2));
+            canvas.clipRect(i * 31, i * 23, 4032 - i * 31, 3024 - i * 23);
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, 95, output);
+        bitmap.recycle();
+        byte[] data = output.toByteArray();
+        // like the buffers of the camera
+        jpeg = ByteBuffer.allocateDirect(data.length);
+        jpeg.put(data);
+        jpeg.flip();
+        file = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), "benchmark.jpg");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void stampLocation() throws IOException {
+        long[] plain = Benchmark.measure(WARM_UP, ITERATIONS, () -> write(null));
+
+        CaptureMetadata metadata = new CaptureMetadata().setLocation(LATITUDE, LONGITUDE);
+        long[] spliced = Benchmark.measure(WARM_UP, ITERATIONS, () -> write(metadata));
+
+        long[] exifInterface = Benchmark.measure(WARM_UP, ITERATIONS, () -> {
+            write(null);
+            ExifInterface exif = new ExifInterface(file.getPath());
+            exif.setAttribute(ExifInterface.TAG_GPS_LATITUDE, "48/1,51/1,30132/1000");
+            exif.setAttribute(ExifInterface.TAG_GPS_LATITUDE_REF, "N");
+            exif.setAttribute(ExifInterface.TAG_GPS_LONGITUDE, "2/1,17/1,40132/1000");
+            exif.setAttribute(ExifInterface.TAG_GPS_LONGITUDE_REF, "E");
+            exif.saveAttributes();
+        });
+
+        // both wrote the same location
+        double[] latLong = new double[2];
+        new ExifInterface(file.getPath()).getLatLong(latLong);
+        write(metadata);
+        double[] splicedLatLong = new double[2];
+        new ExifInterface(file.getPath()).getLatLong(splicedLatLong);
+        assertEquals(latLong[0], splicedLatLong[0], 1e-6);
+        assertEquals(latLong[1], splicedLatLong[1], 1e-6);
+
+        Benchmark.reportDuration("write only", plain);
+        Benchmark.reportDuration("spliced", spliced);
+        Benchmark.reportDuration("ExifInterface", exifInterface);
+    }
+
+    private void write(CaptureMetadata metadata) throws IOException {
+        CaptureBuffer buffer = new CaptureBuffer(jpeg, 4032, 3024, 0, file.getPath(), metadata, () -> {});
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            buffer.writeTo(output.getChannel());
+        } finally {
+            output.close();
+            buffer.release();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package top.defaults.camera;
+
+import android.Manifest;
+import android.app.Instrumentation;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.hardware.camera2.CameraManager;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.content.ContextCompat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Calls the public methods of a real photographer from several threads at once, pictures racing
+ * {@link Photographer#stopPreview()}, camera switches and setters, then checks that nothing
+ * crashed, every picture was settled and the photographer still takes pictures. Needs a camera
+ * and the camera permission, granted with
+ * {@code adb shell pm grant top.defaults.camera.test android.permission.CAMERA}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhotographerStressTest {
+
+    private static final int THREADS = 4;
+    private static final int CALLS_PER_THREAD = 400;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private StressTestActivity activity;
+    private Photographer photographer;
+    private File fileDir;
+    private final Thread.UncaughtExceptionHandler formerHandler = Thread.getDefaultUncaughtExceptionHandler();
+    private final AtomicReference<Throwable> uncaught = new AtomicReference<>();
+
+    @Before
+    public void startPreview() throws Exception {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        Context context = InstrumentationRegistry.getTargetContext();
+        assumeTrue(ContextCompat.checkSelfPermission(context, Manifest.permission.CAMERA)
+                == PackageManager.PERMISSION_GRANTED);
+        CameraManager cameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        assumeTrue(cameraManager.getCameraIdList().length > 0);
+
+        // a crash of the camera thread is reported by the test instead of killing the process
+        Thread.setDefaultUncaughtExceptionHandler((thread, throwable) -> uncaught.compareAndSet(null, throwable));
+
+        fileDir = new File(context.getCacheDir(), "stress");
+        Intent intent = new Intent(context, StressTestActivity.class).addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        activity = (StressTestActivity) instrumentation.startActivitySync(intent);
+        instrumentation.runOnMainSync(() -> {
+            CameraView preview = new CameraView(activity);
+            activity.setContentView(preview);
+            photographer = PhotographerFactory.createPhotographerWithCamera2(activity, preview);
+            new PhotographerHelper(photographer).setFileDir(fileDir.getPath());
+        });
+        photographer.startPreviewAsync().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void stopPreview() {
+        if (photographer != null) {
+            photographer.stopPreview();
+        }
+        if (activity != null) {
+            activity.finish();
+        }
+        if (fileDir != null) {
+            File[] files = fileDir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+        }
+        Thread.setDefaultUncaughtExceptionHandler(formerHandler);
+    }
+
+    @Test
+    public void publicCallsRaceTheCamera() throws Exception {
+        ConcurrentLinkedQueue<ShotFuture> shots = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> callers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            Thread caller = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < CALLS_PER_THREAD; i++) {
+                    switch (i % 10) {
+                        case 0:
+                        case 1:
+                            shots.add(photographer.takePicture());
+                            break;
+                        case 2:
+                            photographer.stopPreview();
+                            break;
+                        case 3:
+                            photographer.startPreview();
+                            break;
+                        case 4:
+                            photographer.setFacing(i / 10 % 2 == 0 ? Values.FACING_FRONT : Values.FACING_BACK);
+                            break;
+                        case 5:
+                            photographer.setZoom(1.f + i % 4);
+                            break;
+                        case 6:
+                            photographer.setFlash(i / 10 % 2 == 0 ? Values.FLASH_AUTO : Values.FLASH_OFF);
+                            break;
+                        case 7:
+                            photographer.setZeroShutterLag(i / 10 % 2 == 0);
+                            break;
+                        case 8:
+                            photographer.setDurability(i / 10 % 3);
+                            photographer.setWriteQueueDepth(1 + i / 10 % Values.MAX_BURST_SIZE);
+                            break;
+                        default:
+                            photographer.setPreviewUpdateInterval(i / 10 % 3 * 16);
+                            photographer.setAnalysisRate(i / 10 % 30);
+                            break;
+                    }
+                }
+            });
+            callers.add(caller);
+            caller.start();
+        }
+        start.countDown();
+        for (Thread caller : callers) {
+            caller.join();
+        }
+
+        // a command queued behind all the others, its picture fails as no preview is running
+        photographer.setFacing(Values.FACING_BACK);
+        photographer.setZeroShutterLag(false);
+        photographer.stopPreview();
+        settle(photographer.takePicture());
+        assertEquals(Values.FACING_BACK, photographer.getFacing());
+
+        for (ShotFuture shot : shots) {
+            settle(shot);
+        }
+        assertNull(uncaught.get());
+
+        // still working after all that
+        photographer.startPreviewAsync().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        ShotResult result = photographer.takePicture().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(result.getFilePath());
+        assertNull(uncaught.get());
+    }
+
+    /**
+     * Wait for a picture to be saved, failed or cancelled, failing the test if it never is.
+     */
+    private static void settle(ShotFuture shot) throws InterruptedException {
+        try {
+            shot.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException | CancellationException e) {
+            // failing is fine here, hanging is not
+        } catch (TimeoutException e) {
+            fail("Picture " + shot.getShotId() + " was never settled");
+        }
+    }
+}
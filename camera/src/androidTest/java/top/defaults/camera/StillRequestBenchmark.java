@@ -0,0 +1,143 @@
+package top.defaults.camera;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureRequest;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.content.ContextCompat;
+import android.view.Surface;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares building a still capture request on every press with looking it up in a
+ * {@link StillRequestCache}. Needs a camera and the camera permission, granted with
+ * {@code adb shell pm grant top.defaults.camera.test android.permission.CAMERA}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StillRequestBenchmark {
+
+    private static final int WARM_UP = 20;
+    private static final int ITERATIONS = 200;
+
+    private HandlerThread thread;
+    private CameraDevice camera;
+    private ImageReader imageReader;
+    private SurfaceTexture previewTexture;
+    private Surface previewSurface;
+
+    @Before
+    public void openCamera() throws Exception {
+        Context context = InstrumentationRegistry.getTargetContext();
+        assumeTrue(ContextCompat.checkSelfPermission(context, Manifest.permission.CAMERA)
+                == PackageManager.PERMISSION_GRANTED);
+        CameraManager cameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        String[] ids = cameraManager.getCameraIdList();
+        assumeTrue(ids.length > 0);
+
+        thread = new HandlerThread("StillRequestBenchmark");
+        thread.start();
+        CountDownLatch latch = new CountDownLatch(1);
+        cameraManager.openCamera(ids[0], new CameraDevice.StateCallback() {
+            @Override
+            public void onOpened(@NonNull CameraDevice device) {
+                camera = device;
+                latch.countDown();
+            }
+
+            @Override
+            public void onDisconnected(@NonNull CameraDevice device) {
+                device.close();
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(@NonNull CameraDevice device, int error) {
+                device.close();
+                latch.countDown();
+            }
+        }, new Handler(thread.getLooper()));
+        latch.await(5, TimeUnit.SECONDS);
+        assertNotNull(camera);
+
+        // requests are only built, no session is needed for their targets
+        imageReader = ImageReader.newInstance(640, 480, ImageFormat.JPEG, 2);
+        previewTexture = new SurfaceTexture(0);
+        previewTexture.setDefaultBufferSize(640, 480);
+        previewSurface = new Surface(previewTexture);
+    }
+
+    @After
+    public void closeCamera() {
+        if (camera != null) {
+            camera.close();
+        }
+        if (imageReader != null) {
+            imageReader.close();
+        }
+        if (previewSurface != null) {
+            previewSurface.release();
+            previewTexture.release();
+        }
+        if (thread != null) {
+            thread.quitSafely();
+        }
+    }
+
+    @Test
+    public void submitPath() throws CameraAccessException {
+        Rect cropRegion = new Rect(0, 0, 640, 480);
+        int afMode = CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE;
+
+        long[] uncached = Benchmark.measure(WARM_UP, ITERATIONS, () -> {
+            CaptureRequest.Builder builder = camera.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+            builder.addTarget(imageReader.getSurface());
+            builder.set(CaptureRequest.CONTROL_AF_MODE, afMode);
+            Camera2Photographer.applyFlash(builder, Values.FLASH_AUTO);
+            builder.set(CaptureRequest.JPEG_ORIENTATION, 90);
+            builder.set(CaptureRequest.SCALER_CROP_REGION, cropRegion);
+            builder.setTag("picture");
+            builder.build();
+        });
+
+        StillRequestCache cache = new StillRequestCache(keepPreview -> {
+            CaptureRequest.Builder builder = camera.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+            builder.addTarget(imageReader.getSurface());
+            if (keepPreview) {
+                builder.addTarget(previewSurface);
+            }
+            return builder;
+        });
+        // built ahead of the press, like the photographer does when a setting changes
+        cache.get(false, Values.FLASH_AUTO, afMode, cropRegion, 90);
+        long[] cached = Benchmark.measure(WARM_UP, ITERATIONS, () -> {
+            CaptureRequest.Builder builder = cache.get(false, Values.FLASH_AUTO, afMode, cropRegion, 90);
+            builder.setTag("picture");
+            builder.build();
+        });
+
+        Benchmark.reportDuration("uncached", uncached);
+        Benchmark.reportDuration("cached", cached);
+    }
+}
@@ -0,0 +1,9 @@
+package top.defaults.camera;
+
+import android.app.Activity;
+
+/**
+ * Hosts the {@link CameraView} of {@link PhotographerStressTest}.
+ */
+public class StressTestActivity extends Activity {
+}
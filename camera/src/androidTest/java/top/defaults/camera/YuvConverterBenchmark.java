@@ -0,0 +1,65 @@
+package top.defaults.camera;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Throughput of the {@link YuvConverter} conversions, from YUV_420_888 frames laid out like
+ * camera HALs do: padded rows and U and V interleaved in one buffer.
+ */
+@RunWith(AndroidJUnit4.class)
+public class YuvConverterBenchmark {
+
+    private static final int WARM_UP = 20;
+    private static final int ITERATIONS = 50;
+    private static final int PADDING = 64;
+    private static final int[][] SIZES = {{1280, 720}, {1920, 1080}, {3840, 2160}};
+
+    @Test
+    public void convert() {
+        Random random = new Random(12);
+        for (int[] size : SIZES) {
+            YuvConverter converter = frame(size[0], size[1], random);
+            byte[] yuv = new byte[YuvConverter.getYuv420Size(size[0], size[1])];
+            int[] argb = new int[size[0] * size[1]];
+            double megabytes = yuv.length / 1e6;
+            String prefix = size[0] + "x" + size[1] + " ";
+            Benchmark.reportThroughput(prefix + "nv21", megabytes,
+                    Benchmark.measure(WARM_UP, ITERATIONS, () -> converter.toNv21(yuv)));
+            Benchmark.reportThroughput(prefix + "i420", megabytes,
+                    Benchmark.measure(WARM_UP, ITERATIONS, () -> converter.toI420(yuv)));
+            Benchmark.reportThroughput(prefix + "gray", megabytes,
+                    Benchmark.measure(WARM_UP, ITERATIONS, () -> converter.toGray(yuv)));
+            Benchmark.reportThroughput(prefix + "argb", megabytes,
+                    Benchmark.measure(WARM_UP, ITERATIONS, () -> converter.toArgb(argb)));
+        }
+    }
+
+    private static YuvConverter frame(int width, int height, Random random) {
+        int yRowStride = width + PADDING;
+        byte[] y = new byte[yRowStride * (height - 1) + width];
+        random.nextBytes(y);
+        ByteBuffer yBuffer = ByteBuffer.allocateDirect(y.length);
+        yBuffer.put(y).clear();
+
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        int uvRowStride = chromaWidth * 2 + PADDING;
+        // V one byte after U, each plane ends right after its last sample
+        byte[] uv = new byte[uvRowStride * (chromaHeight - 1) + chromaWidth * 2];
+        random.nextBytes(uv);
+        ByteBuffer interleaved = ByteBuffer.allocateDirect(uv.length);
+        interleaved.put(uv).clear();
+        interleaved.limit(uv.length - 1);
+        ByteBuffer uBuffer = interleaved.slice();
+        interleaved.clear().position(1);
+        ByteBuffer vBuffer = interleaved.slice();
+
+        return new YuvConverter().setSource(yBuffer, yRowStride, uBuffer, vBuffer, uvRowStride, 2, width, height);
+    }
+}
@@ -35,6 +35,8 @@ class AutoFitTextureView extends TextureView {
     private int ratioHeight = 0;
     private boolean fillSpace = false;
     private int displayOrientation;
+    private FrameCallback frameCallback;
+    private final FrameIntervalHistogram frameIntervals = new FrameIntervalHistogram();
 
     public AutoFitTextureView(Context context) {
         this(context, null);
@@ -67,6 +69,10 @@ class AutoFitTextureView extends TextureView {
 
             @Override
             public void onSurfaceTextureUpdated(SurfaceTexture surface) {
+                frameIntervals.record(surface.getTimestamp());
+                if (frameCallback != null) {
+                    frameCallback.onFrameUpdated(surface);
+                }
             }
         });
     }
@@ -184,6 +190,28 @@ class AutoFitTextureView extends TextureView {
         void onSurfaceChanged();
     }
 
+    /**
+     * Called on the main thread every time a new frame is drawn, keep it cheap.
+     */
+    interface FrameCallback {
+        void onFrameUpdated(SurfaceTexture surface);
+    }
+
+    void setFrameCallback(FrameCallback frameCallback) {
+        this.frameCallback = frameCallback;
+    }
+
+    /**
+     * Must be called on the main thread, where frames are recorded.
+     */
+    void resetPreviewStats(int expectedFps) {
+        frameIntervals.reset(expectedFps);
+    }
+
+    PreviewStats getPreviewStats() {
+        return frameIntervals.snapshot();
+    }
+
     private List<Callback> callbacks = new LinkedList<>();
 
     public void addCallback(Callback callback) {
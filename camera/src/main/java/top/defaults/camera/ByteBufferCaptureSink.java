@@ -0,0 +1,40 @@
+package top.defaults.camera;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Copies pictures into direct {@link ByteBuffer}s owned by the listener, which stay valid after the
+ * camera has reused its own memory. Implement {@link CaptureSink} directly to use the captured
+ * buffer without the copy.
+ *
+ * The copies hold the pictures as the camera wrote them, their {@link CaptureBuffer#getMetadata()}
+ * is not stamped in.
+ */
+public class ByteBufferCaptureSink implements CaptureSink {
+
+    private final Listener listener;
+
+    public ByteBufferCaptureSink(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void onCapture(CaptureBuffer buffer) {
+        ByteBuffer data = buffer.getData();
+        ByteBuffer copy = ByteBuffer.allocateDirect(data.remaining());
+        copy.put(data);
+        copy.flip();
+        listener.onCapture(copy, buffer.getTimestamp());
+    }
+
+    public interface Listener {
+
+        /**
+         * Called on a saver thread.
+         *
+         * @param jpeg      The JPEG data, ready to be read.
+         * @param timestamp The sensor timestamp of the picture, in nanoseconds.
+         */
+        void onCapture(ByteBuffer jpeg, long timestamp);
+    }
+}
@@ -6,9 +6,7 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.content.res.Configuration;
-import android.graphics.ImageFormat;
 import android.graphics.Rect;
-import android.graphics.SurfaceTexture;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
 import android.hardware.camera2.CameraCharacteristics;
@@ -17,31 +15,52 @@ import android.hardware.camera2.CameraManager;
 import android.hardware.camera2.CameraMetadata;
 import android.hardware.camera2.CaptureFailure;
 import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureResult;
 import android.hardware.camera2.TotalCaptureResult;
-import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
 import android.media.ImageReader;
-import android.media.MediaRecorder;
 import android.os.Build;
 import android.os.Handler;
-import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.os.Trace;
 import android.support.annotation.NonNull;
 import android.support.v4.content.ContextCompat;
+import android.util.Range;
 import android.util.SparseIntArray;
 import android.view.MotionEvent;
 import android.view.OrientationEventListener;
 import android.view.Surface;
+import android.view.animation.Interpolator;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import top.defaults.logger.Logger;
 
 public class Camera2Photographer implements InternalPhotographer {
     // we don't use sizes larger than 2160p, since MediaRecorder
     // cannot handle such a high-resolution video.
     private static final int MAX_VIDEO_SIZE = 3840 * 2160;
+    private static final int VIDEO_BIT_RATE = 10000000;
+    private static final int VIDEO_FRAME_RATE = 30;
+    private static final int DEFAULT_PREVIEW_FPS = 30;
+
+    // keys of the commands coalesced while waiting
+    private static final int COMMAND_ZOOM = 0;
+    private static final int COMMAND_FLASH = 1;
+    private static final int COMMAND_AUTO_FOCUS = 2;
+    private static final int COMMAND_PREVIEW_UPDATE_INTERVAL = 3;
+    private static final int COMMAND_STILL_REQUEST = 4;
+    private static final int COMMAND_KEY_COUNT = 5;
 
     private static final SparseIntArray INTERNAL_FACINGS = new SparseIntArray();
 
@@ -53,33 +72,64 @@ public class Camera2Photographer implements InternalPhotographer {
     private Activity activityContext;
     private CameraView preview;
     private AutoFitTextureView textureView;
-    private CallbackHandler callbackHandler;
+    private EventBus eventBus;
     private OrientationEventListener orientationEventListener;
 
+    // the camera state below is only touched on the camera thread, by the commands the public
+    // methods post and by the camera callbacks, fields which are volatile are also read by the
+    // public methods on the caller's thread
     private boolean isInitialized;
-    private boolean isPreviewStarted;
-
-    private int mode = Values.MODE_IMAGE;
-    private AspectRatio aspectRatio = Values.DEFAULT_ASPECT_RATIO;
-    private boolean autoFocus = true;
-    private int facing = Values.FACING_BACK;
-    private int flash = Values.FLASH_OFF;
+    private volatile boolean isPreviewStarted;
+    private volatile PreviewFuture startupFuture;
+    private volatile StartupTrace startupTrace;
+
+    private volatile int mode = Values.MODE_IMAGE;
+    private volatile AspectRatio aspectRatio = Values.DEFAULT_ASPECT_RATIO;
+    private volatile boolean autoFocus = true;
+    private volatile int facing = Values.FACING_BACK;
+    private volatile int flash = Values.FLASH_OFF;
     private FocusHandler focusHandler = new FocusHandler();
-
-    private HandlerThread backgroundThread;
-    private Handler backgroundHandler;
-
-    private SizeMap previewSizeMap = new SizeMap();
-    private SortedSet<Size> supportedPreviewSizes = new TreeSet<>();
-    private Size previewSize;
-
-    private SizeMap imageSizeMap = new SizeMap();
-    private SortedSet<Size> supportedImageSizes = new TreeSet<>();
-    private Size imageSize;
-
-    private SizeMap videoSizeMap = new SizeMap();
-    private SortedSet<Size> supportedVideoSizes = new TreeSet<>();
-    private Size videoSize;
+    private final FileSyncer fileSyncer = new FileSyncer();
+    private final ImageSaverExecutor imageSaverExecutor = new ImageSaverExecutor(Values.MAX_BURST_SIZE,
+            this::onWriteFinished);
+    private volatile int writeBackpressure = Values.BACKPRESSURE_THROTTLE;
+    private final List<CaptureSink> captureSinks = new CopyOnWriteArrayList<>();
+    private final ImageAnalysis imageAnalysis = new ImageAnalysis(CameraThread.getHandler(),
+            error -> eventBus.onError(error));
+    private volatile Size analysisTargetSize = new Size(640, 480);
+    private volatile Size analysisSize;
+    private volatile boolean zeroShutterLag;
+    private final ZslRing zslRing = new ZslRing(CameraThread.getHandler());
+    private final ZslBuffers zslBuffers = new ZslBuffers();
+    private final StillRequestCache stillRequests = new StillRequestCache(this::createStillCaptureRequestBuilder);
+    private boolean isZslActive;
+    private volatile int preRollSeconds;
+    private volatile int videoEncoder = Values.VIDEO_ENCODER_MEDIA_RECORDER;
+    private volatile int previewUpdateInterval;
+    private int expectedPreviewFps = DEFAULT_PREVIEW_FPS;
+
+    private Handler mainHandler;
+    private final Handler cameraHandler = CameraThread.getHandler();
+    private final Executor cameraExecutor = cameraHandler::post;
+    // the public calls, run one at a time on the camera thread
+    private final CommandQueue commands = new CommandQueue(cameraExecutor, COMMAND_KEY_COUNT);
+    private Executor mainExecutor;
+    private final RepeatingRequestCoalescer previewUpdates = new RepeatingRequestCoalescer(cameraHandler,
+            this::submitPreviewRequest, e -> eventBus.onError(new Error(Error.ERROR_CAMERA, e)));
+
+    // size collections are replaced rather than modified once collected, so they can be read
+    // from any thread
+    private volatile SizeMap previewSizeMap = new SizeMap();
+    private volatile SortedSet<Size> supportedPreviewSizes = new TreeSet<>();
+    private volatile Size previewSize;
+
+    private volatile SizeMap imageSizeMap = new SizeMap();
+    private volatile SortedSet<Size> supportedImageSizes = new TreeSet<>();
+    private volatile Size imageSize;
+
+    private volatile SizeMap videoSizeMap = new SizeMap();
+    private volatile SortedSet<Size> supportedVideoSizes = new TreeSet<>();
+    private volatile Size videoSize;
 
     private CameraManager cameraManager;
     private CameraDevice camera;
@@ -87,19 +137,48 @@ public class Camera2Photographer implements InternalPhotographer {
     private CaptureRequest.Builder previewRequestBuilder;
 
     private String cameraId;
-    private CameraCharacteristics characteristics;
-    private int sensorOrientation = 90;
+    private volatile CameraCapabilities capabilities;
+    private volatile int sensorOrientation = 90;
     // last determined degree, it is either Surface.Rotation_0, _90, _180, _270, or -1 (undetermined)
-    private int currentDeviceRotation = -1;
-    private float zoom = 1.f;
-    private float maxZoom = 2.f;
+    private volatile int currentDeviceRotation = -1;
+    private ZoomState<Rect> zoom;
+    private ZoomAnimation zoomAnimation;
+    private final Runnable applyPendingScale = this::applyPendingScale;
+
+    private PictureReader imageReader;
+    // the current reader and the retired ones some images are still open from
+    private final List<PictureReader> pictureReaders = new CopyOnWriteArrayList<>();
+    private Surface previewSurface;
+
+    private final AtomicInteger nextShotId = new AtomicInteger();
+    // pictures to be captured once focus and exposure are locked
+    private final List<Shot> requestedShots = new ArrayList<>();
+    // the submitted captures and their images meet here, by sensor timestamp
+    private final CaptureMatcher<Shot, Image> captureMatcher = new CaptureMatcher<>(Values.MAX_BURST_SIZE / 2,
+            new CaptureMatcher.Listener<Shot, Image>() {
+                @Override
+                public void onMatched(Shot shot, Image image) {
+                    saveShot(shot, image);
+                }
 
-    private ImageReader imageReader;
-    private MediaRecorder mediaRecorder;
+                @Override
+                public void onImageDropped(Image image) {
+                    closeImage(image);
+                }
+
+                @Override
+                public void onShotDropped(Shot shot) {
+                    shot.fail(new Error(Error.ERROR_CAMERA, "No picture was captured"));
+                }
+            });
+    // captured pictures waiting for room in the write queue under BACKPRESSURE_THROTTLE
+    private final ArrayDeque<Shot> parkedShots = new ArrayDeque<>();
+    private int remainingStillCaptures;
+    private boolean isContinuousShooting;
+    private long continuousShootingTimestamp;
+    private int continuousShootingIndex;
 
-    private String nextImageAbsolutePath;
-    private String nextVideoAbsolutePath;
-    private boolean isRecordingVideo;
+    private RecordingController recordingController;
 
     private static final ArrayList<String> RECORD_VIDEO_PERMISSIONS = new ArrayList<>(3);
 
@@ -114,7 +193,16 @@ public class Camera2Photographer implements InternalPhotographer {
 
         @Override
         public void onOpened(@NonNull CameraDevice camera) {
+            if (!isPreviewStarted || !camera.getId().equals(cameraId)) {
+                // stopped, or switched to another camera, while the camera was being opened
+                camera.close();
+                return;
+            }
             Camera2Photographer.this.camera = camera;
+            StartupTrace trace = startupTrace;
+            if (trace != null) {
+                trace.end(StartupTrace.PHASE_OPEN_CAMERA);
+            }
             startCaptureSession();
         }
 
@@ -122,13 +210,16 @@ public class Camera2Photographer implements InternalPhotographer {
         public void onDisconnected(@NonNull CameraDevice camera) {
             camera.close();
             Camera2Photographer.this.camera = null;
-            callbackHandler.onPreviewStopped();
+            failStartup(new Error(Error.ERROR_CAMERA, "Camera disconnected"));
+            eventBus.onPreviewStopped();
         }
 
         @Override
         public void onError(@NonNull CameraDevice camera, int error) {
+            Error cameraError = new Error(Error.ERROR_CAMERA);
+            failStartup(cameraError);
             stopPreview();
-            callbackHandler.onError(new Error(Error.ERROR_CAMERA));
+            eventBus.onError(cameraError);
         }
     };
 
@@ -137,49 +228,158 @@ public class Camera2Photographer implements InternalPhotographer {
         @Override
         public void onConfigured(@NonNull CameraCaptureSession session) {
             captureSession = session;
+            StartupTrace trace = startupTrace;
+            if (trace != null && trace.end(StartupTrace.PHASE_CONFIGURE_SESSION)) {
+                trace.begin(StartupTrace.PHASE_FIRST_CAPTURE_RESULT);
+                trace.begin(StartupTrace.PHASE_FIRST_FRAME);
+            }
             updateAutoFocus();
             updateFlash();
             applyZoom();
             updatePreview(null);
-            callbackHandler.onPreviewStarted();
-            callbackHandler.onZoomChanged(zoom);
+            resetPreviewStats();
+            prepareStillRequest();
+            PreviewFuture future = startupFuture;
+            if (future != null) {
+                future.arm();
+            }
+            eventBus.onPreviewStarted();
+            eventBus.onZoomChanged(zoom.getZoom());
         }
 
         @Override
         public void onConfigureFailed(@NonNull CameraCaptureSession session) {
+            Error error = new Error(Error.ERROR_CAMERA);
+            failStartup(error);
             stopPreview();
-            callbackHandler.onError(new Error(Error.ERROR_CAMERA));
+            eventBus.onError(error);
         }
 
         @Override
         public void onClosed(@NonNull CameraCaptureSession session) {
             if (captureSession != null && captureSession.equals(session)) {
                 captureSession = null;
+                retireImageReaders();
             }
         }
     };
 
     private ImageCaptureCallback imageCaptureCallback = new ImageCaptureCallback() {
 
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session,
+                                       @NonNull CaptureRequest request,
+                                       @NonNull TotalCaptureResult result) {
+            super.onCaptureCompleted(session, request, result);
+            if (isZslActive) {
+                zslRing.onCaptureResult(result);
+            }
+            onPreviewCaptureCompleted();
+            // the zoom waits while a picture is being taken
+            if (getState() == STATE_PREVIEW) {
+                stepZoomAnimation(result);
+            }
+        }
+
         @Override
         public void onPrecaptureRequired() {
             previewRequestBuilder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER,
                     CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER_START);
             setState(STATE_PRECAPTURE);
             try {
-                captureSession.capture(previewRequestBuilder.build(), this, null);
+                captureSession.capture(previewRequestBuilder.build(), this, cameraHandler);
                 previewRequestBuilder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER,
                         CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER_IDLE);
             } catch (CameraAccessException e) {
-                callbackHandler.onError(new Error(Error.ERROR_CAMERA, e));
+                eventBus.onError(new Error(Error.ERROR_CAMERA, e));
             }
         }
 
         @Override
         public void onReady() {
-            captureStillPicture();
+            if (isContinuousShooting) {
+                startRepeatingStillCapture();
+            } else {
+                captureStillPictures();
+            }
+        }
+
+    };
+
+    private final CameraCaptureSession.CaptureCallback stillCaptureCallback
+            = new CameraCaptureSession.CaptureCallback() {
+
+        @Override
+        public void onCaptureStarted(@NonNull CameraCaptureSession session,
+                                     @NonNull CaptureRequest request,
+                                     long timestamp, long frameNumber) {
+            Shot shot = (Shot) request.getTag();
+            shot.sensorTimestamp = timestamp;
+            captureMatcher.addShot(timestamp, shot);
+        }
+
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session,
+                                       @NonNull CaptureRequest request,
+                                       @NonNull TotalCaptureResult result) {
+            ((Shot) request.getTag()).captureResult = result;
+            onStillCaptureFinished();
+        }
+
+        @Override
+        public void onCaptureFailed(@NonNull CameraCaptureSession session,
+                                    @NonNull CaptureRequest request,
+                                    @NonNull CaptureFailure failure) {
+            Shot shot = (Shot) request.getTag();
+            Error error = new Error(Error.ERROR_CAMERA);
+            if (!failure.wasImageCaptured()) {
+                // no image will arrive for this shot
+                if (shot.sensorTimestamp != 0) {
+                    captureMatcher.removeShot(shot.sensorTimestamp);
+                }
+                shot.fail(error);
+            }
+            eventBus.onError(error);
+            onStillCaptureFinished();
+        }
+    };
+
+    private final CameraCaptureSession.CaptureCallback continuousShootingCallback
+            = new CameraCaptureSession.CaptureCallback() {
+
+        @Override
+        public void onCaptureStarted(@NonNull CameraCaptureSession session,
+                                     @NonNull CaptureRequest request,
+                                     long timestamp, long frameNumber) {
+            // the pictures of continuous shooting are not requested one by one
+            Shot shot = new Shot(nextShotId.incrementAndGet(), SystemClock.elapsedRealtimeNanos(), null, null);
+            try {
+                shot.filePath = Utils.getImageFilePath(continuousShootingTimestamp, continuousShootingIndex++);
+            } catch (IOException e) {
+                eventBus.onError(Utils.errorFromThrowable(e));
+            }
+            shot.sensorTimestamp = timestamp;
+            captureMatcher.addShot(timestamp, shot);
+        }
+
+        @Override
+        public void onCaptureFailed(@NonNull CameraCaptureSession session,
+                                    @NonNull CaptureRequest request,
+                                    @NonNull CaptureFailure failure) {
+            eventBus.onError(new Error(Error.ERROR_CAMERA));
         }
+    };
 
+    private final CameraCaptureSession.CaptureCallback videoPreviewCaptureCallback
+            = new CameraCaptureSession.CaptureCallback() {
+
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session,
+                                       @NonNull CaptureRequest request,
+                                       @NonNull TotalCaptureResult result) {
+            onPreviewCaptureCompleted();
+            stepZoomAnimation(result);
+        }
     };
 
     private final ImageReader.OnImageAvailableListener onImageAvailableListener
@@ -187,9 +387,55 @@ public class Camera2Photographer implements InternalPhotographer {
 
         @Override
         public void onImageAvailable(ImageReader reader) {
-            backgroundHandler.post(new ImageSaver(reader.acquireLatestImage(), nextImageAbsolutePath));
+            saveAvailableImages();
+        }
+
+    };
+
+    private void onWriteFinished() {
+        // images may have been left in the reader while the queue was full
+        cameraHandler.post(this::saveAvailableImages);
+    }
+
+    private ImageSaver.Callback newImageSaverCallback(Shot shot) {
+        return (filePath, error) -> {
+            if (error != null) {
+                eventBus.onError(error);
+            }
+            if (filePath != null) {
+                announceShot(filePath);
+            }
+            shot.finish(filePath, error);
+        };
+    }
+
+    private final RecordingController.Listener recordingListener = new RecordingController.Listener() {
+        @Override
+        public void onRecordingStarted() {
+            eventBus.onStartRecording();
+        }
+
+        @Override
+        public void onRecordingFinished(String filePath, boolean isRecorded) {
+            if (isRecorded) {
+                eventBus.onFinishRecording(filePath);
+            }
+            if (!recordingController.hasPersistentSurface()) {
+                // back from the recording session to the preview one
+                startCaptureSession();
+            }
+        }
+
+        @Override
+        public void onError(Error error) {
+            eventBus.onError(error);
         }
 
+        @Override
+        public void onSurfaceLost() {
+            releaseRecordingController();
+            reconfigureCaptureSession();
+        }
     };
 
     @Override
@@ -198,7 +444,16 @@ public class Camera2Photographer implements InternalPhotographer {
         this.preview = preview;
         this.textureView = preview.getTextureView();
         cameraManager = (CameraManager) activity.getSystemService(Context.CAMERA_SERVICE);
-        callbackHandler = new CallbackHandler(activityContext);
+        mainHandler = new Handler(activityContext.getMainLooper());
+        mainExecutor = mainHandler::post;
+        eventBus = new EventBus(mainExecutor);
+        zoom = new ZoomState<>(eventBus);
+        captureSinks.add(new FileCaptureSink(fileSyncer));
+        // the store is read off the main thread, ahead of any camera work queued after this
+        Context applicationContext = activity.getApplicationContext();
+        commands.post(() -> CameraCapabilities.restore(applicationContext, cameraManager,
+                // the stored capabilities we may have started with turned out to be stale
+                this::restartPreview));
         preview.addCallback(new CameraView.Callback() {
             @Override
             public void onSingleTap(MotionEvent e) {
@@ -207,15 +462,18 @@ public class Camera2Photographer implements InternalPhotographer {
 
             @Override
             public void onScale(float scaleFactor) {
-                updateZoom(zoom * scaleFactor);
-                updatePreview(null);
+                // the events of a pinch are merged until the camera thread gets to them
+                if (zoom.addScale(scaleFactor)) {
+                    cameraHandler.post(applyPendingScale);
+                }
             }
 
             @Override
             public void onSurfaceChanged() {
-                startCaptureSession();
+                commands.post(() -> startCaptureSession());
             }
         });
+        textureView.setFrameCallback(surface -> onPreviewFrame());
         orientationEventListener = new OrientationEventListener(activityContext) {
 
             // a slop before change the device orientation
@@ -234,7 +492,10 @@ public class Camera2Photographer implements InternalPhotographer {
                     } else if (orientation >= 225 && orientation < 315) {
                         rotation = Surface.ROTATION_90;
                     }
-                    currentDeviceRotation = rotation;
+                    if (currentDeviceRotation != rotation) {
+                        currentDeviceRotation = rotation;
+                        commands.post(COMMAND_STILL_REQUEST, () -> prepareStillRequest());
+                    }
                 }
             }
 
@@ -255,10 +516,17 @@ public class Camera2Photographer implements InternalPhotographer {
         }
     }
 
-    private void throwIfNoMediaRecorder() {
-        if (mediaRecorder == null) {
-            throw new RuntimeException("MediaRecorder is not initialized");
+    // runs on the camera thread, where throwing would not reach the caller
+    private boolean checkVideoMode(String operation) {
+        if (mode != Values.MODE_VIDEO || camera == null) {
+            eventBus.onError(new Error(Error.ERROR_UNSUPPORTED_OPERATION, "Cannot " + operation + " in non-VIDEO mode"));
+            return false;
         }
+        return true;
+    }
+
+    private boolean isRecording() {
+        return recordingController != null && recordingController.isRecording();
     }
 
     @Override
@@ -273,65 +541,178 @@ public class Camera2Photographer implements InternalPhotographer {
 
     @Override
     public void startPreview() {
+        startPreviewAsync();
+    }
+
+    @Override
+    public PreviewFuture startPreviewAsync() {
         throwIfNotInitialized();
+        PreviewFuture future = beginStartup();
+        if (orientationEventListener != null) {
+            orientationEventListener.enable();
+        }
+        isPreviewStarted = true;
+        imageSaverExecutor.execute(this::recoverShots);
+        commands.post(() -> {
+            if (prepareCamera(future)) {
+                startOpeningCamera();
+            }
+        });
+        return future;
+    }
+
+    private PreviewFuture beginStartup() {
+        PreviewFuture future = new PreviewFuture(mainHandler, () -> {
+            if (isPreviewStarted) {
+                stopPreview();
+            }
+        });
+        PreviewFuture previous = startupFuture;
+        startupFuture = future;
+        startupTrace = new StartupTrace(SystemClock.elapsedRealtimeNanos());
+        if (previous != null) {
+            previous.abandon();
+        }
+        return future;
+    }
+
+    /**
+     * Choose the camera and prepare its outputs, everything but opening it.
+     */
+    private boolean prepareCamera(PreviewFuture future) {
+        if (future.isDone()) {
+            // cancelled before we got here
+            return false;
+        }
+        StartupTrace trace = startupTrace;
+        beginStartupPhase(trace, StartupTrace.PHASE_PERMISSION_CHECK);
+        String missingPermission = null;
         for (String permission: RECORD_VIDEO_PERMISSIONS) {
             int permissionCheck = ContextCompat.checkSelfPermission(activityContext, permission);
             if (permissionCheck != PackageManager.PERMISSION_GRANTED) {
-                callbackHandler.onError(new Error(Error.ERROR_PERMISSION, "Unsatisfied permission: " + permission));
-                return;
+                missingPermission = permission;
+                break;
             }
         }
-        startBackgroundThread();
+        endStartupPhase(trace, StartupTrace.PHASE_PERMISSION_CHECK);
+        if (missingPermission != null) {
+            Error error = new Error(Error.ERROR_PERMISSION, "Unsatisfied permission: " + missingPermission);
+            future.fail(error);
+            eventBus.onError(error);
+            return false;
+        }
 
-        if (!chooseCameraIdByFacing()) {
-            callbackHandler.onError(new Error(Error.ERROR_CAMERA));
-            return;
+        beginStartupPhase(trace, StartupTrace.PHASE_CAMERA_SELECTION);
+        boolean isCameraChosen = chooseCameraIdByFacing();
+        endStartupPhase(trace, StartupTrace.PHASE_CAMERA_SELECTION);
+        if (!isCameraChosen) {
+            Error error = new Error(Error.ERROR_CAMERA);
+            future.fail(error);
+            eventBus.onError(error);
+            return false;
         }
-        if (!collectCameraInfo()) {
-            return;
+        if (trace != null) {
+            trace.setCameraId(cameraId);
+        }
+
+        beginStartupPhase(trace, StartupTrace.PHASE_INFO_COLLECTION);
+        boolean isInfoCollected = collectCameraInfo();
+        endStartupPhase(trace, StartupTrace.PHASE_INFO_COLLECTION);
+        if (!isInfoCollected) {
+            future.fail(new Error(Error.ERROR_CAMERA, "Cannot get available preview/video sizes"));
+            return false;
         }
+
+        beginStartupPhase(trace, StartupTrace.PHASE_PREPARE_WORKERS);
         prepareWorkers();
+        endStartupPhase(trace, StartupTrace.PHASE_PREPARE_WORKERS);
 
-        callbackHandler.onDeviceConfigured();
-        startOpeningCamera();
-        if (orientationEventListener != null) {
-            orientationEventListener.enable();
+        eventBus.onDeviceConfigured();
+        return true;
+    }
+
+    // only phases running from start to end on the camera thread show up in systrace, sections
+    // spanning camera callbacks would need Trace.beginAsyncSection() of API level 29
+    private static void beginStartupPhase(StartupTrace trace, int phase) {
+        if (trace != null) {
+            trace.begin(phase);
+        }
+        Trace.beginSection("Camera:" + StartupTrace.getPhaseName(phase));
+    }
+
+    private static void endStartupPhase(StartupTrace trace, int phase) {
+        Trace.endSection();
+        if (trace != null) {
+            trace.end(phase);
+        }
+    }
+
+    private void onPreviewFrame() {
+        PreviewFuture future = startupFuture;
+        if (future != null && future.isArmed()) {
+            startupFuture = null;
+            future.complete();
+        }
+        endFinalStartupPhase(StartupTrace.PHASE_FIRST_FRAME);
+    }
+
+    private void onPreviewCaptureCompleted() {
+        endFinalStartupPhase(StartupTrace.PHASE_FIRST_CAPTURE_RESULT);
+    }
+
+    private void endFinalStartupPhase(int phase) {
+        StartupTrace trace = startupTrace;
+        // frames and results of an earlier session don't count
+        if (trace == null || !trace.isEnded(StartupTrace.PHASE_CONFIGURE_SESSION)) {
+            return;
+        }
+        if (trace.endFinalPhase(phase)) {
+            startupTrace = null;
+            eventBus.onStartupMetrics(trace);
+        }
+    }
+
+    private void failStartup(Error error) {
+        startupTrace = null;
+        PreviewFuture future = startupFuture;
+        if (future != null) {
+            startupFuture = null;
+            future.fail(error);
         }
-        isPreviewStarted = true;
     }
 
     private boolean chooseCameraIdByFacing() {
         try {
             int internalFacing = INTERNAL_FACINGS.get(facing);
-            final String[] ids = cameraManager.getCameraIdList();
+            final String[] ids = CameraCapabilities.getCameraIds(cameraManager);
             if (ids.length == 0) { // No camera
-                callbackHandler.onError(new Error(Error.ERROR_CAMERA, "No camera available."));
+                eventBus.onError(new Error(Error.ERROR_CAMERA, "No camera available."));
                 return false;
             }
             for (String id : ids) {
-                CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(id);
+                CameraCapabilities capabilities = CameraCapabilities.get(cameraManager, id);
 
-                Integer level = characteristics.get(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
-                if (level == null || level == CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY) {
+                int level = capabilities.getHardwareLevel();
+                if (level == CameraCapabilities.UNKNOWN || level == CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY) {
                     continue;
                 }
 
-                Integer internal = characteristics.get(CameraCharacteristics.LENS_FACING);
-                if (internal == null) {
-                    callbackHandler.onError(new Error(Error.ERROR_CAMERA, "Unexpected state: LENS_FACING null."));
+                int internal = capabilities.getLensFacing();
+                if (internal == CameraCapabilities.UNKNOWN) {
+                    eventBus.onError(new Error(Error.ERROR_CAMERA, "Unexpected state: LENS_FACING null."));
                     return false;
                 }
                 if (internal == internalFacing) {
-                    updateCameraInfo(id, characteristics);
+                    updateCameraInfo(capabilities);
                     return true;
                 }
             }
 
             // Not found
-            updateCameraInfo(ids[0], cameraManager.getCameraCharacteristics(ids[0]));
-            Integer internal = characteristics.get(CameraCharacteristics.LENS_FACING);
-            if (internal == null) {
-                callbackHandler.onError(new Error(Error.ERROR_CAMERA, "Unexpected state: LENS_FACING null."));
+            updateCameraInfo(CameraCapabilities.get(cameraManager, ids[0]));
+            int internal = capabilities.getLensFacing();
+            if (internal == CameraCapabilities.UNKNOWN) {
+                eventBus.onError(new Error(Error.ERROR_CAMERA, "Unexpected state: LENS_FACING null."));
                 return false;
             }
             for (int i = 0, count = INTERNAL_FACINGS.size(); i < count; i++) {
@@ -345,22 +726,19 @@ public class Camera2Photographer implements InternalPhotographer {
             facing = Values.FACING_BACK;
             return true;
         } catch (CameraAccessException e) {
-            callbackHandler.onError(new Error(Error.ERROR_CAMERA, e));
+            eventBus.onError(new Error(Error.ERROR_CAMERA, e));
             return false;
         }
     }
 
-    private void updateCameraInfo(String cameraId, CameraCharacteristics characteristics) {
-        this.cameraId = cameraId;
-        this.characteristics = characteristics;
-        Integer orientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
-        if (orientation != null) {
-            sensorOrientation = orientation;
-        }
-        Float maxZoomObject = characteristics.get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM);
-        if (maxZoomObject != null) {
-            maxZoom = maxZoomObject;
-        }
+    private void updateCameraInfo(CameraCapabilities capabilities) {
+        this.cameraId = capabilities.getCameraId();
+        this.capabilities = capabilities;
+        sensorOrientation = capabilities.getSensorOrientation();
+        float maxZoom = capabilities.getMaxZoom();
+        zoom.setCamera(maxZoom, capabilities.hasActiveArray() ? new ZoomTable<>(capabilities.getActiveArrayLeft(),
+                capabilities.getActiveArrayTop(), capabilities.getActiveArrayRight(),
+                capabilities.getActiveArrayBottom(), maxZoom, Rect::new) : null);
     }
 
     private void resetSizes() {
@@ -371,24 +749,36 @@ public class Camera2Photographer implements InternalPhotographer {
     }
 
     private boolean collectCameraInfo() {
-        StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-        if (map == null) {
-            callbackHandler.onError(new Error(Error.ERROR_CAMERA, "Cannot get available preview/video sizes"));
+        if (!capabilities.hasStreamConfigurations()) {
+            eventBus.onError(new Error(Error.ERROR_CAMERA, "Cannot get available preview/video sizes"));
             return false;
         }
 
-        collectPreviewSizes(map);
-        collectImageSizes(map);
-        collectVideoSizes(map);
-        refineSizes();
+        SizeMap previewSizeMap = new SizeMap();
+        SortedSet<Size> supportedPreviewSizes = new TreeSet<>();
+        SizeMap imageSizeMap = new SizeMap();
+        SortedSet<Size> supportedImageSizes = new TreeSet<>();
+        SizeMap videoSizeMap = new SizeMap();
+        SortedSet<Size> supportedVideoSizes = new TreeSet<>();
+        collectSizes(capabilities.getPreviewSizes(), previewSizeMap, supportedPreviewSizes, Integer.MAX_VALUE);
+        collectSizes(capabilities.getImageSizes(), imageSizeMap, supportedImageSizes, Integer.MAX_VALUE);
+        collectSizes(capabilities.getVideoSizes(), videoSizeMap, supportedVideoSizes, MAX_VIDEO_SIZE);
+        refineSizes(previewSizeMap, supportedPreviewSizes, imageSizeMap, videoSizeMap);
+
+        this.imageSizeMap = imageSizeMap;
+        this.supportedImageSizes = supportedImageSizes;
+        this.videoSizeMap = videoSizeMap;
+        this.supportedVideoSizes = supportedVideoSizes;
+        this.supportedPreviewSizes = supportedPreviewSizes;
+        this.previewSizeMap = previewSizeMap;
         return true;
     }
 
     private void prepareWorkers() {
         Size size;
         if (mode == Values.MODE_IMAGE) {
-            if (imageSize == null) {
-                // determine image size
+            if (imageSize == null || !supportedImageSizes.contains(imageSize)) {
+                // determine image size, the former one may be of another camera
                 SortedSet<Size> sizesWithAspectRatio = imageSizeMap.sizes(aspectRatio);
                 if (sizesWithAspectRatio != null && sizesWithAspectRatio.size() > 0) {
                     imageSize = sizesWithAspectRatio.last();
@@ -397,12 +787,18 @@ public class Camera2Photographer implements InternalPhotographer {
                 }
             }
             size = imageSize;
-            imageReader = ImageReader.newInstance(imageSize.getWidth(), imageSize.getHeight(),
-                    ImageFormat.JPEG,2);
-            imageReader.setOnImageAvailableListener(onImageAvailableListener, null);
+            // a reader of the same size is kept from the former configuration
+            if (imageReader == null || imageReader.getWidth() != imageSize.getWidth()
+                    || imageReader.getHeight() != imageSize.getHeight()) {
+                // deep enough to hold a whole burst while the pictures are being saved
+                imageReader = new PictureReader(imageSize.getWidth(), imageSize.getHeight(),
+                        Values.MAX_BURST_SIZE, onImageAvailableListener, cameraHandler);
+                pictureReaders.add(imageReader);
+                retireImageReaders();
+            }
         } else if (mode == Values.MODE_VIDEO) {
-            if (videoSize == null) {
-                // determine video size
+            if (videoSize == null || !supportedVideoSizes.contains(videoSize)) {
+                // determine video size, the former one may be of another camera
                 SortedSet<Size> sizesWithAspectRatio = videoSizeMap.sizes(aspectRatio);
                 if (sizesWithAspectRatio != null && sizesWithAspectRatio.size() > 0) {
                     videoSize = sizesWithAspectRatio.last();
@@ -411,46 +807,106 @@ public class Camera2Photographer implements InternalPhotographer {
                 }
             }
             size = videoSize;
-            mediaRecorder = new MediaRecorder();
+            imageReader = null;
+            retireImageReaders();
         } else {
             throw new RuntimeException("Wrong mode value: " + mode);
         }
         previewSize = chooseOptimalPreviewSize(size);
 
-        int orientation = activityContext.getResources().getConfiguration().orientation;
-        if (orientation == Configuration.ORIENTATION_LANDSCAPE) {
-            textureView.setAspectRatio(previewSize.getWidth(), previewSize.getHeight());
-        } else {
-            textureView.setAspectRatio(previewSize.getHeight(), previewSize.getWidth());
-        }
+        Size chosenPreviewSize = previewSize;
+        mainHandler.post(() -> {
+            int orientation = activityContext.getResources().getConfiguration().orientation;
+            if (orientation == Configuration.ORIENTATION_LANDSCAPE) {
+                textureView.setAspectRatio(chosenPreviewSize.getWidth(), chosenPreviewSize.getHeight());
+            } else {
+                textureView.setAspectRatio(chosenPreviewSize.getHeight(), chosenPreviewSize.getWidth());
+            }
+        });
     }
 
     @SuppressLint("MissingPermission")
     private void startOpeningCamera() {
         try {
-            cameraManager.openCamera(cameraId, cameraDeviceCallback, null);
+            StartupTrace trace = startupTrace;
+            if (trace != null) {
+                trace.begin(StartupTrace.PHASE_OPEN_CAMERA);
+            }
+            cameraManager.openCamera(cameraId, cameraDeviceCallback, cameraHandler);
         } catch (CameraAccessException e) {
-            callbackHandler.onError(new Error(Error.ERROR_CAMERA, "Failed to open camera: " + cameraId, e));
+            Error error = new Error(Error.ERROR_CAMERA, "Failed to open camera: " + cameraId, e);
+            failStartup(error);
+            eventBus.onError(error);
         }
     }
 
     @Override
     public void restartPreview() {
-        if (isPreviewStarted) {
-            stopPreview();
-            startPreview();
+        commands.post(() -> {
+            if (isPreviewStarted) {
+                // both queue their camera work behind this command
+                stopPreview();
+                startPreview();
+            }
+        });
+    }
+
+    /**
+     * Apply a new mode or size to the open camera, rebuilding the outputs it affects and the
+     * capture session only, which is much quicker than closing and opening the camera again.
+     *
+     * @param formerVideoSize The video size before the change.
+     */
+    private void reconfigurePreview(Size formerVideoSize) {
+        if (!isPreviewStarted) {
+            return;
+        }
+        if (camera == null) {
+            // still being opened with the outputs of the former configuration
+            restartPreview();
+            return;
+        }
+        closePreviewSession();
+        isContinuousShooting = false;
+        dropShots();
+        prepareWorkers();
+        if (mode != Values.MODE_VIDEO || !videoSize.equals(formerVideoSize)) {
+            // a recording going on is finished by the release
+            releaseRecordingController();
         }
+        eventBus.onDeviceConfigured();
+        startCaptureSession();
     }
 
     @Override
     public void stopPreview() {
         isPreviewStarted = false;
+        startupTrace = null;
+        PreviewFuture future = startupFuture;
+        if (future != null) {
+            startupFuture = null;
+            future.abandon();
+        }
         if (orientationEventListener != null) {
             orientationEventListener.disable();
         }
         throwIfNotInitialized();
-        closeCamera();
-        stopBackgroundThread();
+        // don't wait for the camera to close, the next startPreview() is queued behind it anyway
+        commands.post(() -> {
+            closeCamera();
+            imageReader = null;
+            retireImageReaders();
+            // commits still waiting for a batched fsync should not wait for the next session
+            imageSaverExecutor.execute(this::flushFiles);
+        });
+    }
+
+    private void flushFiles() {
+        try {
+            fileSyncer.flush();
+        } catch (IOException e) {
+            eventBus.onError(new Error(Error.ERROR_STORAGE, e));
+        }
     }
 
     @Override
@@ -465,18 +921,21 @@ public class Camera2Photographer implements InternalPhotographer {
 
     @Override
     public void setImageSize(Size size) {
-        if (size == null || !supportedImageSizes.contains(size)) {
-            callbackHandler.onError(new Error(Error.ERROR_INVALID_PARAM, size + " not supported."));
-            return;
-        }
+        commands.post(() -> {
+            if (size == null || !supportedImageSizes.contains(size)) {
+                eventBus.onError(new Error(Error.ERROR_INVALID_PARAM, size + " not supported."));
+                return;
+            }
 
-        if (imageSize.equals(size)) {
-            return;
-        }
+            if (size.equals(imageSize)) {
+                return;
+            }
 
-        resetSizes();
-        imageSize = size;
-        restartPreview();
+            Size formerVideoSize = videoSize;
+            resetSizes();
+            imageSize = size;
+            reconfigurePreview(formerVideoSize);
+        });
     }
 
     @Override
@@ -486,18 +945,21 @@ public class Camera2Photographer implements InternalPhotographer {
 
     @Override
     public void setVideoSize(Size size) {
-        if (size == null || !supportedVideoSizes.contains(size)) {
-            callbackHandler.onError(new Error(Error.ERROR_INVALID_PARAM, size + " not supported."));
-            return;
-        }
+        commands.post(() -> {
+            if (size == null || !supportedVideoSizes.contains(size)) {
+                eventBus.onError(new Error(Error.ERROR_INVALID_PARAM, size + " not supported."));
+                return;
+            }
 
-        if (videoSize.equals(size)) {
-            return;
-        }
+            if (size.equals(videoSize)) {
+                return;
+            }
 
-        resetSizes();
-        videoSize = size;
-        restartPreview();
+            Size formerVideoSize = videoSize;
+            resetSizes();
+            videoSize = size;
+            reconfigurePreview(formerVideoSize);
+        });
     }
 
     @Override
@@ -507,21 +969,24 @@ public class Camera2Photographer implements InternalPhotographer {
 
     @Override
     public void setAspectRatio(AspectRatio ratio) {
-        if (!isPreviewStarted) {
-            aspectRatio = ratio;
-            return;
-        }
+        commands.post(() -> {
+            if (!isPreviewStarted) {
+                aspectRatio = ratio;
+                return;
+            }
 
-        if (ratio == null || !previewSizeMap.ratios().contains(ratio)) {
-            callbackHandler.onError(new Error(Error.ERROR_INVALID_PARAM, ratio + " not supported."));
-            return;
-        }
-        if (ratio.equals(aspectRatio)) {
-            return;
-        }
-        resetSizes();
-        aspectRatio = ratio;
-        restartPreview();
+            if (ratio == null || !previewSizeMap.ratios().contains(ratio)) {
+                eventBus.onError(new Error(Error.ERROR_INVALID_PARAM, ratio + " not supported."));
+                return;
+            }
+            if (ratio.equals(aspectRatio)) {
+                return;
+            }
+            Size formerVideoSize = videoSize;
+            resetSizes();
+            aspectRatio = ratio;
+            reconfigurePreview(formerVideoSize);
+        });
     }
 
     @Override
@@ -531,14 +996,18 @@ public class Camera2Photographer implements InternalPhotographer {
 
     @Override
     public void setAutoFocus(boolean autoFocus) {
-        if (this.autoFocus == autoFocus) {
-            return;
-        }
-        this.autoFocus = autoFocus;
-        if (previewRequestBuilder != null) {
-            updateAutoFocus();
-            updatePreview(() -> this.autoFocus = !this.autoFocus);
-        }
+        commands.post(COMMAND_AUTO_FOCUS, () -> {
+            if (this.autoFocus == autoFocus) {
+                return;
+            }
+            boolean saved = this.autoFocus;
+            this.autoFocus = autoFocus;
+            if (previewRequestBuilder != null) {
+                updateAutoFocus();
+                requestPreviewUpdate(() -> this.autoFocus = saved);
+                prepareStillRequest();
+            }
+        });
     }
 
     @Override
@@ -548,8 +1017,35 @@ public class Camera2Photographer implements InternalPhotographer {
 
     @Override
     public void setFacing(int facing) {
-        this.facing = facing;
-        restartPreview();
+        commands.post(() -> {
+            if (this.facing == facing) {
+                return;
+            }
+            this.facing = facing;
+            if (isPreviewStarted) {
+                switchCamera();
+            }
+        });
+    }
+
+    /**
+     * Open the camera of the new facing, showing the last frame of the current one until the new
+     * one draws its first frame, runs on the camera thread.
+     */
+    private void switchCamera() {
+        // posted before the camera is closed, the view keeps its last frame meanwhile
+        mainHandler.post(preview::showFreezeFrame);
+        PreviewFuture future = beginStartup();
+        // listeners run on the main thread, after the freeze frame is shown
+        future.addListener(preview::hideFreezeFrame);
+        // the new camera is chosen and its outputs prepared from the cached capabilities while
+        // the current one keeps streaming
+        boolean isPrepared = prepareCamera(future);
+        closeCamera();
+        if (isPrepared) {
+            // closing goes on in the background, the new camera is opened right away
+            startOpeningCamera();
+        }
     }
 
     @Override
@@ -559,15 +1055,23 @@ public class Camera2Photographer implements InternalPhotographer {
 
     @Override
     public void setFlash(int flash) {
-        if (this.flash == flash) {
-            return;
-        }
-        int saved = this.flash;
-        this.flash = flash;
-        if (previewRequestBuilder != null) {
-            updateFlash();
-            updatePreview(() -> this.flash = saved);
-        }
+        commands.post(COMMAND_FLASH, () -> {
+            if (this.flash == flash) {
+                return;
+            }
+            int saved = this.flash;
+            this.flash = flash;
+            if (previewRequestBuilder != null) {
+                if (isZslActive != shouldUseZsl()) {
+                    // pictures move between the zero shutter lag frames and the JPEG output
+                    reconfigureCaptureSession();
+                    return;
+                }
+                updateFlash();
+                requestPreviewUpdate(() -> this.flash = saved);
+                prepareStillRequest();
+            }
+        });
     }
 
     @Override
@@ -577,55 +1081,529 @@ public class Camera2Photographer implements InternalPhotographer {
 
     @Override
     public void setZoom(float zoom) {
-        updateZoom(zoom);
+        commands.post(COMMAND_ZOOM, () -> {
+            zoomAnimation = null;
+            if (previewRequestBuilder != null) {
+                updateZoom(zoom);
+                requestPreviewUpdate(null);
+            } else {
+                this.zoom.set(zoom);
+            }
+        });
     }
 
     @Override
     public float getZoom() {
-        return zoom;
+        return zoom.getZoom();
     }
 
     @Override
-    public void setMode(int mode) {
-        this.mode = mode;
-        restartPreview();
+    public void animateZoomTo(float zoom, long durationMs, Interpolator interpolator) {
+        if (durationMs < 0) {
+            eventBus.onError(new Error(Error.ERROR_INVALID_PARAM, "Invalid zoom duration: " + durationMs));
+            return;
+        }
+        commands.post(COMMAND_ZOOM, () -> {
+            float target = this.zoom.clamp(zoom);
+            if (previewRequestBuilder == null || durationMs == 0) {
+                setZoom(target);
+                return;
+            }
+            boolean needsResults = zoomAnimation == null && mode == Values.MODE_VIDEO;
+            zoomAnimation = new ZoomAnimation(this.zoom.getZoom(), target, durationMs * 1000000L, interpolator);
+            if (needsResults) {
+                // the video preview only delivers its results when asked to
+                updatePreview(null);
+            }
+        });
     }
 
-    @Override
-    public int getMode() {
-        return mode;
+    private void stepZoomAnimation(TotalCaptureResult result) {
+        ZoomAnimation animation = zoomAnimation;
+        if (animation == null) {
+            return;
+        }
+        Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+        if (timestamp == null) {
+            return;
+        }
+        float newZoom = animation.zoomAt(timestamp);
+        if (animation.isFinished()) {
+            zoomAnimation = null;
+        }
+        if (updateZoom(newZoom)) {
+            // one request per captured frame at most, the interval of the other updates is skipped
+            updatePreview(null);
+        }
     }
 
-    private void collectPreviewSizes(StreamConfigurationMap map) {
-        supportedPreviewSizes.clear();
-        for (android.util.Size size : map.getOutputSizes(SurfaceTexture.class)) {
-            Size s = new Size(size.getWidth(), size.getHeight());
-            supportedPreviewSizes.add(s);
-            previewSizeMap.add(s);
+    @Override
+    public void setPreviewUpdateInterval(int millis) {
+        if (millis < 0) {
+            eventBus.onError(new Error(Error.ERROR_INVALID_PARAM, "Invalid preview update interval: " + millis));
+            return;
         }
+        commands.post(COMMAND_PREVIEW_UPDATE_INTERVAL, () -> {
+            previewUpdateInterval = millis;
+            applyPreviewUpdateInterval();
+        });
     }
 
-    private void collectImageSizes(StreamConfigurationMap map) {
-        supportedImageSizes.clear();
-        for (android.util.Size size : map.getOutputSizes(ImageFormat.JPEG)) {
-            Size s = new Size(size.getWidth(), size.getHeight());
-            supportedImageSizes.add(s);
-            imageSizeMap.add(s);
-        }
+    private void applyPreviewUpdateInterval() {
+        int millis = previewUpdateInterval;
+        // once per frame by default
+        previewUpdates.setInterval(millis > 0 ? millis * 1000000L : 1000000000L / expectedPreviewFps);
     }
 
-    private void collectVideoSizes(StreamConfigurationMap map) {
-        supportedVideoSizes.clear();
-        for (android.util.Size size : map.getOutputSizes(MediaRecorder.class)) {
-            Size s = new Size(size.getWidth(), size.getHeight());
-            if (s.getAreaSize() > MAX_VIDEO_SIZE) continue;
-            supportedVideoSizes.add(s);
-            videoSizeMap.add(s);
-        }
+    @Override
+    public void setMode(int mode) {
+        commands.post(() -> {
+            if (this.mode == mode) {
+                return;
+            }
+            this.mode = mode;
+            reconfigurePreview(videoSize);
+        });
     }
 
-    private void refineSizes() {
-        for (AspectRatio ratio : previewSizeMap.ratios()) {
+    @Override
+    public int getMode() {
+        return mode;
+    }
+
+    @Override
+    public void setDurability(int durability) {
+        if (durability != Values.DURABILITY_NONE && durability != Values.DURABILITY_SYNC_EACH
+                && durability != Values.DURABILITY_SYNC_BATCHED) {
+            eventBus.onError(new Error(Error.ERROR_INVALID_PARAM, "Invalid durability: " + durability));
+            return;
+        }
+        commands.post(() -> {
+            if (fileSyncer.setDurability(durability)) {
+                // a batch left by the former policy is synced off the camera thread
+                imageSaverExecutor.execute(this::flushFiles);
+            }
+        });
+    }
+
+    @Override
+    public int getDurability() {
+        return fileSyncer.getDurability();
+    }
+
+    @Override
+    public void setWriteQueueDepth(int depth) {
+        if (depth < 1 || depth > Values.MAX_BURST_SIZE) {
+            // every pending write holds an image of the reader, which is not deeper than this
+            eventBus.onError(new Error(Error.ERROR_INVALID_PARAM,
+                    "Write queue depth should be in [1, " + Values.MAX_BURST_SIZE + "]: " + depth));
+            return;
+        }
+        commands.post(() -> {
+            imageSaverExecutor.setQueueDepth(depth);
+            // a deeper queue takes the images waiting for room
+            saveAvailableImages();
+        });
+    }
+
+    @Override
+    public void setWriteBackpressure(int backpressure) {
+        if (backpressure != Values.BACKPRESSURE_THROTTLE && backpressure != Values.BACKPRESSURE_ERROR) {
+            eventBus.onError(new Error(Error.ERROR_INVALID_PARAM, "Invalid backpressure: " + backpressure));
+            return;
+        }
+        commands.post(() -> {
+            writeBackpressure = backpressure;
+            saveAvailableImages();
+        });
+    }
+
+    @Override
+    public WriteStats getWriteStats() {
+        return imageSaverExecutor.getStats();
+    }
+
+    @Override
+    public void addImageAnalyzer(ImageAnalyzer analyzer, Executor executor, int strategy) {
+        if (analyzer == null || executor == null) {
+            eventBus.onError(new Error(Error.ERROR_INVALID_PARAM, "Analyzer and executor are required"));
+            return;
+        }
+        if (strategy != Values.ANALYSIS_KEEP_LATEST && strategy != Values.ANALYSIS_BLOCK) {
+            eventBus.onError(new Error(Error.ERROR_INVALID_PARAM, "Invalid analysis strategy: " + strategy));
+            return;
+        }
+        commands.post(() -> {
+            if (imageAnalysis.add(analyzer, executor, strategy)) {
+                // the first analyzer brings in the analysis output
+                reconfigureCaptureSession();
+            }
+        });
+    }
+
+    @Override
+    public void removeImageAnalyzer(ImageAnalyzer analyzer) {
+        commands.post(() -> {
+            if (imageAnalysis.remove(analyzer)) {
+                reconfigureCaptureSession();
+            }
+        });
+    }
+
+    @Override
+    public void setAnalysisSize(Size size) {
+        if (size == null || size.getWidth() <= 0 || size.getHeight() <= 0) {
+            eventBus.onError(new Error(Error.ERROR_INVALID_PARAM, "Invalid analysis size: " + size));
+            return;
+        }
+        commands.post(() -> {
+            analysisTargetSize = size;
+            if (!imageAnalysis.isEmpty()) {
+                reconfigureCaptureSession();
+            }
+        });
+    }
+
+    @Override
+    public Size getAnalysisSize() {
+        return analysisSize;
+    }
+
+    @Override
+    public void setAnalysisRate(int fps) {
+        if (fps < 0) {
+            eventBus.onError(new Error(Error.ERROR_INVALID_PARAM, "Invalid analysis rate: " + fps));
+            return;
+        }
+        commands.post(() -> imageAnalysis.setRate(fps));
+    }
+
+    private void reconfigureCaptureSession() {
+        // a recording session has no analysis output, it is added back when recording finishes
+        if (camera != null && !isRecording()) {
+            closePreviewSession();
+            startCaptureSession();
+        }
+    }
+
+    private Size chooseAnalysisSize() {
+        Size target = analysisTargetSize;
+        int maxLonger = Math.max(target.getWidth(), target.getHeight());
+        int maxShorter = Math.min(target.getWidth(), target.getHeight());
+        AspectRatio ratio = AspectRatio.of(previewSize.getWidth(), previewSize.getHeight());
+        Size largestFit = null;
+        Size smallestMatch = null;
+        Size smallest = null;
+        for (Size size : capabilities.getAnalysisSizes()) {
+            if (smallest == null || size.getAreaSize() < smallest.getAreaSize()) {
+                smallest = size;
+            }
+            if (!ratio.matches(size)) continue;
+            if (smallestMatch == null || size.getAreaSize() < smallestMatch.getAreaSize()) {
+                smallestMatch = size;
+            }
+            int longer = Math.max(size.getWidth(), size.getHeight());
+            int shorter = Math.min(size.getWidth(), size.getHeight());
+            if (longer <= maxLonger && shorter <= maxShorter
+                    && (largestFit == null || size.getAreaSize() > largestFit.getAreaSize())) {
+                largestFit = size;
+            }
+        }
+        return largestFit != null ? largestFit : smallestMatch != null ? smallestMatch : smallest;
+    }
+
+    @Override
+    public void setZeroShutterLag(boolean enabled) {
+        commands.post(() -> {
+            if (zeroShutterLag == enabled) {
+                return;
+            }
+            zeroShutterLag = enabled;
+            if (enabled && capabilities != null && !isZslSupported()) {
+                eventBus.onError(new Error(Error.ERROR_UNSUPPORTED_OPERATION,
+                        "Zero shutter lag needs a camera of FULL hardware level"));
+                return;
+            }
+            if (mode == Values.MODE_IMAGE) {
+                reconfigureCaptureSession();
+            }
+        });
+    }
+
+    @Override
+    public boolean getZeroShutterLag() {
+        return zeroShutterLag;
+    }
+
+    private boolean shouldUseZsl() {
+        // the flash fires in a precapture sequence, the frames of the preview never had it
+        boolean isFlashFiring = flash == Values.FLASH_ON || flash == Values.FLASH_AUTO
+                || flash == Values.FLASH_RED_EYE;
+        return mode == Values.MODE_IMAGE && zeroShutterLag && isZslSupported() && !isFlashFiring;
+    }
+
+    // a preview and a maximum size YUV output at the same time are only guaranteed from FULL on
+    private boolean isZslSupported() {
+        int level = capabilities.getHardwareLevel();
+        return (level == CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_FULL
+                || level == CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_3)
+                && !capabilities.getAnalysisSizes().isEmpty();
+    }
+
+    private Size chooseZslSize() {
+        AspectRatio ratio = AspectRatio.of(imageSize.getWidth(), imageSize.getHeight());
+        Size largestMatch = null;
+        Size largest = null;
+        for (Size size : capabilities.getAnalysisSizes()) {
+            if (size.equals(imageSize)) {
+                return size;
+            }
+            if (largest == null || size.getAreaSize() > largest.getAreaSize()) {
+                largest = size;
+            }
+            if (ratio.matches(size) && (largestMatch == null || size.getAreaSize() > largestMatch.getAreaSize())) {
+                largestMatch = size;
+            }
+        }
+        return largestMatch != null ? largestMatch : largest;
+    }
+
+    @Override
+    public void setVideoEncoder(int encoder) {
+        if (encoder != Values.VIDEO_ENCODER_MEDIA_RECORDER && encoder != Values.VIDEO_ENCODER_MEDIA_CODEC) {
+            eventBus.onError(new Error(Error.ERROR_INVALID_PARAM, "Invalid video encoder: " + encoder));
+            return;
+        }
+        commands.post(() -> {
+            if (videoEncoder == encoder) {
+                return;
+            }
+            videoEncoder = encoder;
+            replaceRecordingController();
+        });
+    }
+
+    @Override
+    public int getVideoEncoder() {
+        return videoEncoder;
+    }
+
+    @Override
+    public void setPreRollDuration(int seconds) {
+        if (seconds < 0 || seconds > Values.MAX_PRE_ROLL_SECONDS) {
+            eventBus.onError(new Error(Error.ERROR_INVALID_PARAM,
+                    "Pre-roll duration should be in [0, " + Values.MAX_PRE_ROLL_SECONDS + "]: " + seconds));
+            return;
+        }
+        commands.post(() -> {
+            if (preRollSeconds == seconds) {
+                return;
+            }
+            preRollSeconds = seconds;
+            replaceRecordingController();
+        });
+    }
+
+    @Override
+    public int getPreRollDuration() {
+        return preRollSeconds;
+    }
+
+    private void replaceRecordingController() {
+        // a recording going on keeps its encoder, the new one is used after it
+        if (mode == Values.MODE_VIDEO && !isRecording()) {
+            releaseRecordingController();
+            reconfigureCaptureSession();
+        }
+    }
+
+    // the pre-roll needs an encoder running during the preview
+    private boolean usePersistentEncoder() {
+        return videoEncoder == Values.VIDEO_ENCODER_MEDIA_CODEC || preRollSeconds > 0;
+    }
+
+    private Surface preparePersistentEncoder() {
+        if (recordingController != null && !recordingController.hasPersistentSurface()) {
+            releaseRecordingController();
+        }
+        if (recordingController == null) {
+            recordingController = new RecordingController(new MediaCodecEngine(videoSize,
+                    VIDEO_BIT_RATE, VIDEO_FRAME_RATE, preRollSeconds, cameraHandler), recordingListener);
+        }
+        return recordingController.getPersistentSurface();
+    }
+
+    private void releaseRecordingController() {
+        if (recordingController != null) {
+            // a recording going on is finished by the release
+            recordingController.release();
+            recordingController = null;
+        }
+    }
+
+    @Override
+    public PreviewStats getPreviewStats() {
+        return textureView.getPreviewStats();
+    }
+
+    @Override
+    public void addCaptureSink(CaptureSink sink) {
+        if (sink != null && !captureSinks.contains(sink)) {
+            captureSinks.add(sink);
+        }
+    }
+
+    @Override
+    public void removeCaptureSink(CaptureSink sink) {
+        captureSinks.remove(sink);
+    }
+
+    @Override
+    public List<CaptureSink> getCaptureSinks() {
+        return new ArrayList<>(captureSinks);
+    }
+
+    private void saveAvailableImages() {
+        saveParkedShots();
+        while (imageReader != null) {
+            boolean hasCapacity = imageSaverExecutor.hasCapacity();
+            if (!hasCapacity && writeBackpressure == Values.BACKPRESSURE_THROTTLE) {
+                // leave the images in the reader, the camera stalls once the reader is full,
+                // we will be back here as soon as a write finishes
+                return;
+            }
+
+            Image image;
+            try {
+                // don't use acquireLatestImage() here, it would drop the pictures of a burst
+                image = imageReader.acquireNextImage();
+            } catch (IllegalStateException e) {
+                // all the images of the reader are being written
+                return;
+            }
+            if (image == null) {
+                return;
+            }
+            // saved once its shot is known, which may be right now
+            captureMatcher.addImage(image.getTimestamp(), image);
+        }
+    }
+
+    /**
+     * Report a saved picture and record that it was, runs on a saver thread.
+     */
+    private void announceShot(String filePath) {
+        eventBus.onShotFinished(filePath);
+        try {
+            CaptureJournal.forDirectory(new File(filePath).getParentFile()).delivered(filePath);
+        } catch (IOException e) {
+            // announced again after a crash at worst
+            Logger.w("Unable to record the delivery of " + filePath + ": " + e);
+        }
+    }
+
+    /**
+     * Finish the pictures a crash interrupted while they were being saved, and announce the ones
+     * saved but never reported, runs on a saver thread.
+     */
+    private void recoverShots() {
+        List<String> filePaths;
+        try {
+            filePaths = CaptureJournal.forDirectory(Utils.getFileDir()).recover();
+        } catch (IOException e) {
+            eventBus.onError(new Error(Error.ERROR_STORAGE, e));
+            return;
+        }
+        for (String filePath : filePaths) {
+            announceShot(filePath);
+        }
+    }
+
+    private void saveShot(Shot shot, Image image) {
+        if (shot.filePath == null) {
+            // its path could not be made, the error is reported already
+            closeImage(image);
+            shot.fail(new Error(Error.ERROR_STORAGE));
+            return;
+        }
+        if (writeBackpressure == Values.BACKPRESSURE_THROTTLE
+                && (!parkedShots.isEmpty() || !imageSaverExecutor.hasCapacity())) {
+            // captured already, it waits for a write to finish behind the ones parked before it
+            shot.parkedImage = image;
+            parkedShots.add(shot);
+            return;
+        }
+        if (!imageSaverExecutor.hasCapacity()) {
+            closeImage(image);
+            imageSaverExecutor.onDropped();
+            Error error = new Error(Error.ERROR_STORAGE, "Write queue is full, dropped: " + shot.filePath);
+            eventBus.onError(error);
+            shot.fail(error);
+            return;
+        }
+        submitShot(shot, image);
+    }
+
+    private void saveParkedShots() {
+        while (!parkedShots.isEmpty() && imageSaverExecutor.hasCapacity()) {
+            submitParkedShot(parkedShots.poll());
+        }
+    }
+
+    private void submitParkedShot(Shot shot) {
+        Image image = shot.parkedImage;
+        shot.parkedImage = null;
+        submitShot(shot, image);
+    }
+
+    private void submitShot(Shot shot, Image image) {
+        imageSaverExecutor.submit(new ImageSaver(image, () -> closeImage(image), shot, captureSinks,
+                newImageSaverCallback(shot)));
+    }
+
+    /**
+     * Give an image back to its reader, which may have been retired since, from any thread.
+     */
+    private void closeImage(Image image) {
+        for (PictureReader reader : pictureReaders) {
+            if (reader.close(image)) {
+                return;
+            }
+        }
+        image.close();
+    }
+
+    /**
+     * Stop taking images from the readers other than the current one, each closes once the
+     * images taken from it are closed, runs on the camera thread.
+     */
+    private void retireImageReaders() {
+        if (captureSession != null) {
+            // a reader may not be closed under a running session, this is done again once it is closed
+            return;
+        }
+        for (PictureReader reader : pictureReaders) {
+            if (reader != imageReader) {
+                reader.retire();
+            }
+            if (reader.isClosed()) {
+                pictureReaders.remove(reader);
+            }
+        }
+    }
+
+    private static void collectSizes(List<Size> sizes, SizeMap sizeMap, SortedSet<Size> supportedSizes,
+                                     int maxAreaSize) {
+        for (Size s : sizes) {
+            if (s.getAreaSize() > maxAreaSize) continue;
+            supportedSizes.add(s);
+            sizeMap.add(s);
+        }
+    }
+
+    private void refineSizes(SizeMap previewSizeMap, SortedSet<Size> supportedPreviewSizes,
+                             SizeMap imageSizeMap, SizeMap videoSizeMap) {
+        for (AspectRatio ratio : new ArrayList<>(previewSizeMap.ratios())) {
             if ((mode == Values.MODE_VIDEO && !videoSizeMap.ratios().contains(ratio))
                     || (mode == Values.MODE_IMAGE && !imageSizeMap.ratios().contains(ratio))) {
                 if (previewSizeMap.sizes(ratio) != null) {
@@ -689,10 +1667,28 @@ public class Camera2Photographer implements InternalPhotographer {
             camera.close();
             camera = null;
         }
-        if (mediaRecorder != null) {
-            mediaRecorder.release();
-            mediaRecorder = null;
+        releaseRecordingController();
+        isContinuousShooting = false;
+        dropShots();
+        zslBuffers.clear();
+    }
+
+    /**
+     * Fail the pictures not captured yet, their session is gone.
+     */
+    private void dropShots() {
+        Error error = new Error(Error.ERROR_CAMERA, "The capture session is closed");
+        for (Shot shot : requestedShots) {
+            shot.fail(error);
+        }
+        requestedShots.clear();
+        captureMatcher.clear();
+        // captured already, written past the queue depth rather than lost
+        while (!parkedShots.isEmpty()) {
+            submitParkedShot(parkedShots.poll());
         }
+        remainingStillCaptures = 0;
+        imageCaptureCallback.setState(ImageCaptureCallback.STATE_PREVIEW);
     }
 
     private void closePreviewSession() {
@@ -700,6 +1696,14 @@ public class Camera2Photographer implements InternalPhotographer {
             captureSession.close();
             captureSession = null;
         }
+        retireImageReaders();
+        imageAnalysis.close();
+        analysisSize = null;
+        zslRing.close();
+        isZslActive = false;
+        stillRequests.clear();
+        previewUpdates.cancel();
+        zoomAnimation = null;
     }
 
     private void startCaptureSession() {
@@ -707,20 +1711,53 @@ public class Camera2Photographer implements InternalPhotographer {
                 || (mode == Values.MODE_IMAGE && imageReader == null)) {
             return;
         }
+        // the preview surface is created again below
+        stillRequests.clear();
         try {
             textureView.setBufferSize(previewSize.getWidth(), previewSize.getHeight());
-            previewRequestBuilder = camera.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
-            Surface previewSurface = textureView.getSurface();
+            boolean usePersistentEncoder = mode == Values.MODE_VIDEO && usePersistentEncoder();
+            previewRequestBuilder = camera.createCaptureRequest(usePersistentEncoder
+                    ? CameraDevice.TEMPLATE_RECORD : CameraDevice.TEMPLATE_PREVIEW);
+            previewSurface = textureView.getSurface();
             previewRequestBuilder.addTarget(previewSurface);
 
             List<Surface> surfaces = new ArrayList<>();
             surfaces.add(previewSurface);
-            if (mode == Values.MODE_IMAGE) {
-                surfaces.add(imageReader.getSurface());
+            boolean useZsl = shouldUseZsl();
+            if (useZsl) {
+                // the frames for pictures come with the preview, there is no room for the JPEG output
+                Surface zslSurface = zslRing.open(chooseZslSize());
+                surfaces.add(zslSurface);
+                previewRequestBuilder.addTarget(zslSurface);
+            } else {
+                zslRing.close();
+                zslBuffers.clear();
+                if (mode == Values.MODE_IMAGE) {
+                    surfaces.add(imageReader.getSurface());
+                }
+            }
+            isZslActive = useZsl;
+            Surface encoderSurface = usePersistentEncoder ? preparePersistentEncoder() : null;
+            if (encoderSurface != null) {
+                surfaces.add(encoderSurface);
+                previewRequestBuilder.addTarget(encoderSurface);
+            }
+            Size analysisSize = imageAnalysis.isEmpty() ? null : chooseAnalysisSize();
+            if (analysisSize != null) {
+                Surface analysisSurface = imageAnalysis.open(analysisSize);
+                surfaces.add(analysisSurface);
+                previewRequestBuilder.addTarget(analysisSurface);
+            } else {
+                imageAnalysis.close();
             }
-            camera.createCaptureSession(surfaces, sessionCallback, null);
+            this.analysisSize = analysisSize;
+            StartupTrace trace = startupTrace;
+            if (trace != null && !trace.isEnded(StartupTrace.PHASE_CONFIGURE_SESSION)) {
+                trace.begin(StartupTrace.PHASE_CONFIGURE_SESSION);
+            }
+            camera.createCaptureSession(surfaces, sessionCallback, cameraHandler);
         } catch (CameraAccessException e) {
-            callbackHandler.onError(new Error(Error.ERROR_CAMERA, e));
+            eventBus.onError(new Error(Error.ERROR_CAMERA, e));
         }
     }
 
@@ -730,10 +1767,8 @@ public class Camera2Photographer implements InternalPhotographer {
             return;
         }
 
-        int[] modes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
         // Auto focus is not supported
-        if (modes == null || modes.length == 0 ||
-                (modes.length == 1 && modes[0] == CameraCharacteristics.CONTROL_AF_MODE_OFF)) {
+        if (!capabilities.isAutoFocusSupported()) {
             autoFocus = false;
             previewRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_OFF);
         } else {
@@ -748,164 +1783,345 @@ public class Camera2Photographer implements InternalPhotographer {
     }
 
     private void updateFlash() {
+        applyFlash(previewRequestBuilder, flash);
+    }
+
+    static void applyFlash(CaptureRequest.Builder builder, int flash) {
         switch (flash) {
             case Values.FLASH_OFF:
-                previewRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_ON);
-                previewRequestBuilder.set(CaptureRequest.FLASH_MODE, CaptureRequest.FLASH_MODE_OFF);
+                builder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_ON);
+                builder.set(CaptureRequest.FLASH_MODE, CaptureRequest.FLASH_MODE_OFF);
                 break;
             case Values.FLASH_ON:
-                previewRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_ON_ALWAYS_FLASH);
-                previewRequestBuilder.set(CaptureRequest.FLASH_MODE, CaptureRequest.FLASH_MODE_OFF);
+                builder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_ON_ALWAYS_FLASH);
+                builder.set(CaptureRequest.FLASH_MODE, CaptureRequest.FLASH_MODE_OFF);
                 break;
             case Values.FLASH_TORCH:
-                previewRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_ON);
-                previewRequestBuilder.set(CaptureRequest.FLASH_MODE, CaptureRequest.FLASH_MODE_TORCH);
+                builder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_ON);
+                builder.set(CaptureRequest.FLASH_MODE, CaptureRequest.FLASH_MODE_TORCH);
                 break;
             case Values.FLASH_AUTO:
-                previewRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_ON_AUTO_FLASH);
-                previewRequestBuilder.set(CaptureRequest.FLASH_MODE, CaptureRequest.FLASH_MODE_OFF);
+                builder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_ON_AUTO_FLASH);
+                builder.set(CaptureRequest.FLASH_MODE, CaptureRequest.FLASH_MODE_OFF);
                 break;
             case Values.FLASH_RED_EYE:
-                previewRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_ON_AUTO_FLASH_REDEYE);
-                previewRequestBuilder.set(CaptureRequest.FLASH_MODE, CaptureRequest.FLASH_MODE_OFF);
+                builder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_ON_AUTO_FLASH_REDEYE);
+                builder.set(CaptureRequest.FLASH_MODE, CaptureRequest.FLASH_MODE_OFF);
                 break;
         }
     }
 
     @Override
-    public void takePicture() {
-        if (mode != Values.MODE_IMAGE) {
-            callbackHandler.onError(new Error(Error.ERROR_INVALID_PARAM, "Cannot takePicture() in non-IMAGE mode"));
-            return;
-        }
-
-        try {
-            nextImageAbsolutePath = Utils.getImageFilePath();
-        } catch (IOException e) {
-            callbackHandler.onError(Utils.errorFromThrowable(e));
-            return;
-        }
-        if (autoFocus) {
-            lockFocus();
-        } else {
-            captureStillPicture();
-        }
-        preview.shot();
+    public ShotFuture takePicture() {
+        return takePicture(null);
     }
 
     @Override
-    public void startRecording(MediaRecorderConfigurator configurator) {
-        throwIfNoMediaRecorder();
-        if (camera == null || !textureView.isAvailable() || previewSize == null) {
-            callbackHandler.onError(new Error(Error.ERROR_CAMERA));
+    public ShotFuture takePicture(CaptureMetadata metadata) {
+        long pressTime = SystemClock.elapsedRealtimeNanos();
+        Shot shot = newShot(pressTime, metadata != null ? new CaptureMetadata(metadata) : null);
+        commands.post(() -> {
+            Error error = checkReadyForShooting("takePicture()");
+            if (error != null) {
+                shot.fail(error);
+                return;
+            }
+
+            try {
+                shot.filePath = Utils.getImageFilePath();
+            } catch (IOException e) {
+                error = Utils.errorFromThrowable(e);
+                eventBus.onError(error);
+                shot.fail(error);
+                return;
+            }
+            if (isZslActive) {
+                takeZslPicture(shot);
+            } else {
+                requestedShots.add(shot);
+                startStillCaptureSequence();
+            }
+            mainHandler.post(preview::shot);
+        });
+        return shot.future;
+    }
+
+    private Shot newShot(long pressTime, CaptureMetadata metadata) {
+        int id = nextShotId.incrementAndGet();
+        return new Shot(id, pressTime, new ShotFuture(id, mainHandler), metadata);
+    }
+
+    private void takeZslPicture(Shot shot) {
+        boolean isRealtimeSensor = capabilities.getTimestampSource()
+                == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+        ZslRing.Frame frame = zslRing.take(shot.pressTime, isRealtimeSensor);
+        if (frame == null) {
+            Error error = new Error(Error.ERROR_CAMERA, "No frame to take the picture from");
+            eventBus.onError(error);
+            shot.fail(error);
             return;
         }
-
-        try {
-            nextVideoAbsolutePath = Utils.getVideoFilePath();
-        } catch (IOException e) {
-            callbackHandler.onError(Utils.errorFromThrowable(e));
+        if (!imageSaverExecutor.hasCapacity()) {
+            frame.release();
+            imageSaverExecutor.onDropped();
+            Error error = new Error(Error.ERROR_STORAGE, "Write queue is full, dropped: " + shot.filePath);
+            eventBus.onError(error);
+            shot.fail(error);
             return;
         }
+        shot.sensorTimestamp = frame.image.getTimestamp();
+        int orientation = Utils.getOrientation(sensorOrientation, currentDeviceRotation);
+        imageSaverExecutor.submit(new ZslImageSaver(frame, orientation, zslBuffers, shot, captureSinks,
+                newImageSaverCallback(shot)));
+    }
 
-        try {
-            closePreviewSession();
-            setUpMediaRecorder(configurator);
-            previewRequestBuilder = camera.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
-            List<Surface> surfaces = new ArrayList<>();
+    @Override
+    public List<ShotFuture> takeBurst(int count) {
+        long pressTime = SystemClock.elapsedRealtimeNanos();
+        // no futures for an invalid count, the error is reported
+        int size = count >= 1 && count <= Values.MAX_BURST_SIZE ? count : 0;
+        List<Shot> shots = new ArrayList<>(size);
+        List<ShotFuture> futures = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Shot shot = newShot(pressTime, null);
+            shots.add(shot);
+            futures.add(shot.future);
+        }
+        commands.post(() -> {
+            Error error = checkReadyForShooting("takeBurst()");
+            if (error == null) {
+                error = checkNotZsl("takeBurst()");
+            }
+            if (error == null && (count < 1 || count > Values.MAX_BURST_SIZE)) {
+                error = new Error(Error.ERROR_INVALID_PARAM,
+                        "Burst count should be in [1, " + Values.MAX_BURST_SIZE + "]: " + count);
+                eventBus.onError(error);
+            }
+            if (error == null) {
+                long timestamp = System.currentTimeMillis();
+                try {
+                    for (int i = 0; i < count; i++) {
+                        shots.get(i).filePath = Utils.getImageFilePath(timestamp, i);
+                    }
+                } catch (IOException e) {
+                    error = Utils.errorFromThrowable(e);
+                    eventBus.onError(error);
+                }
+            }
+            if (error != null) {
+                for (Shot shot : shots) {
+                    shot.fail(error);
+                }
+                return;
+            }
+            requestedShots.addAll(shots);
+            startStillCaptureSequence();
+            mainHandler.post(preview::shot);
+        });
+        return futures;
+    }
 
-            Surface previewSurface = textureView.getSurface();
-            surfaces.add(previewSurface);
-            previewRequestBuilder.addTarget(previewSurface);
+    @Override
+    public void startContinuousShooting() {
+        commands.post(() -> {
+            if (checkReadyForShooting("startContinuousShooting()") != null
+                    || checkNotZsl("startContinuousShooting()") != null) {
+                return;
+            }
+            if (imageCaptureCallback.getState() != ImageCaptureCallback.STATE_PREVIEW || remainingStillCaptures > 0) {
+                eventBus.onError(new Error(Error.ERROR_INVALID_PARAM,
+                        "Cannot startContinuousShooting() while pictures are being taken"));
+                return;
+            }
 
-            // Set up Surface for the MediaRecorder
-            Surface recorderSurface = mediaRecorder.getSurface();
-            surfaces.add(recorderSurface);
-            previewRequestBuilder.addTarget(recorderSurface);
-            // Start a capture session
-            // Once the session starts, we can update the UI and start recording
-            camera.createCaptureSession(surfaces, new CameraCaptureSession.StateCallback() {
+            isContinuousShooting = true;
+            continuousShootingTimestamp = System.currentTimeMillis();
+            continuousShootingIndex = 0;
+            startStillCaptureSequence();
+            mainHandler.post(preview::shot);
+        });
+    }
 
-                @Override
-                public void onConfigured(@NonNull CameraCaptureSession cameraCaptureSession) {
-                    captureSession = cameraCaptureSession;
-                    applyZoom();
-                    updatePreview(null);
-                    isRecordingVideo = true;
-                    mediaRecorder.start();
-                    callbackHandler.onStartRecording();
-                }
+    @Override
+    public void stopContinuousShooting() {
+        commands.post(() -> {
+            if (!isContinuousShooting) return;
+            isContinuousShooting = false;
+            if (captureSession == null) return;
+            try {
+                captureSession.stopRepeating();
+            } catch (CameraAccessException e) {
+                eventBus.onError(new Error(Error.ERROR_CAMERA, e));
+            }
+            unlockFocus();
+        });
+    }
 
-                @Override
-                public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
-                    callbackHandler.onError(new Error(Error.ERROR_CAMERA));
-                }
-            }, null);
-        } catch (CameraAccessException e) {
-            callbackHandler.onError(new Error(Error.ERROR_CAMERA, e));
-        } catch (IOException e) {
-            callbackHandler.onError(Utils.errorFromThrowable(e));
+    /**
+     * @return The error reported if pictures can't be taken now, or {@code null}.
+     */
+    private Error checkReadyForShooting(String operation) {
+        Error error = null;
+        if (mode != Values.MODE_IMAGE) {
+            error = new Error(Error.ERROR_INVALID_PARAM, "Cannot " + operation + " in non-IMAGE mode");
+        } else if (isContinuousShooting) {
+            error = new Error(Error.ERROR_INVALID_PARAM, "Cannot " + operation + " while continuous shooting");
+        } else if (captureSession == null) {
+            error = new Error(Error.ERROR_CAMERA);
+        }
+        if (error != null) {
+            eventBus.onError(error);
         }
+        return error;
     }
 
-    private void setUpMediaRecorder(MediaRecorderConfigurator configurator) throws IOException {
-        if (configurator == null || configurator.useDefaultConfigs()) {
-            mediaRecorder.setAudioSource(MediaRecorder.AudioSource.MIC);
-            mediaRecorder.setVideoSource(MediaRecorder.VideoSource.SURFACE);
-            mediaRecorder.setOutputFormat(MediaRecorder.OutputFormat.MPEG_4);
-            mediaRecorder.setOutputFile(nextVideoAbsolutePath);
-            mediaRecorder.setVideoEncodingBitRate(10000000);
-            mediaRecorder.setVideoFrameRate(30);
-            mediaRecorder.setVideoSize(videoSize.getWidth(), videoSize.getHeight());
-            mediaRecorder.setVideoEncoder(MediaRecorder.VideoEncoder.H264);
-            mediaRecorder.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
+    private Error checkNotZsl(String operation) {
+        if (isZslActive) {
+            Error error = new Error(Error.ERROR_UNSUPPORTED_OPERATION, "Cannot " + operation + " in zero shutter lag mode");
+            eventBus.onError(error);
+            return error;
         }
+        return null;
+    }
 
-        if (configurator != null) {
-            configurator.configure(mediaRecorder);
+    private void startStillCaptureSequence() {
+        if (imageCaptureCallback.getState() != ImageCaptureCallback.STATE_PREVIEW) {
+            // a sequence is going on, the new pictures are captured with focus and exposure it locks
+            return;
         }
+        if (autoFocus) {
+            lockFocus();
+        } else {
+            imageCaptureCallback.onReady();
+        }
+    }
 
-        mediaRecorder.setOrientationHint(Utils.getOrientation(sensorOrientation, currentDeviceRotation));
-        mediaRecorder.prepare();
+    @Override
+    public void startRecording(MediaRecorderConfigurator configurator) {
+        commands.post(() -> {
+            if (!checkVideoMode("startRecording()")) return;
+            if (isRecording()) return;
+            if (!textureView.isAvailable() || previewSize == null) {
+                eventBus.onError(new Error(Error.ERROR_CAMERA));
+                return;
+            }
+
+            String filePath;
+            try {
+                filePath = Utils.getVideoFilePath();
+            } catch (IOException e) {
+                eventBus.onError(Utils.errorFromThrowable(e));
+                return;
+            }
+            int orientation = Utils.getOrientation(sensorOrientation, currentDeviceRotation);
+
+            if (recordingController != null && recordingController.hasPersistentSurface()) {
+                // the encoder is in the preview session already
+                recordingController.start(filePath, orientation);
+                return;
+            }
+
+            releaseRecordingController();
+            recordingController = new RecordingController(new MediaRecorderEngine(videoSize,
+                    VIDEO_BIT_RATE, VIDEO_FRAME_RATE, configurator), recordingListener);
+            Surface recorderSurface = recordingController.prepareRecording(filePath, orientation);
+            if (recorderSurface == null) {
+                return;
+            }
+            RecordingController controller = recordingController;
+            try {
+                closePreviewSession();
+                previewRequestBuilder = camera.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
+                List<Surface> surfaces = new ArrayList<>();
+
+                previewSurface = textureView.getSurface();
+                surfaces.add(previewSurface);
+                previewRequestBuilder.addTarget(previewSurface);
+
+                surfaces.add(recorderSurface);
+                previewRequestBuilder.addTarget(recorderSurface);
+                // Start a capture session
+                // Once the session starts, we can update the UI and start recording
+                camera.createCaptureSession(surfaces, new CameraCaptureSession.StateCallback() {
+
+                    @Override
+                    public void onConfigured(@NonNull CameraCaptureSession cameraCaptureSession) {
+                        captureSession = cameraCaptureSession;
+                        applyZoom();
+                        updatePreview(null);
+                        resetPreviewStats();
+                        if (!controller.start(filePath, orientation) && controller == recordingController) {
+                            startCaptureSession();
+                        }
+                    }
+
+                    @Override
+                    public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
+                        eventBus.onError(new Error(Error.ERROR_CAMERA));
+                    }
+                }, cameraHandler);
+            } catch (CameraAccessException e) {
+                eventBus.onError(new Error(Error.ERROR_CAMERA, e));
+            }
+        });
     }
 
     @Override
     public void pauseRecording() {
-        throwIfNoMediaRecorder();
-        if (!isRecordingVideo) return;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-            mediaRecorder.pause();
-        } else {
-            callbackHandler.onError(new Error(Error.ERROR_UNSUPPORTED_OPERATION));
-        }
+        commands.post(() -> {
+            if (!isRecording()) return;
+            recordingController.pause();
+        });
     }
 
     @Override
     public void resumeRecording() {
-        throwIfNoMediaRecorder();
-        if (!isRecordingVideo) return;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-            mediaRecorder.resume();
-        } else {
-            callbackHandler.onError(new Error(Error.ERROR_UNSUPPORTED_OPERATION));
-        }
+        commands.post(() -> {
+            if (!isRecording()) return;
+            recordingController.resume();
+        });
     }
 
     @Override
     public void finishRecording() {
-        if (!isRecordingVideo) return;
-        throwIfNoMediaRecorder();
-        isRecordingVideo = false;
-        mediaRecorder.stop();
-        mediaRecorder.reset();
-        callbackHandler.onFinishRecording(nextVideoAbsolutePath);
-        startCaptureSession();
+        commands.post(() -> {
+            if (!isRecording()) return;
+            // the file is reported once the engine has finished it
+            recordingController.stop();
+        });
     }
 
     @Override
     public void setOnEventListener(OnEventListener listener) {
         throwIfNotInitialized();
-        callbackHandler.setOnEventListener(listener);
+        eventBus.setMainListener(listener);
+    }
+
+    @Override
+    public void addOnEventListener(OnEventListener listener, Executor executor) {
+        throwIfNotInitialized();
+        if (listener == null || executor == null) {
+            eventBus.onError(new Error(Error.ERROR_INVALID_PARAM, "Listener and executor are required"));
+            return;
+        }
+        eventBus.subscribe(listener, executor);
+    }
+
+    @Override
+    public void removeOnEventListener(OnEventListener listener) {
+        throwIfNotInitialized();
+        eventBus.unsubscribe(listener);
+    }
+
+    @Override
+    public Executor getMainExecutor() {
+        throwIfNotInitialized();
+        return mainExecutor;
+    }
+
+    @Override
+    public Executor getCameraExecutor() {
+        return cameraExecutor;
     }
 
     private void lockFocus() {
@@ -913,83 +2129,135 @@ public class Camera2Photographer implements InternalPhotographer {
                 CaptureRequest.CONTROL_AF_TRIGGER_START);
         try {
             imageCaptureCallback.setState(ImageCaptureCallback.STATE_LOCKING);
-            captureSession.capture(previewRequestBuilder.build(), imageCaptureCallback, null);
+            captureSession.capture(previewRequestBuilder.build(), imageCaptureCallback, cameraHandler);
         } catch (CameraAccessException e) {
-            callbackHandler.onError(new Error(Error.ERROR_CAMERA, "Failed to lock focus.", e));
+            Error error = new Error(Error.ERROR_CAMERA, "Failed to lock focus.", e);
+            eventBus.onError(error);
+            imageCaptureCallback.setState(ImageCaptureCallback.STATE_PREVIEW);
+            for (Shot shot : requestedShots) {
+                shot.fail(error);
+            }
+            requestedShots.clear();
         }
     }
 
-    private void captureStillPicture() {
+    private void captureStillPictures() {
+        List<Shot> shots = new ArrayList<>(requestedShots.size());
+        for (Shot shot : requestedShots) {
+            if (!shot.isCancelled()) {
+                shots.add(shot);
+            }
+        }
+        requestedShots.clear();
+        if (shots.isEmpty()) {
+            if (remainingStillCaptures == 0) {
+                unlockFocus();
+            }
+            return;
+        }
+
         try {
-            CaptureRequest.Builder captureRequestBuilder = camera.createCaptureRequest(
-                    CameraDevice.TEMPLATE_STILL_CAPTURE);
-            captureRequestBuilder.addTarget(imageReader.getSurface());
-            captureRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
-                    previewRequestBuilder.get(CaptureRequest.CONTROL_AF_MODE));
-            switch (flash) {
-                case Values.FLASH_OFF:
-                    captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
-                            CaptureRequest.CONTROL_AE_MODE_ON);
-                    captureRequestBuilder.set(CaptureRequest.FLASH_MODE,
-                            CaptureRequest.FLASH_MODE_OFF);
-                    break;
-                case Values.FLASH_ON:
-                    captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
-                            CaptureRequest.CONTROL_AE_MODE_ON_ALWAYS_FLASH);
-                    break;
-                case Values.FLASH_TORCH:
-                    captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
-                            CaptureRequest.CONTROL_AE_MODE_ON);
-                    captureRequestBuilder.set(CaptureRequest.FLASH_MODE,
-                            CaptureRequest.FLASH_MODE_TORCH);
-                    break;
-                case Values.FLASH_AUTO:
-                    captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
-                            CaptureRequest.CONTROL_AE_MODE_ON_AUTO_FLASH);
-                    break;
-                case Values.FLASH_RED_EYE:
-                    captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
-                            CaptureRequest.CONTROL_AE_MODE_ON_AUTO_FLASH);
-                    break;
-            }
-            captureRequestBuilder.set(CaptureRequest.JPEG_ORIENTATION,
-                    Utils.getOrientation(sensorOrientation, currentDeviceRotation));
-            captureRequestBuilder.set(CaptureRequest.SCALER_CROP_REGION, calculateZoomRect());
+            // the requests of a burst feed the preview too, so it does not freeze in between
+            boolean isBurst = shots.size() > 1;
+            CaptureRequest.Builder captureRequestBuilder = getStillCaptureRequestBuilder(isBurst);
+            List<CaptureRequest> requests = new ArrayList<>(shots.size());
+            for (Shot shot : shots) {
+                captureRequestBuilder.setTag(shot);
+                requests.add(captureRequestBuilder.build());
+            }
             captureSession.stopRepeating();
-            captureSession.capture(captureRequestBuilder.build(),
-                    new CameraCaptureSession.CaptureCallback() {
-                        @Override
-                        public void onCaptureCompleted(@NonNull CameraCaptureSession session,
-                                                       @NonNull CaptureRequest request,
-                                                       @NonNull TotalCaptureResult result) {
-                            unlockFocus();
-                            callbackHandler.onShotFinished(nextImageAbsolutePath);
-                        }
+            if (isBurst) {
+                captureSession.captureBurst(requests, stillCaptureCallback, cameraHandler);
+            } else {
+                captureSession.capture(requests.get(0), stillCaptureCallback, cameraHandler);
+            }
+            remainingStillCaptures += requests.size();
+        } catch (CameraAccessException e) {
+            Error error = new Error(Error.ERROR_CAMERA, "Cannot capture a still picture.", e);
+            eventBus.onError(error);
+            for (Shot shot : shots) {
+                shot.fail(error);
+            }
+            if (remainingStillCaptures == 0) {
+                unlockFocus();
+            }
+        }
+    }
 
-                        @Override
-                        public void onCaptureFailed(@NonNull CameraCaptureSession session,
-                                                    @NonNull CaptureRequest request,
-                                                    @NonNull CaptureFailure failure) {
-                            unlockFocus();
-                            callbackHandler.onError(new Error(Error.ERROR_CAMERA));
-                        }
-                    }, null);
+    private void startRepeatingStillCapture() {
+        try {
+            CaptureRequest.Builder captureRequestBuilder = getStillCaptureRequestBuilder(true);
+            captureRequestBuilder.setTag(null);
+            captureSession.setRepeatingRequest(captureRequestBuilder.build(), continuousShootingCallback, cameraHandler);
         } catch (CameraAccessException e) {
-            callbackHandler.onError(new Error(Error.ERROR_CAMERA, "Cannot capture a still picture.", e));
+            isContinuousShooting = false;
+            eventBus.onError(new Error(Error.ERROR_CAMERA, "Cannot start continuous shooting.", e));
+            unlockFocus();
+        }
+    }
+
+    private void onStillCaptureFinished() {
+        if (--remainingStillCaptures > 0) {
+            return;
+        }
+        remainingStillCaptures = 0;
+        if (captureSession == null) {
+            return;
+        }
+        if (requestedShots.isEmpty()) {
+            unlockFocus();
+        } else {
+            // taken while the former pictures were being captured, focus is still locked
+            captureStillPictures();
+        }
+    }
+
+    private CaptureRequest.Builder createStillCaptureRequestBuilder(boolean keepPreview)
+            throws CameraAccessException {
+        CaptureRequest.Builder captureRequestBuilder = camera.createCaptureRequest(
+                CameraDevice.TEMPLATE_STILL_CAPTURE);
+        captureRequestBuilder.addTarget(imageReader.getSurface());
+        if (keepPreview) {
+            captureRequestBuilder.addTarget(previewSurface);
+            // exposure has been settled by the precapture sequence, hold it for all the pictures
+            captureRequestBuilder.set(CaptureRequest.CONTROL_AE_LOCK, true);
+        }
+        return captureRequestBuilder;
+    }
+
+    private CaptureRequest.Builder getStillCaptureRequestBuilder(boolean keepPreview)
+            throws CameraAccessException {
+        return stillRequests.get(keepPreview, flash, previewRequestBuilder.get(CaptureRequest.CONTROL_AF_MODE),
+                zoom.getCropRegion(), Utils.getOrientation(sensorOrientation, currentDeviceRotation));
+    }
+
+    /**
+     * Bring the single picture request up to date with the settings, so pressing the shutter
+     * only looks it up.
+     */
+    private void prepareStillRequest() {
+        if (mode != Values.MODE_IMAGE || isZslActive || captureSession == null || imageReader == null) {
+            return;
+        }
+        try {
+            getStillCaptureRequestBuilder(false);
+        } catch (CameraAccessException | IllegalStateException e) {
+            // tried again when a picture is taken
+            Logger.w("Unable to prepare the still request: " + e);
         }
     }
 
     private void unlockFocus() {
         previewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CaptureRequest.CONTROL_AF_TRIGGER_CANCEL);
         try {
-            captureSession.capture(previewRequestBuilder.build(), imageCaptureCallback, null);
+            captureSession.capture(previewRequestBuilder.build(), imageCaptureCallback, cameraHandler);
             updateAutoFocus();
             updateFlash();
             previewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CaptureRequest.CONTROL_AF_TRIGGER_IDLE);
             updatePreview(null);
             imageCaptureCallback.setState(ImageCaptureCallback.STATE_PREVIEW);
         } catch (CameraAccessException e) {
-            callbackHandler.onError(new Error(Error.ERROR_CAMERA, e));
+            eventBus.onError(new Error(Error.ERROR_CAMERA, e));
         }
     }
 
@@ -998,87 +2266,104 @@ public class Camera2Photographer implements InternalPhotographer {
         return Utils.getOrientation(sensorOrientation, rotation);
     }
 
-    private void startBackgroundThread() {
-        backgroundThread = new HandlerThread("CameraBackground");
-        backgroundThread.start();
-        backgroundHandler = new Handler(backgroundThread.getLooper());
-    }
-
-    private void stopBackgroundThread() {
-        backgroundThread.quitSafely();
-        try {
-            backgroundThread.join();
-            backgroundThread = null;
-            backgroundHandler = null;
-        } catch (InterruptedException e) {
-            callbackHandler.onError(new Error(Error.ERROR_DEFAULT_CODE, e));
-        }
-    }
-
     private void focusAt(MotionEvent event) {
+        // the event is recycled once we return, so the focus area is calculated right here
         Rect focusRect = null;
-        Integer maxRegionsAf = characteristics.get(CameraCharacteristics.CONTROL_MAX_REGIONS_AF);
-        if (maxRegionsAf != null && maxRegionsAf >= 1) {
-            final Rect sensorArraySize = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+        CameraCapabilities capabilities = this.capabilities;
+        if (capabilities == null) return;
+        if (capabilities.getMaxRegionsAf() >= 1 && capabilities.hasActiveArray()) {
+            final Rect sensorArraySize = capabilities.newActiveArray();
             focusRect = Utils.calculateFocusArea(sensorArraySize, getDisplayOrientation(), textureView, event);
         }
-        focusHandler.focus(captureSession, previewRequestBuilder,
-                focusRect,
-                error -> {
-                    // resume repeating (preview surface will get frames)
-                    updatePreview(null);
-                    preview.focusFinished();
-                    if (error != null) {
-                        callbackHandler.onError(error);
-                    }
-                });
+        final Rect focusArea = focusRect;
+        commands.post(() -> {
+            if (captureSession == null) return;
+            focusHandler.focus(captureSession, previewRequestBuilder,
+                    focusArea,
+                    error -> {
+                        // resume repeating (preview surface will get frames)
+                        updatePreview(null);
+                        mainHandler.post(preview::focusFinished);
+                        if (error != null) {
+                            eventBus.onError(error);
+                        }
+                    });
+        });
         preview.focusRequestAt((int) event.getX(), (int) event.getY());
     }
 
-    private void updateZoom(float newZoom) {
-        newZoom = clampZoom(newZoom);
-        if (Utils.checkFloatEqual(zoom, newZoom)) return;
-        zoom = newZoom;
-        callbackHandler.onZoomChanged(zoom);
-        applyZoom();
-    }
-
-    private float clampZoom(float zoom) {
-        return Utils.clamp(zoom, 1.f, maxZoom);
+    /**
+     * @return Whether another crop region is selected, the preview request needs sending then.
+     */
+    private boolean updateZoom(float newZoom) {
+        if (!zoom.update(newZoom)) {
+            return false;
+        }
+        onCropRegionChanged();
+        return true;
     }
 
     private void applyZoom() {
-        Rect zoomRect = calculateZoomRect();
-        previewRequestBuilder.set(CaptureRequest.SCALER_CROP_REGION, zoomRect);
+        previewRequestBuilder.set(CaptureRequest.SCALER_CROP_REGION, zoom.updateCropRegion());
     }
 
-    private Rect calculateZoomRect() {
-        final Rect origin = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
-        if (origin == null) return null;
-        if (Utils.checkFloatEqual(zoom, 1.f) || zoom < 1.f) return origin;
+    private void onCropRegionChanged() {
+        previewRequestBuilder.set(CaptureRequest.SCALER_CROP_REGION, zoom.getCropRegion());
+        prepareStillRequest();
+    }
 
-        int xOffset = (int) (((1 - 1 / zoom) / 2) * (origin.right - origin.left));
-        int yOffset = (int) (((1 - 1 / zoom ) / 2) * (origin.bottom - origin.top));
+    private void applyPendingScale() {
+        // a gesture takes over from an animation
+        zoomAnimation = null;
+        if (previewRequestBuilder == null) {
+            zoom.clearPendingScale();
+        } else if (zoom.applyPendingScale()) {
+            onCropRegionChanged();
+            requestPreviewUpdate(null);
+        }
+    }
 
-        return new Rect(xOffset, yOffset, origin.right - xOffset, origin.bottom - yOffset);
+    private void resetPreviewStats() {
+        Range<Integer> fpsRange = previewRequestBuilder.get(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE);
+        int expectedFps = fpsRange != null ? fpsRange.getUpper() : 0;
+        mainHandler.post(() -> textureView.resetPreviewStats(expectedFps));
+        expectedPreviewFps = expectedFps > 0 ? expectedFps : DEFAULT_PREVIEW_FPS;
+        applyPreviewUpdateInterval();
     }
 
+    /**
+     * Send the preview request right away, along with the updates waiting for their turn.
+     */
     private void updatePreview(Runnable exceptionCallback) {
         if (camera == null) {
             return;
         }
-        try {
-            if (mode == Values.MODE_IMAGE) {
-                captureSession.setRepeatingRequest(previewRequestBuilder.build(), imageCaptureCallback, null);
-            } else {
-                previewRequestBuilder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
-                captureSession.setRepeatingRequest(previewRequestBuilder.build(), null, null);
-            }
-        } catch (CameraAccessException e) {
-            if (exceptionCallback != null) {
-                exceptionCallback.run();
-            }
-            callbackHandler.onError(new Error(Error.ERROR_CAMERA, e));
+        previewUpdates.submitNow(exceptionCallback);
+    }
+
+    /**
+     * Send the preview request at most once per interval, for settings which may change many
+     * times in a row.
+     */
+    private void requestPreviewUpdate(Runnable exceptionCallback) {
+        if (camera == null) {
+            return;
+        }
+        previewUpdates.request(exceptionCallback);
+    }
+
+    private void submitPreviewRequest() throws CameraAccessException {
+        if (camera == null || captureSession == null) {
+            return;
+        }
+        if (mode == Values.MODE_IMAGE) {
+            captureSession.setRepeatingRequest(previewRequestBuilder.build(), imageCaptureCallback, cameraHandler);
+        } else {
+            previewRequestBuilder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
+            // results are only needed until the startup trace is complete, or to animate the zoom
+            captureSession.setRepeatingRequest(previewRequestBuilder.build(),
+                    startupTrace != null || zoomAnimation != null ? videoPreviewCaptureCallback : null,
+                    cameraHandler);
         }
     }
 }
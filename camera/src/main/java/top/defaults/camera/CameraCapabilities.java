@@ -0,0 +1,397 @@
+package top.defaults.camera;
+
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.MediaRecorder;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import top.defaults.logger.Logger;
+
+/**
+ * Immutable snapshot of what we use from the {@link CameraCharacteristics} of a camera device.
+ *
+ * Reading characteristics is a binder call plus metadata unmarshalling, and they never change for
+ * a built-in camera, so the snapshots are cached per process. The cache is invalidated through a
+ * {@link CameraManager.AvailabilityCallback} when cameras are plugged or unplugged. The cache is
+ * also persisted through a {@link CapabilitiesStore}, see {@link #restore}.
+ */
+final class CameraCapabilities {
+
+    static final int UNKNOWN = -1;
+
+    private static final Map<String, CameraCapabilities> cache = new ConcurrentHashMap<>();
+    private static volatile String[] cameraIds;
+    private static boolean isAvailabilityCallbackRegistered;
+    private static CapabilitiesStore store;
+    private static boolean isRestored;
+
+    private final String cameraId;
+    private final int lensFacing;
+    private final int hardwareLevel;
+    private final int sensorOrientation;
+    private final int timestampSource;
+    private final int activeArrayLeft;
+    private final int activeArrayTop;
+    private final int activeArrayRight;
+    private final int activeArrayBottom;
+    private final boolean hasActiveArray;
+    private final float maxZoom;
+    private final boolean isAutoFocusSupported;
+    private final int maxRegionsAf;
+    private final boolean hasStreamConfigurations;
+    private final List<Size> previewSizes;
+    private final List<Size> imageSizes;
+    private final List<Size> videoSizes;
+    private final List<Size> analysisSizes;
+
+    private CameraCapabilities(String cameraId, CameraCharacteristics characteristics) {
+        this.cameraId = cameraId;
+        lensFacing = intOrUnknown(characteristics.get(CameraCharacteristics.LENS_FACING));
+        hardwareLevel = intOrUnknown(characteristics.get(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL));
+        Integer orientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+        sensorOrientation = orientation != null ? orientation : 90;
+        timestampSource = intOrUnknown(characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE));
+
+        Rect activeArray = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+        hasActiveArray = activeArray != null;
+        activeArrayLeft = hasActiveArray ? activeArray.left : 0;
+        activeArrayTop = hasActiveArray ? activeArray.top : 0;
+        activeArrayRight = hasActiveArray ? activeArray.right : 0;
+        activeArrayBottom = hasActiveArray ? activeArray.bottom : 0;
+
+        Float maxZoomObject = characteristics.get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM);
+        maxZoom = maxZoomObject != null ? maxZoomObject : 2.f;
+
+        int[] afModes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+        isAutoFocusSupported = !(afModes == null || afModes.length == 0 ||
+                (afModes.length == 1 && afModes[0] == CameraCharacteristics.CONTROL_AF_MODE_OFF));
+        Integer maxRegionsAfObject = characteristics.get(CameraCharacteristics.CONTROL_MAX_REGIONS_AF);
+        maxRegionsAf = maxRegionsAfObject != null ? maxRegionsAfObject : 0;
+
+        StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        hasStreamConfigurations = map != null;
+        previewSizes = map != null ? toSizes(map.getOutputSizes(SurfaceTexture.class)) : Collections.emptyList();
+        imageSizes = map != null ? toSizes(map.getOutputSizes(ImageFormat.JPEG)) : Collections.emptyList();
+        videoSizes = map != null ? toSizes(map.getOutputSizes(MediaRecorder.class)) : Collections.emptyList();
+        analysisSizes = map != null ? toSizes(map.getOutputSizes(ImageFormat.YUV_420_888)) : Collections.emptyList();
+    }
+
+    CameraCapabilities(String cameraId, int lensFacing, int hardwareLevel, int sensorOrientation,
+                       int timestampSource, boolean hasActiveArray, int activeArrayLeft, int activeArrayTop,
+                       int activeArrayRight, int activeArrayBottom, float maxZoom,
+                       boolean isAutoFocusSupported, int maxRegionsAf, boolean hasStreamConfigurations,
+                       List<Size> previewSizes, List<Size> imageSizes, List<Size> videoSizes,
+                       List<Size> analysisSizes) {
+        this.cameraId = cameraId;
+        this.lensFacing = lensFacing;
+        this.hardwareLevel = hardwareLevel;
+        this.sensorOrientation = sensorOrientation;
+        this.timestampSource = timestampSource;
+        this.hasActiveArray = hasActiveArray;
+        this.activeArrayLeft = activeArrayLeft;
+        this.activeArrayTop = activeArrayTop;
+        this.activeArrayRight = activeArrayRight;
+        this.activeArrayBottom = activeArrayBottom;
+        this.maxZoom = maxZoom;
+        this.isAutoFocusSupported = isAutoFocusSupported;
+        this.maxRegionsAf = maxRegionsAf;
+        this.hasStreamConfigurations = hasStreamConfigurations;
+        this.previewSizes = Collections.unmodifiableList(new ArrayList<>(previewSizes));
+        this.imageSizes = Collections.unmodifiableList(new ArrayList<>(imageSizes));
+        this.videoSizes = Collections.unmodifiableList(new ArrayList<>(videoSizes));
+        this.analysisSizes = Collections.unmodifiableList(new ArrayList<>(analysisSizes));
+    }
+
+    /**
+     * Fill an empty cache from the file stored by a previous process, then check every stored
+     * snapshot against the live characteristics on a background thread. Stale snapshots are
+     * replaced, the store is rewritten and {@code onChanged} is run on that background thread.
+     * Reads a file, so it is called on the camera thread rather than the main one.
+     */
+    static synchronized void restore(@NonNull Context context, @NonNull CameraManager cameraManager,
+                                     @NonNull Runnable onChanged) {
+        if (isRestored) {
+            return;
+        }
+        isRestored = true;
+        store = new CapabilitiesStore(context.getApplicationContext().getCacheDir());
+        Map<String, CameraCapabilities> stored = store.read();
+        if (stored != null && cache.isEmpty() && cameraIds == null) {
+            cache.putAll(stored);
+            cameraIds = stored.keySet().toArray(new String[stored.size()]);
+        }
+
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            if (validate(cameraManager, stored)) {
+                onChanged.run();
+            }
+        }, "CameraCapabilitiesCheck");
+        thread.start();
+    }
+
+    /**
+     * @return {@code true} if the live capabilities differ from the stored ones.
+     */
+    private static boolean validate(CameraManager cameraManager, Map<String, CameraCapabilities> stored) {
+        List<CameraCapabilities> live = new ArrayList<>();
+        String[] ids;
+        try {
+            ids = cameraManager.getCameraIdList();
+            for (String id : ids) {
+                live.add(new CameraCapabilities(id, cameraManager.getCameraCharacteristics(id)));
+            }
+        } catch (CameraAccessException | RuntimeException e) {
+            // keep what we have, the next process will try again
+            Logger.w("Unable to check the camera capabilities: " + e);
+            return false;
+        }
+
+        boolean isChanged = stored == null || stored.size() != live.size();
+        for (CameraCapabilities capabilities : live) {
+            if (stored == null || !capabilities.equals(stored.get(capabilities.cameraId))) {
+                isChanged = true;
+            }
+            cache.put(capabilities.cameraId, capabilities);
+        }
+        cameraIds = ids;
+        if (!isChanged) {
+            return false;
+        }
+
+        try {
+            store.write(live);
+        } catch (IOException e) {
+            // read from the cameras again by the next process
+            Logger.w("Unable to store the camera capabilities: " + e);
+        }
+        // nothing was in use if there was nothing stored
+        return stored != null;
+    }
+
+    /**
+     * Returns the snapshot of a camera device, only the first call for each camera reads its
+     * characteristics.
+     */
+    static CameraCapabilities get(@NonNull CameraManager cameraManager, @NonNull String cameraId)
+            throws CameraAccessException {
+        registerAvailabilityCallback(cameraManager);
+        CameraCapabilities capabilities = cache.get(cameraId);
+        if (capabilities == null) {
+            capabilities = new CameraCapabilities(cameraId, cameraManager.getCameraCharacteristics(cameraId));
+            cache.put(cameraId, capabilities);
+        }
+        return capabilities;
+    }
+
+    static String[] getCameraIds(@NonNull CameraManager cameraManager) throws CameraAccessException {
+        registerAvailabilityCallback(cameraManager);
+        String[] ids = cameraIds;
+        if (ids == null) {
+            ids = cameraManager.getCameraIdList();
+            cameraIds = ids;
+        }
+        return ids.clone();
+    }
+
+    private static synchronized void registerAvailabilityCallback(CameraManager cameraManager) {
+        if (isAvailabilityCallbackRegistered) {
+            return;
+        }
+        cameraManager.registerAvailabilityCallback(new CameraManager.AvailabilityCallback() {
+
+            @Override
+            public void onCameraAvailable(@NonNull String cameraId) {
+                // also called whenever a camera is closed, by us or by other apps, which changes
+                // nothing but the availability of a camera we already know
+                String[] ids = cameraIds;
+                if (ids == null || !contains(ids, cameraId)) {
+                    cameraIds = null;
+                    cache.remove(cameraId);
+                    return;
+                }
+                CameraCapabilities capabilities = cache.get(cameraId);
+                if (capabilities != null && capabilities.lensFacing == CameraCharacteristics.LENS_FACING_EXTERNAL) {
+                    // may be a different device plugged back under the same id
+                    cache.remove(cameraId);
+                }
+            }
+
+            @Override
+            public void onCameraUnavailable(@NonNull String cameraId) {
+                CameraCapabilities capabilities = cache.get(cameraId);
+                if (capabilities != null && capabilities.lensFacing == CameraCharacteristics.LENS_FACING_EXTERNAL) {
+                    // may have been unplugged
+                    cameraIds = null;
+                    cache.remove(cameraId);
+                }
+            }
+        }, new Handler(Looper.getMainLooper()));
+        isAvailabilityCallbackRegistered = true;
+    }
+
+    private static boolean contains(String[] ids, String id) {
+        for (String each : ids) {
+            if (each.equals(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int intOrUnknown(Integer value) {
+        return value != null ? value : UNKNOWN;
+    }
+
+    private static List<Size> toSizes(android.util.Size[] sizes) {
+        if (sizes == null) {
+            return Collections.emptyList();
+        }
+        List<Size> result = new ArrayList<>(sizes.length);
+        for (android.util.Size size : sizes) {
+            result.add(new Size(size.getWidth(), size.getHeight()));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CameraCapabilities)) {
+            return false;
+        }
+        CameraCapabilities that = (CameraCapabilities) o;
+        return cameraId.equals(that.cameraId)
+                && lensFacing == that.lensFacing
+                && hardwareLevel == that.hardwareLevel
+                && sensorOrientation == that.sensorOrientation
+                && timestampSource == that.timestampSource
+                && hasActiveArray == that.hasActiveArray
+                && activeArrayLeft == that.activeArrayLeft
+                && activeArrayTop == that.activeArrayTop
+                && activeArrayRight == that.activeArrayRight
+                && activeArrayBottom == that.activeArrayBottom
+                && Float.compare(maxZoom, that.maxZoom) == 0
+                && isAutoFocusSupported == that.isAutoFocusSupported
+                && maxRegionsAf == that.maxRegionsAf
+                && hasStreamConfigurations == that.hasStreamConfigurations
+                && previewSizes.equals(that.previewSizes)
+                && imageSizes.equals(that.imageSizes)
+                && videoSizes.equals(that.videoSizes)
+                && analysisSizes.equals(that.analysisSizes);
+    }
+
+    @Override
+    public int hashCode() {
+        return cameraId.hashCode() * 31 + lensFacing;
+    }
+
+    String getCameraId() {
+        return cameraId;
+    }
+
+    /**
+     * @return One of {@code CameraCharacteristics.LENS_FACING_*}, or {@link #UNKNOWN}.
+     */
+    int getLensFacing() {
+        return lensFacing;
+    }
+
+    /**
+     * @return One of {@code CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_*}, or {@link #UNKNOWN}.
+     */
+    int getHardwareLevel() {
+        return hardwareLevel;
+    }
+
+    int getSensorOrientation() {
+        return sensorOrientation;
+    }
+
+    /**
+     * @return One of {@code CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_*}, or {@link #UNKNOWN}.
+     */
+    int getTimestampSource() {
+        return timestampSource;
+    }
+
+    boolean hasActiveArray() {
+        return hasActiveArray;
+    }
+
+    int getActiveArrayLeft() {
+        return activeArrayLeft;
+    }
+
+    int getActiveArrayTop() {
+        return activeArrayTop;
+    }
+
+    int getActiveArrayRight() {
+        return activeArrayRight;
+    }
+
+    int getActiveArrayBottom() {
+        return activeArrayBottom;
+    }
+
+    /**
+     * @return A new {@link Rect} of the active pixel array, or {@code null} if unknown.
+     */
+    Rect newActiveArray() {
+        return hasActiveArray ? new Rect(activeArrayLeft, activeArrayTop, activeArrayRight, activeArrayBottom) : null;
+    }
+
+    float getMaxZoom() {
+        return maxZoom;
+    }
+
+    boolean isAutoFocusSupported() {
+        return isAutoFocusSupported;
+    }
+
+    int getMaxRegionsAf() {
+        return maxRegionsAf;
+    }
+
+    boolean hasStreamConfigurations() {
+        return hasStreamConfigurations;
+    }
+
+    List<Size> getPreviewSizes() {
+        return previewSizes;
+    }
+
+    List<Size> getImageSizes() {
+        return imageSizes;
+    }
+
+    List<Size> getVideoSizes() {
+        return videoSizes;
+    }
+
+    /**
+     * @return Output sizes of {@link ImageFormat#YUV_420_888}.
+     */
+    List<Size> getAnalysisSizes() {
+        return analysisSizes;
+    }
+}
@@ -0,0 +1,27 @@
+package top.defaults.camera;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+/**
+ * The thread all the camera work runs on, shared by the photographers of a process. Camera
+ * callbacks are delivered here too, so the state of a photographer is only touched on this thread
+ * and the main thread is left to the UI.
+ */
+final class CameraThread {
+
+    private static Handler handler;
+
+    private CameraThread() {
+    }
+
+    static synchronized Handler getHandler() {
+        if (handler == null) {
+            HandlerThread thread = new HandlerThread("CameraThread", Process.THREAD_PRIORITY_DISPLAY);
+            thread.start();
+            handler = new Handler(thread.getLooper());
+        }
+        return handler;
+    }
+}
@@ -3,6 +3,7 @@ package top.defaults.camera;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.view.ViewCompat;
@@ -11,6 +12,7 @@ import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.ScaleGestureDetector;
 import android.view.ViewGroup;
+import android.widget.ImageView;
 import android.widget.RelativeLayout;
 
 import java.util.LinkedList;
@@ -20,6 +22,7 @@ public class CameraView extends RelativeLayout {
 
     private Context context;
     private AutoFitTextureView textureView;
+    private ImageView freezeFrameView;
     private CameraViewOverlay overlay;
     private final DisplayOrientationDetector displayOrientationDetector;
     private String aspectRatio;
@@ -62,6 +65,7 @@ public class CameraView extends RelativeLayout {
         boolean showFocusIndicator = typedArray.getBoolean(R.styleable.CameraView_showFocusIndicator, true);
         typedArray.recycle();
 
+        addFreezeFrame();
         addOverlay();
 
         if (showFocusIndicator) {
@@ -143,6 +147,40 @@ public class CameraView extends RelativeLayout {
         this.pinchToZoom = pinchToZoom;
     }
 
+    private void addFreezeFrame() {
+        freezeFrameView = new ImageView(context);
+        // a new camera may come with another aspect ratio, cropping looks better than stretching
+        freezeFrameView.setScaleType(ImageView.ScaleType.CENTER_CROP);
+        freezeFrameView.setVisibility(GONE);
+        LayoutParams freezeFrameParams = new LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+        freezeFrameParams.addRule(ALIGN_LEFT, R.id.textureView);
+        freezeFrameParams.addRule(ALIGN_TOP, R.id.textureView);
+        freezeFrameParams.addRule(ALIGN_RIGHT, R.id.textureView);
+        freezeFrameParams.addRule(ALIGN_BOTTOM, R.id.textureView);
+        addView(freezeFrameView, freezeFrameParams);
+    }
+
+    /**
+     * Cover the preview with its current frame, while the camera is being switched.
+     */
+    void showFreezeFrame() {
+        if (!textureView.isAvailable() || textureView.getWidth() == 0 || textureView.getHeight() == 0) {
+            return;
+        }
+        // shown for a moment only, half the size is plenty
+        Bitmap frame = textureView.getBitmap(textureView.getWidth() / 2, textureView.getHeight() / 2);
+        if (frame == null) {
+            return;
+        }
+        freezeFrameView.setImageBitmap(frame);
+        freezeFrameView.setVisibility(VISIBLE);
+    }
+
+    void hideFreezeFrame() {
+        freezeFrameView.setVisibility(GONE);
+        freezeFrameView.setImageDrawable(null);
+    }
+
     private void addOverlay() {
         overlay = new CameraViewOverlay(context);
         LayoutParams overlayParams = new LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
@@ -0,0 +1,185 @@
+package top.defaults.camera;
+
+import android.os.Build;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the {@link CameraCapabilities} of all cameras in a compact binary file, so a cold started
+ * process can choose a camera and its sizes without asking the camera service.
+ *
+ * The file only holds for the build it was written on: it starts with {@link Build#FINGERPRINT}
+ * and is ignored after a system update.
+ */
+class CapabilitiesStore {
+
+    private static final int MAGIC = 0x43415043; // "CAPC"
+    private static final int VERSION = 3;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final String fingerprint;
+
+    CapabilitiesStore(File dir) {
+        this(new File(dir, "camera_capabilities.bin"), Build.FINGERPRINT);
+    }
+
+    CapabilitiesStore(File file, String fingerprint) {
+        this.file = file;
+        this.fingerprint = fingerprint != null ? fingerprint : "";
+    }
+
+    /**
+     * @return The stored capabilities in camera id order, or {@code null} if there is no usable
+     * file for this build.
+     */
+    Map<String, CameraCapabilities> read() {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile input = new RandomAccessFile(file, "r");
+             FileChannel channel = input.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || !fingerprint.equals(readString(buffer))) {
+                return null;
+            }
+            int count = buffer.getInt();
+            Map<String, CameraCapabilities> result = new LinkedHashMap<>(count);
+            for (int i = 0; i < count; i++) {
+                CameraCapabilities capabilities = readCapabilities(buffer);
+                result.put(capabilities.getCameraId(), capabilities);
+            }
+            return result;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            // a broken file is as good as none, it will be rewritten
+            return null;
+        }
+    }
+
+    /**
+     * Replace the file with the given capabilities, the old file stays intact until the new one is
+     * completely written.
+     */
+    void write(List<CameraCapabilities> capabilitiesList) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        writeString(output, fingerprint);
+        output.writeInt(capabilitiesList.size());
+        for (CameraCapabilities capabilities : capabilitiesList) {
+            writeCapabilities(output, capabilities);
+        }
+        output.flush();
+
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Unable to create folder: " + dir);
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            stream.write(bytes.toByteArray());
+        }
+        if (!temp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw new IOException("Unable to replace " + file);
+        }
+    }
+
+    private static void writeCapabilities(DataOutputStream output, CameraCapabilities capabilities) throws IOException {
+        writeString(output, capabilities.getCameraId());
+        output.writeInt(capabilities.getLensFacing());
+        output.writeInt(capabilities.getHardwareLevel());
+        output.writeInt(capabilities.getSensorOrientation());
+        output.writeInt(capabilities.getTimestampSource());
+        output.writeBoolean(capabilities.hasActiveArray());
+        output.writeInt(capabilities.getActiveArrayLeft());
+        output.writeInt(capabilities.getActiveArrayTop());
+        output.writeInt(capabilities.getActiveArrayRight());
+        output.writeInt(capabilities.getActiveArrayBottom());
+        output.writeFloat(capabilities.getMaxZoom());
+        output.writeBoolean(capabilities.isAutoFocusSupported());
+        output.writeInt(capabilities.getMaxRegionsAf());
+        output.writeBoolean(capabilities.hasStreamConfigurations());
+        writeSizes(output, capabilities.getPreviewSizes());
+        writeSizes(output, capabilities.getImageSizes());
+        writeSizes(output, capabilities.getVideoSizes());
+        writeSizes(output, capabilities.getAnalysisSizes());
+    }
+
+    private static CameraCapabilities readCapabilities(ByteBuffer buffer) {
+        String cameraId = readString(buffer);
+        int lensFacing = buffer.getInt();
+        int hardwareLevel = buffer.getInt();
+        int sensorOrientation = buffer.getInt();
+        int timestampSource = buffer.getInt();
+        boolean hasActiveArray = buffer.get() != 0;
+        int left = buffer.getInt();
+        int top = buffer.getInt();
+        int right = buffer.getInt();
+        int bottom = buffer.getInt();
+        float maxZoom = buffer.getFloat();
+        boolean isAutoFocusSupported = buffer.get() != 0;
+        int maxRegionsAf = buffer.getInt();
+        boolean hasStreamConfigurations = buffer.get() != 0;
+        List<Size> previewSizes = readSizes(buffer);
+        List<Size> imageSizes = readSizes(buffer);
+        List<Size> videoSizes = readSizes(buffer);
+        List<Size> analysisSizes = readSizes(buffer);
+        return new CameraCapabilities(cameraId, lensFacing, hardwareLevel, sensorOrientation,
+                timestampSource, hasActiveArray, left, top, right, bottom, maxZoom, isAutoFocusSupported, maxRegionsAf,
+                hasStreamConfigurations, previewSizes, imageSizes, videoSizes, analysisSizes);
+    }
+
+    private static void writeSizes(DataOutputStream output, List<Size> sizes) throws IOException {
+        output.writeInt(sizes.size());
+        for (Size size : sizes) {
+            output.writeInt(size.getWidth());
+            output.writeInt(size.getHeight());
+        }
+    }
+
+    private static List<Size> readSizes(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        if (count < 0 || count * 8 > buffer.remaining()) {
+            throw new IllegalArgumentException("Bad size count: " + count);
+        }
+        List<Size> sizes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            sizes.add(new Size(buffer.getInt(), buffer.getInt()));
+        }
+        return sizes;
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Bad string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
@@ -0,0 +1,125 @@
+package top.defaults.camera;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reference counted buffer holding a captured JPEG picture. The memory is owned by the camera
+ * pipeline and is given back once every holder has released it, so the data must not be
+ * accessed after {@link #release()}.
+ */
+public final class CaptureBuffer {
+
+    private final ByteBuffer data;
+    private final int width;
+    private final int height;
+    private final long timestamp;
+    private final String filePath;
+    private final CaptureMetadata metadata;
+    private final Runnable onReleased;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    CaptureBuffer(ByteBuffer data, int width, int height, long timestamp, String filePath,
+                  CaptureMetadata metadata, Runnable onReleased) {
+        this.data = data;
+        this.width = width;
+        this.height = height;
+        this.timestamp = timestamp;
+        this.filePath = filePath;
+        this.metadata = metadata;
+        this.onReleased = onReleased;
+    }
+
+    /**
+     * @return A read-only view of the JPEG data as the camera wrote it, without the
+     * {@link #getMetadata()}. Every call returns an independent view starting at the beginning of
+     * the picture.
+     */
+    public ByteBuffer getData() {
+        throwIfReleased();
+        return data.asReadOnlyBuffer();
+    }
+
+    public int getSize() {
+        return data.remaining();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return The sensor timestamp of the picture, in nanoseconds.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return The path under the directory set by {@link PhotographerHelper#setFileDir(String)}
+     * where {@link FileCaptureSink} saves this picture.
+     */
+    public String getFilePath() {
+        return filePath;
+    }
+
+    /**
+     * @return The metadata given to {@link Photographer#takePicture(CaptureMetadata)}, completed
+     * with the capture settings, or {@code null}.
+     */
+    public CaptureMetadata getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * Write the picture to {@code channel} with its {@link #getMetadata()} stamped in, in one pass
+     * over the data. A picture whose segments cannot be walked is written as is.
+     *
+     * @throws IOException If the channel fails, or the metadata does not fit in a JPEG segment.
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer data = getData();
+        if (metadata != null) {
+            JpegSegmentSplicer splicer = JpegSegmentSplicer.parse(data);
+            if (splicer != null) {
+                splicer.writeTo(channel, metadata.buildExif(splicer.getExif()), metadata.buildXmp());
+                return;
+            }
+        }
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+
+    public CaptureBuffer retain() {
+        int count;
+        do {
+            count = refCount.get();
+            if (count <= 0) {
+                throw new IllegalStateException("CaptureBuffer is already released");
+            }
+        } while (!refCount.compareAndSet(count, count + 1));
+        return this;
+    }
+
+    public void release() {
+        int count = refCount.decrementAndGet();
+        if (count == 0) {
+            onReleased.run();
+        } else if (count < 0) {
+            throw new IllegalStateException("CaptureBuffer is released too many times");
+        }
+    }
+
+    private void throwIfReleased() {
+        if (refCount.get() <= 0) {
+            throw new IllegalStateException("CaptureBuffer is already released");
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package top.defaults.camera;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * An append-only log of the pictures saved to a directory, so the ones a crash interrupted can be
+ * dealt with on the next start. A picture is written to a temporary file first and renamed to its
+ * final path once complete, the journal records each step:
+ * <ul>
+ * <li>{@code P}, pending: the temporary file is being written;</li>
+ * <li>{@code C}, committed: the file has its final path;</li>
+ * <li>{@code D}, delivered: the listeners have been told about it.</li>
+ * </ul>
+ * Every line also holds the session, one per process, so {@link #recover()} leaves the pictures
+ * of the running process alone.
+ *
+ * Thread-safe, there is one journal per directory in a process.
+ */
+class CaptureJournal {
+
+    static final String JOURNAL_NAME = ".capture_journal";
+    static final String TEMP_SUFFIX = ".tmp";
+
+    // zeros allowed after the end marker of a complete picture
+    private static final int MAX_PADDING = 4096;
+
+    private static final char PENDING = 'P';
+    private static final char COMMITTED = 'C';
+    private static final char DELIVERED = 'D';
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String SESSION = UUID.randomUUID().toString();
+    private static final Map<String, CaptureJournal> journals = new HashMap<>();
+
+    private final File directory;
+    private final File file;
+    private final String session;
+    private FileOutputStream output;
+
+    /**
+     * @return The journal of {@code directory}, the same one for all the callers of a process.
+     */
+    static CaptureJournal forDirectory(File directory) {
+        String key = directory.getAbsolutePath();
+        synchronized (journals) {
+            CaptureJournal journal = journals.get(key);
+            if (journal == null) {
+                journal = new CaptureJournal(directory, SESSION);
+                journals.put(key, journal);
+            }
+            return journal;
+        }
+    }
+
+    static File tempFileFor(File target) {
+        return new File(target.getPath() + TEMP_SUFFIX);
+    }
+
+    CaptureJournal(File directory, String session) {
+        this.directory = directory;
+        this.file = new File(directory, JOURNAL_NAME);
+        this.session = session;
+    }
+
+    synchronized void pending(File target) throws IOException {
+        append(PENDING, target.getPath(), false);
+    }
+
+    /**
+     * Move the completely written {@code temp} file to {@code target} and record it.
+     *
+     * @param sync Sync the journal, so the commit survives a power loss.
+     */
+    synchronized void commit(File temp, File target, boolean sync) throws IOException {
+        if (!temp.renameTo(target)) {
+            throw new IOException("Unable to rename " + temp + " to " + target);
+        }
+        append(COMMITTED, target.getPath(), sync);
+    }
+
+    /**
+     * Sync the records appended so far.
+     */
+    synchronized void sync() throws IOException {
+        if (output != null) {
+            output.getFD().sync();
+        }
+    }
+
+    synchronized void delivered(String filePath) throws IOException {
+        append(DELIVERED, filePath, false);
+    }
+
+    /**
+     * Deal with the pictures of the former sessions a crash interrupted. Complete temporary files
+     * are committed, truncated ones deleted. The journal is compacted, only the pictures of this
+     * session not delivered yet are kept.
+     *
+     * @return The paths of the committed pictures nobody was told about, which should be
+     * announced, then marked {@link #delivered(String)}.
+     */
+    synchronized List<String> recover() throws IOException {
+        if (!file.exists()) {
+            return new ArrayList<>();
+        }
+        // the latest state of every picture, by session
+        Map<String, Character> formerStates = new LinkedHashMap<>();
+        Map<String, Character> currentStates = new LinkedHashMap<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(" ", 3);
+                if (fields.length != 3 || fields[0].length() != 1) {
+                    // the last line may be cut short by a crash
+                    continue;
+                }
+                char state = fields[0].charAt(0);
+                if (state != PENDING && state != COMMITTED && state != DELIVERED) {
+                    continue;
+                }
+                Map<String, Character> states = fields[1].equals(session) ? currentStates : formerStates;
+                Character former = states.get(fields[2]);
+                if (former == null || rank(state) > rank(former)) {
+                    states.put(fields[2], state);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        List<String> undelivered = new ArrayList<>();
+        for (Map.Entry<String, Character> entry : formerStates.entrySet()) {
+            File target = new File(entry.getKey());
+            File temp = tempFileFor(target);
+            char state = entry.getValue();
+            if (state == PENDING) {
+                if (target.exists()) {
+                    // renamed, the crash came before it was recorded
+                    state = COMMITTED;
+                } else if (temp.exists()) {
+                    if (isCompleteJpeg(temp)) {
+                        syncFile(temp);
+                        if (!temp.renameTo(target)) {
+                            // the journal is left as is, to be tried again
+                            throw new IOException("Unable to rename " + temp + " to " + target);
+                        }
+                        state = COMMITTED;
+                    } else {
+                        // truncated, it must not pass for a picture
+                        if (!temp.delete()) {
+                            throw new IOException("Unable to delete " + temp);
+                        }
+                    }
+                }
+            }
+            if (state == COMMITTED && target.exists()) {
+                undelivered.add(target.getPath());
+                // recorded again, under this session, until announced
+                currentStates.put(target.getPath(), COMMITTED);
+            }
+        }
+
+        compact(currentStates);
+        return undelivered;
+    }
+
+    private static int rank(char state) {
+        return state == PENDING ? 0 : state == COMMITTED ? 1 : 2;
+    }
+
+    private void compact(Map<String, Character> states) throws IOException {
+        closeOutput();
+        File compacted = new File(directory, JOURNAL_NAME + TEMP_SUFFIX);
+        FileOutputStream stream = new FileOutputStream(compacted);
+        try {
+            StringBuilder builder = new StringBuilder();
+            for (Map.Entry<String, Character> entry : states.entrySet()) {
+                if (entry.getValue() != DELIVERED) {
+                    builder.append(entry.getValue()).append(' ').append(session).append(' ')
+                            .append(entry.getKey()).append('\n');
+                }
+            }
+            stream.write(builder.toString().getBytes(UTF_8));
+            stream.getFD().sync();
+        } finally {
+            stream.close();
+        }
+        if (!compacted.renameTo(file)) {
+            throw new IOException("Unable to replace " + file);
+        }
+    }
+
+    private void append(char state, String filePath, boolean sync) throws IOException {
+        if (output == null) {
+            output = new FileOutputStream(file, true);
+        }
+        output.write((state + " " + session + " " + filePath + "\n").getBytes(UTF_8));
+        if (sync) {
+            output.getFD().sync();
+        }
+    }
+
+    private void closeOutput() throws IOException {
+        if (output != null) {
+            FileOutputStream stream = output;
+            output = null;
+            stream.close();
+        }
+    }
+
+    /**
+     * @return If {@code file} starts and ends with the markers of a JPEG image, some cameras pad
+     * their pictures with zeros after the end marker.
+     */
+    static boolean isCompleteJpeg(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            long length = input.length();
+            if (length < 4) {
+                return false;
+            }
+            if (input.read() != 0xff || input.read() != 0xd8) {
+                return false;
+            }
+            byte[] tail = new byte[(int) Math.min(length - 2, MAX_PADDING + 2)];
+            input.seek(length - tail.length);
+            input.readFully(tail);
+            int end = tail.length;
+            while (end > 0 && tail[end - 1] == 0) {
+                end--;
+            }
+            return end >= 2 && (tail[end - 2] & 0xff) == 0xff && (tail[end - 1] & 0xff) == 0xd9;
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void syncFile(File file) throws IOException {
+        FileOutputStream stream = new FileOutputStream(file, true);
+        try {
+            stream.getFD().sync();
+        } finally {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package top.defaults.camera;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pairs the shots of still captures with their images by sensor timestamp, whichever of the two
+ * comes first. The shot of a capture is known from {@code onCaptureStarted()}, which carries the
+ * timestamp its image will have, so pictures taken back to back can't be mixed up.
+ *
+ * Images no shot turns up for would keep their buffers forever, only the latest
+ * {@code maxPendingImages} of them are kept.
+ *
+ * Only used on the camera thread.
+ *
+ * @param <S> The shot type.
+ * @param <I> The image type, {@link android.media.Image} for the camera.
+ */
+class CaptureMatcher<S, I> {
+
+    interface Listener<S, I> {
+
+        void onMatched(S shot, I image);
+
+        /**
+         * The image will never be matched, close it.
+         */
+        void onImageDropped(I image);
+
+        /**
+         * The shot will never get an image.
+         */
+        void onShotDropped(S shot);
+    }
+
+    private final int maxPendingImages;
+    private final Listener<S, I> listener;
+    private final Map<Long, S> shots = new HashMap<>();
+    private final Map<Long, I> images = new HashMap<>();
+
+    CaptureMatcher(int maxPendingImages, Listener<S, I> listener) {
+        this.maxPendingImages = maxPendingImages;
+        this.listener = listener;
+    }
+
+    void addShot(long timestamp, S shot) {
+        I image = images.remove(timestamp);
+        if (image != null) {
+            listener.onMatched(shot, image);
+        } else {
+            shots.put(timestamp, shot);
+        }
+    }
+
+    void addImage(long timestamp, I image) {
+        S shot = shots.remove(timestamp);
+        if (shot != null) {
+            listener.onMatched(shot, image);
+            return;
+        }
+        images.put(timestamp, image);
+        if (images.size() > maxPendingImages) {
+            long oldest = Long.MAX_VALUE;
+            for (long key : images.keySet()) {
+                oldest = Math.min(oldest, key);
+            }
+            listener.onImageDropped(images.remove(oldest));
+        }
+    }
+
+    /**
+     * The capture of {@code timestamp} failed without an image, drop its shot.
+     */
+    void removeShot(long timestamp) {
+        S shot = shots.remove(timestamp);
+        if (shot != null) {
+            listener.onShotDropped(shot);
+        }
+    }
+
+    int getPendingImageCount() {
+        return images.size();
+    }
+
+    int getPendingShotCount() {
+        return shots.size();
+    }
+
+    /**
+     * Drop everything waiting, when the session is gone.
+     */
+    void clear() {
+        List<I> droppedImages = new ArrayList<>(images.values());
+        List<S> droppedShots = new ArrayList<>(shots.values());
+        images.clear();
+        shots.clear();
+        for (I image : droppedImages) {
+            listener.onImageDropped(image);
+        }
+        for (S shot : droppedShots) {
+            listener.onShotDropped(shot);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package top.defaults.camera;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * The metadata stamped into a picture, see {@link Photographer#takePicture(CaptureMetadata)}.
+ * It is written while the picture is saved, the EXIF of the camera is kept and completed, no
+ * pixel is decoded nor encoded again.
+ *
+ * Location and capture settings go to the EXIF, properties go to the XMP under
+ * {@link #XMP_NAMESPACE}, the device id to both. Capture settings left unset are taken from the
+ * capture result of the picture.
+ *
+ * Not thread-safe, the photographer takes a copy of it, so it may be changed and used again for
+ * the next picture.
+ */
+public final class CaptureMetadata {
+
+    public static final String XMP_NAMESPACE = "http://top.defaults/camera/1.0/";
+    private static final String XMP_PREFIX = "tdc";
+
+    /**
+     * Property of the device which took the picture, also written as the EXIF body serial number.
+     */
+    public static final String KEY_DEVICE_ID = "DeviceId";
+    public static final String KEY_JOB_ID = "JobId";
+
+    private static final Pattern KEY_PATTERN = Pattern.compile("[A-Za-z_][A-Za-z0-9_.-]*");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Map<String, String> properties = new LinkedHashMap<>();
+    private boolean hasLocation;
+    private double latitude;
+    private double longitude;
+    private boolean hasAltitude;
+    private double altitude;
+    private long exposureTime;
+    private int iso;
+    private float focalLength;
+    private float aperture;
+
+    public CaptureMetadata() {
+    }
+
+    public CaptureMetadata(CaptureMetadata other) {
+        properties.putAll(other.properties);
+        hasLocation = other.hasLocation;
+        latitude = other.latitude;
+        longitude = other.longitude;
+        hasAltitude = other.hasAltitude;
+        altitude = other.altitude;
+        exposureTime = other.exposureTime;
+        iso = other.iso;
+        focalLength = other.focalLength;
+        aperture = other.aperture;
+    }
+
+    /**
+     * @param latitude  In degrees, from -90 to 90.
+     * @param longitude In degrees, from -180 to 180.
+     */
+    public CaptureMetadata setLocation(double latitude, double longitude) {
+        if (!(latitude >= -90 && latitude <= 90) || !(longitude >= -180 && longitude <= 180)) {
+            throw new IllegalArgumentException("Invalid location: " + latitude + ", " + longitude);
+        }
+        this.hasLocation = true;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        return this;
+    }
+
+    /**
+     * @param altitude In meters above the sea level.
+     */
+    public CaptureMetadata setAltitude(double altitude) {
+        if (Double.isNaN(altitude) || Double.isInfinite(altitude)) {
+            throw new IllegalArgumentException("Invalid altitude: " + altitude);
+        }
+        this.hasAltitude = true;
+        this.altitude = altitude;
+        return this;
+    }
+
+    /**
+     * @param key   A name made of letters, digits, {@code _}, {@code .} and {@code -}, like
+     *              {@link #KEY_JOB_ID}.
+     * @param value The value, {@code null} to remove the property.
+     */
+    public CaptureMetadata put(String key, String value) {
+        if (key == null || !KEY_PATTERN.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid property name: " + key);
+        }
+        if (value == null) {
+            properties.remove(key);
+        } else {
+            properties.put(key, value);
+        }
+        return this;
+    }
+
+    public String get(String key) {
+        return properties.get(key);
+    }
+
+    public Map<String, String> getProperties() {
+        return Collections.unmodifiableMap(properties);
+    }
+
+    /**
+     * @param exposureTime In nanoseconds.
+     */
+    public CaptureMetadata setExposureTime(long exposureTime) {
+        this.exposureTime = exposureTime;
+        return this;
+    }
+
+    public long getExposureTime() {
+        return exposureTime;
+    }
+
+    public CaptureMetadata setIso(int iso) {
+        this.iso = iso;
+        return this;
+    }
+
+    public int getIso() {
+        return iso;
+    }
+
+    /**
+     * @param focalLength In millimeters.
+     */
+    public CaptureMetadata setFocalLength(float focalLength) {
+        this.focalLength = focalLength;
+        return this;
+    }
+
+    public float getFocalLength() {
+        return focalLength;
+    }
+
+    /**
+     * @param aperture The f-number.
+     */
+    public CaptureMetadata setAperture(float aperture) {
+        this.aperture = aperture;
+        return this;
+    }
+
+    public float getAperture() {
+        return aperture;
+    }
+
+    /**
+     * @param original The TIFF data of the EXIF of the picture, or {@code null}.
+     * @return The TIFF data of the EXIF completed with this metadata, or {@code null} if there is
+     * nothing to add to it.
+     * @throws IOException If the EXIF does not fit in a JPEG segment.
+     */
+    byte[] buildExif(ByteBuffer original) throws IOException {
+        String deviceId = properties.get(KEY_DEVICE_ID);
+        if (!hasLocation && !hasAltitude && exposureTime <= 0 && iso <= 0 && focalLength <= 0
+                && aperture <= 0 && deviceId == null) {
+            return null;
+        }
+        ExifEditor exif;
+        try {
+            exif = original != null ? ExifEditor.parse(original) : new ExifEditor();
+        } catch (IOException e) {
+            // not readable by anyone, nothing is lost by starting over
+            exif = new ExifEditor();
+        }
+
+        if (hasLocation) {
+            exif.setBytes(ExifEditor.IFD_GPS, ExifEditor.TAG_GPS_VERSION_ID, (byte) 2, (byte) 3, (byte) 0, (byte) 0);
+            exif.setAscii(ExifEditor.IFD_GPS, ExifEditor.TAG_GPS_LATITUDE_REF, latitude < 0 ? "S" : "N");
+            exif.setRationals(ExifEditor.IFD_GPS, ExifEditor.TAG_GPS_LATITUDE, toDegreesMinutesSeconds(latitude));
+            exif.setAscii(ExifEditor.IFD_GPS, ExifEditor.TAG_GPS_LONGITUDE_REF, longitude < 0 ? "W" : "E");
+            exif.setRationals(ExifEditor.IFD_GPS, ExifEditor.TAG_GPS_LONGITUDE, toDegreesMinutesSeconds(longitude));
+        }
+        if (hasAltitude) {
+            exif.setBytes(ExifEditor.IFD_GPS, ExifEditor.TAG_GPS_ALTITUDE_REF, (byte) (altitude < 0 ? 1 : 0));
+            exif.setRationals(ExifEditor.IFD_GPS, ExifEditor.TAG_GPS_ALTITUDE, Math.round(Math.abs(altitude) * 100), 100);
+        }
+        if (exposureTime > 0) {
+            // microseconds are as precise as the exposure times cameras report
+            long micros = Math.max(1, exposureTime / 1000);
+            long divisor = gcd(micros, 1000000);
+            exif.setRationals(ExifEditor.IFD_EXIF, ExifEditor.TAG_EXPOSURE_TIME, micros / divisor, 1000000 / divisor);
+        }
+        if (iso > 0) {
+            exif.setShort(ExifEditor.IFD_EXIF, ExifEditor.TAG_ISO, Math.min(iso, 0xffff));
+        }
+        if (focalLength > 0) {
+            exif.setRationals(ExifEditor.IFD_EXIF, ExifEditor.TAG_FOCAL_LENGTH, Math.round(focalLength * 100), 100);
+        }
+        if (aperture > 0) {
+            exif.setRationals(ExifEditor.IFD_EXIF, ExifEditor.TAG_F_NUMBER, Math.round(aperture * 100), 100);
+        }
+        if (deviceId != null) {
+            exif.setAscii(ExifEditor.IFD_EXIF, ExifEditor.TAG_BODY_SERIAL_NUMBER, deviceId);
+        }
+
+        byte[] tiff = exif.toTiff();
+        if (JpegSegmentSplicer.EXIF_HEADER.length + tiff.length > JpegSegmentSplicer.MAX_SEGMENT_PAYLOAD
+                && exif.getThumbnail() != null) {
+            // the thumbnail is the first thing to give up
+            exif.removeThumbnail();
+            tiff = exif.toTiff();
+        }
+        return tiff;
+    }
+
+    private static long[] toDegreesMinutesSeconds(double value) {
+        long milliseconds = Math.round(Math.abs(value) * 3600 * 1000);
+        return new long[]{
+                milliseconds / 3600000, 1,
+                milliseconds / 60000 % 60, 1,
+                milliseconds % 60000, 1000,
+        };
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long r = a % b;
+            a = b;
+            b = r;
+        }
+        return a;
+    }
+
+    /**
+     * @return The XMP packet holding the properties, or {@code null} if there is none.
+     */
+    byte[] buildXmp() {
+        if (properties.isEmpty()) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder()
+                .append("<?xpacket begin=\"\uFEFF\" id=\"W5M0MpCehiHzreSzNTczkc9d\"?>\n")
+                .append("<x:xmpmeta xmlns:x=\"adobe:ns:meta/\">\n")
+                .append("<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\">\n")
+                .append("<rdf:Description rdf:about=\"\" xmlns:").append(XMP_PREFIX).append("=\"")
+                .append(XMP_NAMESPACE).append('"');
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            builder.append("\n ").append(XMP_PREFIX).append(':').append(property.getKey()).append("=\"");
+            appendEscaped(builder, property.getValue());
+            builder.append('"');
+        }
+        builder.append("/>\n</rdf:RDF>\n</x:xmpmeta>\n<?xpacket end=\"w\"?>");
+        return builder.toString().getBytes(UTF_8);
+    }
+
+    private static void appendEscaped(StringBuilder builder, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&': builder.append("&amp;"); break;
+                case '<': builder.append("&lt;"); break;
+                case '>': builder.append("&gt;"); break;
+                case '"': builder.append("&quot;"); break;
+                case '\n': builder.append("&#xA;"); break;
+                case '\r': builder.append("&#xD;"); break;
+                case '\t': builder.append("&#x9;"); break;
+                default:
+                    // other control characters are not allowed in XML 1.0
+                    if (c >= 0x20) {
+                        builder.append(c);
+                    }
+                    break;
+            }
+        }
+    }
+}
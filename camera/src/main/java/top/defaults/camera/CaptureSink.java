@@ -0,0 +1,24 @@
+package top.defaults.camera;
+
+import java.io.IOException;
+
+/**
+ * Receives every picture captured by a {@link Photographer}, see
+ * {@link Photographer#addCaptureSink(CaptureSink)}.
+ *
+ * Sinks are called one after another on a saver thread, and pictures may be saved by more than
+ * one thread at a time, so implementations should be thread-safe.
+ */
+public interface CaptureSink {
+
+    /**
+     * Called when a picture is captured. The buffer is only valid until this method returns,
+     * call {@link CaptureBuffer#retain()} to keep using it afterwards, and
+     * {@link CaptureBuffer#release()} when done with it.
+     *
+     * @param buffer The captured picture.
+     * @throws IOException If the picture cannot be consumed, it is reported as
+     * {@link Error#ERROR_STORAGE}.
+     */
+    void onCapture(CaptureBuffer buffer) throws IOException;
+}
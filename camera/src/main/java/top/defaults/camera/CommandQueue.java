@@ -0,0 +1,89 @@
+package top.defaults.camera;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The mailbox of the camera thread: the public calls of a photographer are posted here as
+ * commands, run one at a time in the order they are posted, from whatever thread. Posting never
+ * blocks and takes no lock.
+ *
+ * A command posted with a key supersedes the command of the same key still waiting, which is
+ * skipped when its turn comes, so a storm of {@code setZoom()} calls only runs the latest.
+ *
+ * Commands are run in batches, so a long queue leaves the other work of the thread, the camera
+ * callbacks, a chance in between.
+ */
+class CommandQueue {
+
+    static final int NO_KEY = -1;
+
+    private static final int MAX_BATCH = 16;
+
+    private static final class Command {
+        final int key;
+        final Runnable action;
+
+        Command(int key, Runnable action) {
+            this.key = key;
+            this.action = action;
+        }
+    }
+
+    private final Executor executor;
+    private final Queue<Command> mailbox = new ConcurrentLinkedQueue<>();
+    // the latest command of each key, cleared once it runs
+    private final AtomicReferenceArray<Command> latest;
+    private final AtomicBoolean isDrainScheduled = new AtomicBoolean();
+    private final Runnable drain = this::drain;
+
+    /**
+     * @param executor Runs the commands, it must run one thing at a time, like a {@code Handler}.
+     * @param keyCount Keys go from 0 to {@code keyCount - 1}.
+     */
+    CommandQueue(Executor executor, int keyCount) {
+        this.executor = executor;
+        latest = new AtomicReferenceArray<>(keyCount);
+    }
+
+    void post(Runnable action) {
+        post(NO_KEY, action);
+    }
+
+    void post(int key, Runnable action) {
+        Command command = new Command(key, action);
+        if (key != NO_KEY) {
+            latest.set(key, command);
+        }
+        mailbox.add(command);
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        if (isDrainScheduled.compareAndSet(false, true)) {
+            executor.execute(drain);
+        }
+    }
+
+    private void drain() {
+        // cleared first, a command posted from now on is either run here or schedules another drain
+        isDrainScheduled.set(false);
+        for (int i = 0; i < MAX_BATCH; i++) {
+            Command command = mailbox.poll();
+            if (command == null) {
+                return;
+            }
+            if (command.key != NO_KEY && !latest.compareAndSet(command.key, command, null)) {
+                // superseded by a later one
+                continue;
+            }
+            command.action.run();
+        }
+        if (!mailbox.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+}
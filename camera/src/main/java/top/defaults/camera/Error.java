@@ -37,6 +37,10 @@ public class Error extends java.lang.Error {
         cause.printStackTrace();
     }
 
+    public int getCode() {
+        return code;
+    }
+
     @Override
     public Throwable getCause() {
         return cause;
@@ -0,0 +1,213 @@
+package top.defaults.camera;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import top.defaults.logger.Logger;
+
+import static top.defaults.camera.Values.DEBUG;
+
+/**
+ * Delivers the events of a photographer to its listeners, each on the executor it subscribed
+ * with. Posting takes no lock: the subscribers are kept in an array which is copied on every
+ * change, so a post only reads the current one.
+ *
+ * High rate events, the zoom changes of a pinch, are coalesced per subscriber: while one is
+ * waiting to be delivered, a newer one replaces its value instead of queueing another, so a slow
+ * subscriber only sees the latest zoom.
+ */
+class EventBus {
+
+    private static final int EVENT_DEVICE_CONFIGURED = 1;
+    private static final int EVENT_PREVIEW_STARTED = 2;
+    private static final int EVENT_PREVIEW_STOPPED = 3;
+    private static final int EVENT_START_RECORDING = 4;
+    private static final int EVENT_FINISH_RECORDING = 5;
+    private static final int EVENT_SHOT_FINISHED = 6;
+    private static final int EVENT_ERROR = 7;
+    private static final int EVENT_STARTUP_METRICS = 8;
+
+    private static final Subscriber[] NO_SUBSCRIBERS = new Subscriber[0];
+
+    private final Executor mainExecutor;
+    // only the writers lock, posting reads the volatile array
+    private final Object lock = new Object();
+    private volatile Subscriber[] subscribers = NO_SUBSCRIBERS;
+    private Photographer.OnEventListener mainListener;
+
+    EventBus(Executor mainExecutor) {
+        this.mainExecutor = mainExecutor;
+    }
+
+    /**
+     * Adds a listener called on {@code executor}, does nothing if it is already subscribed.
+     */
+    void subscribe(Photographer.OnEventListener listener, Executor executor) {
+        synchronized (lock) {
+            Subscriber[] current = subscribers;
+            for (Subscriber subscriber : current) {
+                if (subscriber.listener == listener) {
+                    return;
+                }
+            }
+            Subscriber[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = new Subscriber(listener, executor);
+            subscribers = next;
+        }
+    }
+
+    /**
+     * Removes a listener, the events already posted to it are dropped.
+     */
+    void unsubscribe(Photographer.OnEventListener listener) {
+        synchronized (lock) {
+            Subscriber[] current = subscribers;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i].listener == listener) {
+                    current[i].isRemoved = true;
+                    Subscriber[] next = new Subscriber[current.length - 1];
+                    System.arraycopy(current, 0, next, 0, i);
+                    System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                    subscribers = next;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the listener set by {@link Photographer#setOnEventListener}, which is called on the
+     * main thread.
+     */
+    void setMainListener(Photographer.OnEventListener listener) {
+        synchronized (lock) {
+            if (mainListener != null) {
+                unsubscribe(mainListener);
+            }
+            mainListener = listener;
+            if (listener != null) {
+                subscribe(listener, mainExecutor);
+            }
+        }
+    }
+
+    void onDeviceConfigured() {
+        post(EVENT_DEVICE_CONFIGURED, null);
+    }
+
+    void onPreviewStarted() {
+        post(EVENT_PREVIEW_STARTED, null);
+    }
+
+    void onZoomChanged(float zoom) {
+        // the bits of the float are stored in an int, which needs no boxing
+        int zoomBits = Float.floatToIntBits(zoom);
+        for (Subscriber subscriber : subscribers) {
+            subscriber.postZoom(zoomBits);
+        }
+    }
+
+    void onPreviewStopped() {
+        post(EVENT_PREVIEW_STOPPED, null);
+    }
+
+    void onStartRecording() {
+        post(EVENT_START_RECORDING, null);
+    }
+
+    void onFinishRecording(String filePath) {
+        post(EVENT_FINISH_RECORDING, filePath);
+    }
+
+    void onShotFinished(String filePath) {
+        post(EVENT_SHOT_FINISHED, filePath);
+    }
+
+    void onError(final Error error) {
+        post(EVENT_ERROR, error);
+    }
+
+    void onStartupMetrics(StartupTrace trace) {
+        post(EVENT_STARTUP_METRICS, trace);
+    }
+
+    private void post(int event, Object arg) {
+        if (DEBUG) {
+            Logger.d("post: " + event);
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.post(event, arg);
+        }
+    }
+
+    private static class Subscriber {
+
+        final Photographer.OnEventListener listener;
+        final Executor executor;
+        volatile boolean isRemoved;
+
+        private volatile int pendingZoomBits;
+        private final AtomicBoolean isZoomScheduled = new AtomicBoolean();
+        private final Runnable deliverZoom = this::deliverZoom;
+
+        Subscriber(Photographer.OnEventListener listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        void post(int event, Object arg) {
+            executor.execute(() -> deliver(event, arg));
+        }
+
+        void postZoom(int zoomBits) {
+            pendingZoomBits = zoomBits;
+            // one delivery at a time, it reads the latest value when it runs
+            if (isZoomScheduled.compareAndSet(false, true)) {
+                executor.execute(deliverZoom);
+            }
+        }
+
+        private void deliverZoom() {
+            // cleared before reading, so a zoom stored meanwhile schedules another delivery
+            isZoomScheduled.set(false);
+            if (!isRemoved) {
+                listener.onZoomChanged(Float.intBitsToFloat(pendingZoomBits));
+            }
+        }
+
+        private void deliver(int event, Object arg) {
+            if (isRemoved) {
+                return;
+            }
+            switch (event) {
+                case EVENT_DEVICE_CONFIGURED:
+                    listener.onDeviceConfigured();
+                    break;
+                case EVENT_PREVIEW_STARTED:
+                    listener.onPreviewStarted();
+                    break;
+                case EVENT_PREVIEW_STOPPED:
+                    listener.onPreviewStopped();
+                    break;
+                case EVENT_START_RECORDING:
+                    listener.onStartRecording();
+                    break;
+                case EVENT_FINISH_RECORDING:
+                    listener.onFinishRecording((String) arg);
+                    break;
+                case EVENT_SHOT_FINISHED:
+                    listener.onShotFinished((String) arg);
+                    break;
+                case EVENT_ERROR:
+                    listener.onError((Error) arg);
+                    break;
+                case EVENT_STARTUP_METRICS:
+                    listener.onStartupMetrics((StartupTrace) arg);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
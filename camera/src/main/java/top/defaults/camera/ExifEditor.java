@@ -0,0 +1,424 @@
+package top.defaults.camera;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The TIFF structure of an EXIF segment, read into its directories so tags can be added or
+ * replaced, then written back. The entries which are not touched keep their bytes, in the byte
+ * order of the source.
+ *
+ * The offsets between directories are worked out again when written, the ones inside the values,
+ * like those of a maker note, are not, which is what most EXIF writers do too.
+ */
+class ExifEditor {
+
+    static final int IFD_0 = 0;
+    static final int IFD_EXIF = 1;
+    static final int IFD_GPS = 2;
+    static final int IFD_INTEROP = 3;
+    static final int IFD_1 = 4;
+    private static final int IFD_COUNT = 5;
+
+    static final int TYPE_BYTE = 1;
+    static final int TYPE_ASCII = 2;
+    static final int TYPE_SHORT = 3;
+    static final int TYPE_LONG = 4;
+    static final int TYPE_RATIONAL = 5;
+    static final int TYPE_UNDEFINED = 7;
+
+    static final int TAG_ORIENTATION = 0x0112;
+    static final int TAG_EXPOSURE_TIME = 0x829a;
+    static final int TAG_F_NUMBER = 0x829d;
+    static final int TAG_ISO = 0x8827;
+    static final int TAG_FOCAL_LENGTH = 0x920a;
+    static final int TAG_BODY_SERIAL_NUMBER = 0xa431;
+    static final int TAG_GPS_VERSION_ID = 0x0000;
+    static final int TAG_GPS_LATITUDE_REF = 0x0001;
+    static final int TAG_GPS_LATITUDE = 0x0002;
+    static final int TAG_GPS_LONGITUDE_REF = 0x0003;
+    static final int TAG_GPS_LONGITUDE = 0x0004;
+    static final int TAG_GPS_ALTITUDE_REF = 0x0005;
+    static final int TAG_GPS_ALTITUDE = 0x0006;
+
+    // rewritten on every write
+    private static final int TAG_EXIF_POINTER = 0x8769;
+    private static final int TAG_GPS_POINTER = 0x8825;
+    private static final int TAG_INTEROP_POINTER = 0xa005;
+    private static final int TAG_THUMBNAIL_OFFSET = 0x0201;
+    private static final int TAG_THUMBNAIL_LENGTH = 0x0202;
+
+    // sizes of the types, from 1 (BYTE) to 12 (DOUBLE)
+    private static final int[] TYPE_SIZES = {0, 1, 1, 2, 4, 8, 1, 1, 2, 4, 8, 4, 8};
+    private static final int TIFF_HEADER_SIZE = 8;
+    private static final int MAX_ENTRIES = 1000;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final class Entry {
+        final int type;
+        final int count;
+        // in the byte order of the editor
+        final byte[] value;
+
+        Entry(int type, int count, byte[] value) {
+            this.type = type;
+            this.count = count;
+            this.value = value;
+        }
+    }
+
+    private final ByteOrder order;
+    private final List<Map<Integer, Entry>> directories = new ArrayList<>(IFD_COUNT);
+    private byte[] thumbnail;
+
+    /**
+     * An empty EXIF, big endian like most cameras write it.
+     */
+    ExifEditor() {
+        this(ByteOrder.BIG_ENDIAN);
+    }
+
+    private ExifEditor(ByteOrder order) {
+        this.order = order;
+        for (int i = 0; i < IFD_COUNT; i++) {
+            directories.add(new TreeMap<>());
+        }
+    }
+
+    /**
+     * @param tiff The TIFF data of an EXIF segment, from its position to its limit, which is
+     *             copied from.
+     * @throws IOException If the data is not a TIFF structure which can be read.
+     */
+    static ExifEditor parse(ByteBuffer tiff) throws IOException {
+        try {
+            ByteBuffer data = tiff.slice();
+            if (data.remaining() < TIFF_HEADER_SIZE) {
+                throw new IOException("EXIF is too short");
+            }
+            ByteOrder order;
+            if (data.get(0) == 'I' && data.get(1) == 'I') {
+                order = ByteOrder.LITTLE_ENDIAN;
+            } else if (data.get(0) == 'M' && data.get(1) == 'M') {
+                order = ByteOrder.BIG_ENDIAN;
+            } else {
+                throw new IOException("Unknown EXIF byte order");
+            }
+            data.order(order);
+            if (data.getShort(2) != 42) {
+                throw new IOException("Not a TIFF header");
+            }
+            ExifEditor editor = new ExifEditor(order);
+            Set<Integer> visited = new HashSet<>();
+            int ifd1Offset = editor.readDirectory(data, IFD_0, data.getInt(4), visited);
+            Map<Integer, Entry> ifd0 = editor.directories.get(IFD_0);
+            editor.readPointedDirectory(data, ifd0.remove(TAG_EXIF_POINTER), IFD_EXIF, visited);
+            editor.readPointedDirectory(data, ifd0.remove(TAG_GPS_POINTER), IFD_GPS, visited);
+            editor.readPointedDirectory(data, editor.directories.get(IFD_EXIF).remove(TAG_INTEROP_POINTER),
+                    IFD_INTEROP, visited);
+            if (ifd1Offset != 0) {
+                editor.readDirectory(data, IFD_1, ifd1Offset, visited);
+                Map<Integer, Entry> ifd1 = editor.directories.get(IFD_1);
+                Entry offset = ifd1.remove(TAG_THUMBNAIL_OFFSET);
+                Entry length = ifd1.remove(TAG_THUMBNAIL_LENGTH);
+                if (offset != null && length != null) {
+                    int start = editor.readInt(offset);
+                    int size = editor.readInt(length);
+                    if (start < 0 || size < 0 || start > data.limit() - size) {
+                        throw new IOException("Thumbnail out of EXIF");
+                    }
+                    editor.thumbnail = new byte[size];
+                    ByteBuffer source = data.duplicate();
+                    source.position(start);
+                    source.get(editor.thumbnail);
+                }
+            }
+            return editor;
+        } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+            throw new IOException("Malformed EXIF", e);
+        }
+    }
+
+    private void readPointedDirectory(ByteBuffer data, Entry pointer, int ifd, Set<Integer> visited)
+            throws IOException {
+        if (pointer != null) {
+            readDirectory(data, ifd, readInt(pointer), visited);
+        }
+    }
+
+    /**
+     * @return The offset of the next directory, 0 if none.
+     */
+    private int readDirectory(ByteBuffer data, int ifd, int offset, Set<Integer> visited) throws IOException {
+        if (offset < TIFF_HEADER_SIZE || offset > data.limit() - 2 || !visited.add(offset)) {
+            throw new IOException("Bad EXIF directory offset: " + offset);
+        }
+        int count = data.getShort(offset) & 0xffff;
+        if (count > MAX_ENTRIES) {
+            throw new IOException("Too many EXIF entries: " + count);
+        }
+        Map<Integer, Entry> directory = directories.get(ifd);
+        for (int i = 0; i < count; i++) {
+            int position = offset + 2 + i * 12;
+            int tag = data.getShort(position) & 0xffff;
+            int type = data.getShort(position + 2) & 0xffff;
+            int valueCount = data.getInt(position + 4);
+            if (type >= TYPE_SIZES.length || TYPE_SIZES[type] == 0) {
+                // unknown type, its size is unknown too
+                continue;
+            }
+            long size = (long) valueCount * TYPE_SIZES[type];
+            if (valueCount < 0 || size > data.limit()) {
+                throw new IOException("Bad EXIF entry size of tag " + tag);
+            }
+            int valuePosition = size <= 4 ? position + 8 : data.getInt(position + 8);
+            if (valuePosition < 0 || valuePosition > data.limit() - size) {
+                throw new IOException("EXIF value out of bounds for tag " + tag);
+            }
+            byte[] value = new byte[(int) size];
+            ByteBuffer source = data.duplicate();
+            source.position(valuePosition);
+            source.get(value);
+            directory.put(tag, new Entry(type, valueCount, value));
+        }
+        int next = offset + 2 + count * 12;
+        return next <= data.limit() - 4 ? data.getInt(next) : 0;
+    }
+
+    private int readInt(Entry entry) throws IOException {
+        ByteBuffer value = ByteBuffer.wrap(entry.value).order(order);
+        switch (entry.type) {
+            case TYPE_SHORT:
+                return value.getShort() & 0xffff;
+            case TYPE_LONG:
+                return value.getInt();
+            default:
+                throw new IOException("Not an integer EXIF entry");
+        }
+    }
+
+    void setAscii(int ifd, int tag, String value) {
+        byte[] bytes = value.getBytes(UTF_8);
+        byte[] terminated = new byte[bytes.length + 1];
+        System.arraycopy(bytes, 0, terminated, 0, bytes.length);
+        directories.get(ifd).put(tag, new Entry(TYPE_ASCII, terminated.length, terminated));
+    }
+
+    void setBytes(int ifd, int tag, byte... values) {
+        directories.get(ifd).put(tag, new Entry(TYPE_BYTE, values.length, values.clone()));
+    }
+
+    void setShort(int ifd, int tag, int value) {
+        ByteBuffer bytes = ByteBuffer.allocate(2).order(order);
+        bytes.putShort((short) value);
+        directories.get(ifd).put(tag, new Entry(TYPE_SHORT, 1, bytes.array()));
+    }
+
+    /**
+     * @param fractions Numerators and denominators, one after the other.
+     */
+    void setRationals(int ifd, int tag, long... fractions) {
+        ByteBuffer bytes = ByteBuffer.allocate(fractions.length * 4).order(order);
+        for (long value : fractions) {
+            bytes.putInt((int) value);
+        }
+        directories.get(ifd).put(tag, new Entry(TYPE_RATIONAL, fractions.length / 2, bytes.array()));
+    }
+
+    void remove(int ifd, int tag) {
+        directories.get(ifd).remove(tag);
+    }
+
+    boolean has(int ifd, int tag) {
+        return directories.get(ifd).containsKey(tag);
+    }
+
+    /**
+     * @return The string of an ASCII entry, or {@code null}.
+     */
+    String getAscii(int ifd, int tag) {
+        Entry entry = directories.get(ifd).get(tag);
+        if (entry == null || entry.type != TYPE_ASCII) {
+            return null;
+        }
+        int length = 0;
+        while (length < entry.value.length && entry.value[length] != 0) {
+            length++;
+        }
+        return new String(entry.value, 0, length, UTF_8);
+    }
+
+    /**
+     * @return The first value of a SHORT or LONG entry, or {@code -1}.
+     */
+    long getInt(int ifd, int tag) {
+        Entry entry = directories.get(ifd).get(tag);
+        if (entry == null) {
+            return -1;
+        }
+        ByteBuffer value = ByteBuffer.wrap(entry.value).order(order);
+        switch (entry.type) {
+            case TYPE_SHORT:
+                return value.getShort() & 0xffff;
+            case TYPE_LONG:
+                return value.getInt() & 0xffffffffL;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * @return The {@code index}th fraction of a RATIONAL entry, or {@code NaN}.
+     */
+    double getRational(int ifd, int tag, int index) {
+        Entry entry = directories.get(ifd).get(tag);
+        if (entry == null || entry.type != TYPE_RATIONAL || index >= entry.count) {
+            return Double.NaN;
+        }
+        ByteBuffer value = ByteBuffer.wrap(entry.value).order(order);
+        long numerator = value.getInt(index * 8) & 0xffffffffL;
+        long denominator = value.getInt(index * 8 + 4) & 0xffffffffL;
+        return (double) numerator / denominator;
+    }
+
+    byte[] getThumbnail() {
+        return thumbnail;
+    }
+
+    void removeThumbnail() {
+        thumbnail = null;
+        directories.get(IFD_1).clear();
+    }
+
+    /**
+     * @return The TIFF data, directories in the order IFD0, EXIF, interoperability, GPS, IFD1,
+     * each followed by its values, and the thumbnail last.
+     */
+    byte[] toTiff() {
+        List<Map<Integer, Entry>> output = new ArrayList<>(IFD_COUNT);
+        for (Map<Integer, Entry> directory : directories) {
+            output.add(new TreeMap<>(directory));
+        }
+        boolean hasInterop = !output.get(IFD_INTEROP).isEmpty();
+        boolean hasExif = !output.get(IFD_EXIF).isEmpty() || hasInterop;
+        boolean hasGps = !output.get(IFD_GPS).isEmpty();
+        boolean hasIfd1 = !output.get(IFD_1).isEmpty() || thumbnail != null;
+        // pointers are added first, they count in the sizes of their directories
+        if (hasInterop) {
+            output.get(IFD_EXIF).put(TAG_INTEROP_POINTER, longEntry(0));
+        }
+        if (hasExif) {
+            output.get(IFD_0).put(TAG_EXIF_POINTER, longEntry(0));
+        }
+        if (hasGps) {
+            output.get(IFD_0).put(TAG_GPS_POINTER, longEntry(0));
+        }
+        if (thumbnail != null) {
+            output.get(IFD_1).put(TAG_THUMBNAIL_OFFSET, longEntry(0));
+            output.get(IFD_1).put(TAG_THUMBNAIL_LENGTH, longEntry(thumbnail.length));
+        }
+
+        int[] written = {IFD_0, IFD_EXIF, IFD_INTEROP, IFD_GPS, IFD_1};
+        boolean[] isWritten = new boolean[IFD_COUNT];
+        isWritten[IFD_0] = true;
+        isWritten[IFD_EXIF] = hasExif;
+        isWritten[IFD_INTEROP] = hasInterop;
+        isWritten[IFD_GPS] = hasGps;
+        isWritten[IFD_1] = hasIfd1;
+        int[] offsets = new int[IFD_COUNT];
+        int offset = TIFF_HEADER_SIZE;
+        for (int ifd : written) {
+            if (isWritten[ifd]) {
+                offsets[ifd] = offset;
+                offset += directorySize(output.get(ifd));
+            }
+        }
+        int thumbnailOffset = offset;
+        int size = offset + (thumbnail != null ? thumbnail.length : 0);
+
+        if (hasInterop) {
+            output.get(IFD_EXIF).put(TAG_INTEROP_POINTER, longEntry(offsets[IFD_INTEROP]));
+        }
+        if (hasExif) {
+            output.get(IFD_0).put(TAG_EXIF_POINTER, longEntry(offsets[IFD_EXIF]));
+        }
+        if (hasGps) {
+            output.get(IFD_0).put(TAG_GPS_POINTER, longEntry(offsets[IFD_GPS]));
+        }
+        if (thumbnail != null) {
+            output.get(IFD_1).put(TAG_THUMBNAIL_OFFSET, longEntry(thumbnailOffset));
+        }
+
+        ByteBuffer tiff = ByteBuffer.allocate(size).order(order);
+        tiff.put((byte) (order == ByteOrder.LITTLE_ENDIAN ? 'I' : 'M'));
+        tiff.put((byte) (order == ByteOrder.LITTLE_ENDIAN ? 'I' : 'M'));
+        tiff.putShort((short) 42);
+        tiff.putInt(offsets[IFD_0]);
+        for (int ifd : written) {
+            if (isWritten[ifd]) {
+                // only IFD0 links to another directory, the one of the thumbnail
+                int next = ifd == IFD_0 && hasIfd1 ? offsets[IFD_1] : 0;
+                writeDirectory(tiff, output.get(ifd), next);
+            }
+        }
+        if (thumbnail != null) {
+            tiff.put(thumbnail);
+        }
+        return tiff.array();
+    }
+
+    private Entry longEntry(long value) {
+        ByteBuffer bytes = ByteBuffer.allocate(4).order(order);
+        bytes.putInt((int) value);
+        return new Entry(TYPE_LONG, 1, bytes.array());
+    }
+
+    private static int directorySize(Map<Integer, Entry> directory) {
+        int size = 2 + directory.size() * 12 + 4;
+        for (Entry entry : directory.values()) {
+            if (entry.value.length > 4) {
+                // values start on a word boundary
+                size += entry.value.length + (entry.value.length & 1);
+            }
+        }
+        return size;
+    }
+
+    private static void writeDirectory(ByteBuffer tiff, Map<Integer, Entry> directory, int next) {
+        int valueOffset = tiff.position() + 2 + directory.size() * 12 + 4;
+        tiff.putShort((short) directory.size());
+        for (Map.Entry<Integer, Entry> item : directory.entrySet()) {
+            Entry entry = item.getValue();
+            tiff.putShort(item.getKey().shortValue());
+            tiff.putShort((short) entry.type);
+            tiff.putInt(entry.count);
+            if (entry.value.length <= 4) {
+                tiff.put(entry.value);
+                for (int i = entry.value.length; i < 4; i++) {
+                    tiff.put((byte) 0);
+                }
+            } else {
+                tiff.putInt(valueOffset);
+                valueOffset += entry.value.length + (entry.value.length & 1);
+            }
+        }
+        tiff.putInt(next);
+        for (Entry entry : directory.values()) {
+            if (entry.value.length > 4) {
+                tiff.put(entry.value);
+                if ((entry.value.length & 1) != 0) {
+                    tiff.put((byte) 0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package top.defaults.camera;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Saves pictures to {@link CaptureBuffer#getFilePath()}, the paths are reported by
+ * {@link Photographer.OnEventListener#onShotFinished(String)}. A {@link Photographer} starts with
+ * one of these in its sinks.
+ *
+ * A picture is written to a temporary file, synced, then renamed to its path, so neither a crash
+ * nor a power loss leaves a truncated picture behind, see {@link CaptureJournal}.
+ */
+public class FileCaptureSink implements CaptureSink {
+
+    private final FileSyncer fileSyncer;
+
+    FileCaptureSink(FileSyncer fileSyncer) {
+        this.fileSyncer = fileSyncer;
+    }
+
+    @Override
+    public void onCapture(CaptureBuffer buffer) throws IOException {
+        File target = new File(buffer.getFilePath());
+        File temp = CaptureJournal.tempFileFor(target);
+        CaptureJournal journal = CaptureJournal.forDirectory(target.getParentFile());
+        journal.pending(target);
+        FileOutputStream output = new FileOutputStream(temp);
+        try {
+            // the JPEG data is a direct buffer, writing it through the channel
+            // avoids copying the whole picture into the heap
+            buffer.writeTo(output.getChannel());
+            // whatever the durability, file systems may persist the rename before the data
+            output.getFD().sync();
+        } finally {
+            output.close();
+        }
+        fileSyncer.commit(journal, temp, target);
+    }
+}
@@ -0,0 +1,78 @@
+package top.defaults.camera;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Makes the commits of the written pictures durable according to one of the
+ * {@code Values.DURABILITY_*} policies. The data of a picture is synced before it is committed
+ * whatever the policy, see {@link FileCaptureSink}, only the journal records are left to it.
+ */
+class FileSyncer {
+
+    // number of commits synced together under Values.DURABILITY_SYNC_BATCHED
+    private static final int BATCH_SIZE = 8;
+
+    private int durability = Values.DURABILITY_NONE;
+    private final Set<CaptureJournal> unsyncedJournals = new LinkedHashSet<>();
+    private int unsyncedCommits;
+
+    /**
+     * @return If the policy changed, the commits of a batch held so far are left to {@link #flush()}.
+     */
+    synchronized boolean setDurability(int durability) {
+        if (this.durability == durability) {
+            return false;
+        }
+        this.durability = durability;
+        return true;
+    }
+
+    synchronized int getDurability() {
+        return durability;
+    }
+
+    /**
+     * Move a completely written and synced picture to its path, see
+     * {@link CaptureJournal#commit(File, File, boolean)}.
+     */
+    synchronized void commit(CaptureJournal journal, File temp, File target) throws IOException {
+        switch (durability) {
+            case Values.DURABILITY_SYNC_EACH:
+                journal.commit(temp, target, true);
+                break;
+            case Values.DURABILITY_SYNC_BATCHED:
+                journal.commit(temp, target, false);
+                unsyncedJournals.add(journal);
+                if (++unsyncedCommits >= BATCH_SIZE) {
+                    flush();
+                }
+                break;
+            case Values.DURABILITY_NONE:
+            default:
+                journal.commit(temp, target, false);
+                break;
+        }
+    }
+
+    /**
+     * Syncs the journals holding the commits of a batch.
+     */
+    synchronized void flush() throws IOException {
+        IOException exception = null;
+        for (CaptureJournal journal : unsyncedJournals) {
+            try {
+                journal.sync();
+            } catch (IOException e) {
+                if (exception == null) exception = e;
+            }
+        }
+        unsyncedJournals.clear();
+        unsyncedCommits = 0;
+        if (exception != null) {
+            throw exception;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package top.defaults.camera;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of the intervals between preview frames, in 1ms buckets.
+ *
+ * Frames are recorded by a single thread (the main thread drawing the preview) without locking
+ * or allocating, snapshots may be taken from any thread.
+ */
+class FrameIntervalHistogram {
+
+    static final long BUCKET_NANOS = 1000000L;
+    // intervals of 250ms and longer all land in the last bucket
+    static final int BUCKET_COUNT = 250;
+
+    private static final int DEFAULT_EXPECTED_FPS = 30;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong frameCount = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong totalIntervalNanos = new AtomicLong();
+    private final AtomicLong maxIntervalNanos = new AtomicLong();
+    private volatile int expectedFps = DEFAULT_EXPECTED_FPS;
+    // only touched by the recording thread
+    private long lastTimestamp;
+
+    /**
+     * Start over, e.g. for a new capture session.
+     *
+     * @param expectedFps The frame rate the camera is asked for, usually the upper bound of the AE
+     *                    target FPS range, or 0 if unknown.
+     */
+    void reset(int expectedFps) {
+        this.expectedFps = expectedFps > 0 ? expectedFps : DEFAULT_EXPECTED_FPS;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        frameCount.set(0);
+        droppedFrames.set(0);
+        totalIntervalNanos.set(0);
+        maxIntervalNanos.set(0);
+        lastTimestamp = 0;
+    }
+
+    /**
+     * @param timestamp Timestamp of the frame in nanoseconds, see
+     *                  {@link android.graphics.SurfaceTexture#getTimestamp()}.
+     */
+    void record(long timestamp) {
+        long last = lastTimestamp;
+        lastTimestamp = timestamp;
+        frameCount.incrementAndGet();
+        if (last == 0 || timestamp <= last) {
+            return;
+        }
+
+        long interval = timestamp - last;
+        int bucket = (int) Math.min(interval / BUCKET_NANOS, BUCKET_COUNT - 1);
+        buckets.incrementAndGet(bucket);
+        totalIntervalNanos.addAndGet(interval);
+        if (interval > maxIntervalNanos.get()) {
+            maxIntervalNanos.set(interval);
+        }
+
+        // an interval well over the expected one means frames were skipped in between
+        long expectedInterval = 1000000000L / expectedFps;
+        if (interval * 2 > expectedInterval * 3) {
+            droppedFrames.addAndGet((interval + expectedInterval / 2) / expectedInterval - 1);
+        }
+    }
+
+    PreviewStats snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long intervalCount = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            intervalCount += counts[i];
+        }
+        long total = totalIntervalNanos.get();
+        float deliveredFps = total > 0 ? intervalCount * 1e9f / total : 0;
+        return new PreviewStats(frameCount.get(), droppedFrames.get(), expectedFps, deliveredFps,
+                percentile(counts, intervalCount, 50), percentile(counts, intervalCount, 95),
+                percentile(counts, intervalCount, 99), maxIntervalNanos.get(), counts);
+    }
+
+    /**
+     * @return The upper bound of the bucket holding the given percentile, or 0 without intervals.
+     */
+    private static long percentile(long[] counts, long total, int percent) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (total * percent + 99) / 100;
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return (i + 1) * BUCKET_NANOS;
+            }
+        }
+        return counts.length * BUCKET_NANOS;
+    }
+}
@@ -0,0 +1,220 @@
+package top.defaults.camera;
+
+import android.graphics.ImageFormat;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.view.Surface;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Feeds the frames of a {@link ImageFormat#YUV_420_888} {@link ImageReader} to the
+ * {@link ImageAnalyzer}s, each on its own executor. An analyzer still busy with an earlier frame
+ * either misses the new one ({@link Values#ANALYSIS_KEEP_LATEST}) or holds the frames back in the
+ * reader until it is done ({@link Values#ANALYSIS_BLOCK}), which slows down the camera.
+ *
+ * Draining and dispatching run on the camera thread.
+ */
+class ImageAnalysis {
+
+    // frames held by analyzers plus the ones acquireLatestImage() needs to skip older frames
+    private static final int MAX_IMAGES = 4;
+
+    private final List<Entry> entries = new CopyOnWriteArrayList<>();
+    private final Handler cameraHandler;
+    private final Callback callback;
+    private volatile long minIntervalNanos;
+    private Stream stream;
+    private long lastTimestamp;
+
+    ImageAnalysis(Handler cameraHandler, Callback callback) {
+        this.cameraHandler = cameraHandler;
+        this.callback = callback;
+    }
+
+    /**
+     * @return {@code true} if this is the first analyzer.
+     */
+    boolean add(ImageAnalyzer analyzer, Executor executor, int strategy) {
+        for (Entry entry : entries) {
+            if (entry.analyzer == analyzer) {
+                return false;
+            }
+        }
+        entries.add(new Entry(analyzer, executor, strategy));
+        return entries.size() == 1;
+    }
+
+    /**
+     * @return {@code true} if this was the last analyzer.
+     */
+    boolean remove(ImageAnalyzer analyzer) {
+        for (Entry entry : entries) {
+            if (entry.analyzer == analyzer) {
+                entries.remove(entry);
+                return entries.isEmpty();
+            }
+        }
+        return false;
+    }
+
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * @param fps Maximum frames per second delivered to the analyzers, 0 for all of them.
+     */
+    void setRate(int fps) {
+        minIntervalNanos = fps > 0 ? 1000000000L / fps : 0;
+    }
+
+    Surface open(Size size) {
+        close();
+        lastTimestamp = 0;
+        ImageReader imageReader = ImageReader.newInstance(size.getWidth(), size.getHeight(),
+                ImageFormat.YUV_420_888, MAX_IMAGES);
+        stream = new Stream(imageReader);
+        imageReader.setOnImageAvailableListener(reader -> drain(), cameraHandler);
+        return imageReader.getSurface();
+    }
+
+    /**
+     * Stop dispatching, the reader is closed as soon as the analyzers return its frames.
+     */
+    void close() {
+        if (stream == null) {
+            return;
+        }
+        stream.imageReader.setOnImageAvailableListener(null, null);
+        stream.isClosing = true;
+        stream.closeIfIdle();
+        stream = null;
+    }
+
+    private void drain() {
+        Stream stream = this.stream;
+        while (stream != null && stream == this.stream) {
+            boolean isBlocking = false;
+            for (Entry entry : entries) {
+                if (entry.strategy == Values.ANALYSIS_BLOCK) {
+                    if (entry.isBusy) {
+                        // leave the frames in the reader until it is done
+                        return;
+                    }
+                    isBlocking = true;
+                }
+            }
+
+            Image image;
+            try {
+                image = isBlocking ? stream.imageReader.acquireNextImage() : stream.imageReader.acquireLatestImage();
+            } catch (IllegalStateException e) {
+                // all the images of the reader are being analyzed
+                return;
+            }
+            if (image == null) {
+                return;
+            }
+
+            long timestamp = image.getTimestamp();
+            if (lastTimestamp != 0 && timestamp - lastTimestamp < minIntervalNanos) {
+                image.close();
+                continue;
+            }
+            lastTimestamp = timestamp;
+            dispatch(stream, image);
+        }
+    }
+
+    private void dispatch(Stream stream, Image image) {
+        int count = 0;
+        for (Entry entry : entries) {
+            if (!entry.isBusy) {
+                count++;
+            }
+        }
+        if (count == 0) {
+            image.close();
+            return;
+        }
+
+        stream.openImages.incrementAndGet();
+        AtomicInteger remaining = new AtomicInteger(count);
+        for (Entry entry : entries) {
+            if (entry.isBusy) {
+                continue;
+            }
+            entry.isBusy = true;
+            Runnable task = () -> {
+                try {
+                    entry.analyzer.analyze(image);
+                } catch (RuntimeException e) {
+                    callback.onAnalyzerError(Utils.errorFromThrowable(e));
+                } finally {
+                    finishAnalysis(entry, stream, image, remaining);
+                }
+            };
+            try {
+                entry.executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                callback.onAnalyzerError(Utils.errorFromThrowable(e));
+                finishAnalysis(entry, stream, image, remaining);
+            }
+        }
+    }
+
+    private void finishAnalysis(Entry entry, Stream stream, Image image, AtomicInteger remaining) {
+        if (remaining.decrementAndGet() == 0) {
+            image.close();
+            stream.openImages.decrementAndGet();
+        }
+        cameraHandler.post(() -> {
+            entry.isBusy = false;
+            stream.closeIfIdle();
+            drain();
+        });
+    }
+
+    private static class Stream {
+        final ImageReader imageReader;
+        final AtomicInteger openImages = new AtomicInteger();
+        // only touched on the camera thread
+        boolean isClosing;
+        boolean isClosed;
+
+        Stream(ImageReader imageReader) {
+            this.imageReader = imageReader;
+        }
+
+        void closeIfIdle() {
+            if (isClosing && !isClosed && openImages.get() == 0) {
+                imageReader.close();
+                isClosed = true;
+            }
+        }
+    }
+
+    private static class Entry {
+        final ImageAnalyzer analyzer;
+        final Executor executor;
+        final int strategy;
+        // only touched on the camera thread
+        boolean isBusy;
+
+        Entry(ImageAnalyzer analyzer, Executor executor, int strategy) {
+            this.analyzer = analyzer;
+            this.executor = executor;
+            this.strategy = strategy;
+        }
+    }
+
+    interface Callback {
+        void onAnalyzerError(Error error);
+    }
+}
@@ -0,0 +1,16 @@
+package top.defaults.camera;
+
+import android.media.Image;
+
+/**
+ * Receives low resolution {@link android.graphics.ImageFormat#YUV_420_888} frames of the live
+ * preview, see {@link Photographer#addImageAnalyzer(ImageAnalyzer, java.util.concurrent.Executor, int)}.
+ */
+public interface ImageAnalyzer {
+
+    /**
+     * Called on the executor of the analyzer. The image may be shared with other analyzers and is
+     * closed once all of them return, even if they throw, so don't close it or keep it around.
+     */
+    void analyze(Image image);
+}
@@ -28,6 +28,10 @@ abstract class ImageCaptureCallback
         this.state = state;
     }
 
+    int getState() {
+        return state;
+    }
+
     @Override
     public void onCaptureProgressed(@NonNull CameraCaptureSession session,
                                     @NonNull CaptureRequest request, @NonNull CaptureResult partialResult) {
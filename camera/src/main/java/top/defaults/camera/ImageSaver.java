@@ -2,40 +2,80 @@ package top.defaults.camera;
 
 import android.media.Image;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.util.List;
 
+/**
+ * Hands a captured image over to all the {@link CaptureSink}s, the image is closed once the last
+ * of them releases it.
+ */
 class ImageSaver implements Runnable {
 
     private final Image image;
-    private final String filePath;
+    private final Runnable closeImage;
+    private final Shot shot;
+    private final List<CaptureSink> sinks;
+    private final Callback callback;
 
-    ImageSaver(Image image, String filePath) {
+    /**
+     * @param closeImage Gives {@code image} back to where it was taken from.
+     */
+    ImageSaver(Image image, Runnable closeImage, Shot shot, List<CaptureSink> sinks, Callback callback) {
         this.image = image;
-        this.filePath = filePath;
+        this.closeImage = closeImage;
+        this.shot = shot;
+        this.sinks = sinks;
+        this.callback = callback;
     }
 
     @Override
     public void run() {
-        ByteBuffer buffer = image.getPlanes()[0].getBuffer();
-        byte[] bytes = new byte[buffer.remaining()];
-        buffer.get(bytes);
-        FileOutputStream output = null;
+        CaptureBuffer buffer;
         try {
-            output = new FileOutputStream(filePath);
-            output.write(bytes);
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            image.close();
-            if (null != output) {
+            // resolved as late as possible, the capture result may come after the image
+            buffer = createBuffer(image, shot.filePath, shot.resolveMetadata());
+        } catch (IOException | RuntimeException e) {
+            // no buffer took the image over, it would hold a slot of its reader for good
+            closeImage.run();
+            callback.onFinish(null, Utils.errorFromThrowable(e));
+            return;
+        }
+        boolean savedToFile = false;
+        Error error = null;
+        try {
+            for (CaptureSink sink : sinks) {
                 try {
-                    output.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
+                    sink.onCapture(buffer);
+                    if (sink instanceof FileCaptureSink) {
+                        savedToFile = true;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // one failing sink should not keep the picture from the others
+                    if (error == null) {
+                        error = new Error(Error.ERROR_STORAGE, e);
+                    }
                 }
             }
+        } finally {
+            buffer.release();
         }
+        callback.onFinish(savedToFile ? shot.filePath : null, error);
+    }
+
+    /**
+     * @return The buffer handed to the sinks, which closes {@code image} once released.
+     */
+    CaptureBuffer createBuffer(Image image, String filePath, CaptureMetadata metadata) throws IOException {
+        return new CaptureBuffer(image.getPlanes()[0].getBuffer(), image.getWidth(), image.getHeight(),
+                image.getTimestamp(), filePath, metadata, closeImage);
+    }
+
+    interface Callback {
+
+        /**
+         * @param filePath The path of the saved file, or {@code null} if no file is saved.
+         * @param error    The first error happened, or {@code null}.
+         */
+        void onFinish(String filePath, Error error);
     }
 }
@@ -0,0 +1,154 @@
+package top.defaults.camera;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A small pool of background threads which write the captured pictures, so slow storage never
+ * blocks the camera. The number of pending writes is bounded by the queue depth, callers should
+ * check {@link #hasCapacity()} before submitting.
+ */
+class ImageSaverExecutor {
+
+    private static final int THREAD_COUNT = 2;
+    private static final long KEEP_ALIVE_SECONDS = 2;
+
+    private final ThreadPoolExecutor executor;
+    private final Runnable onWriteFinished;
+    private volatile int queueDepth;
+
+    // writes submitted but not finished yet
+    private final AtomicInteger pendingWrites = new AtomicInteger();
+    // sequence numbers of the writes being run or waiting, and the tasks waiting for them
+    private long nextSequence;
+    private final TreeSet<Long> inFlightWrites = new TreeSet<>();
+    private final List<Barrier> barriers = new ArrayList<>();
+    private int maxPendingWrites;
+    private long completedWrites;
+    private long droppedWrites;
+    private long totalWaitNanos;
+    private long totalWriteNanos;
+    private long maxWriteNanos;
+
+    /**
+     * @param onWriteFinished Called on the saver thread after each write, once it no longer
+     *                        counts against the queue depth.
+     */
+    ImageSaverExecutor(int queueDepth, Runnable onWriteFinished) {
+        this.queueDepth = queueDepth;
+        this.onWriteFinished = onWriteFinished;
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "CameraImageSaver-" + threadCount.incrementAndGet());
+        executor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+        // no idle threads are kept around when nothing is being captured
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    void setQueueDepth(int queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    int getQueueDepth() {
+        return queueDepth;
+    }
+
+    boolean hasCapacity() {
+        return pendingWrites.get() < queueDepth;
+    }
+
+    private static final class Barrier {
+        // runs once no write below this sequence is in flight
+        final long sequence;
+        final Runnable task;
+
+        Barrier(long sequence, Runnable task) {
+            this.sequence = sequence;
+            this.task = task;
+        }
+    }
+
+    void submit(ImageSaver saver) {
+        final long submitTime = SystemClock.elapsedRealtimeNanos();
+        int pending = pendingWrites.incrementAndGet();
+        final long sequence;
+        synchronized (this) {
+            maxPendingWrites = Math.max(maxPendingWrites, pending);
+            sequence = nextSequence++;
+            inFlightWrites.add(sequence);
+        }
+        executor.execute(() -> {
+            long startTime = SystemClock.elapsedRealtimeNanos();
+            try {
+                saver.run();
+            } finally {
+                long writeNanos = SystemClock.elapsedRealtimeNanos() - startTime;
+                List<Runnable> ready;
+                synchronized (this) {
+                    completedWrites++;
+                    totalWaitNanos += startTime - submitTime;
+                    totalWriteNanos += writeNanos;
+                    maxWriteNanos = Math.max(maxWriteNanos, writeNanos);
+                    inFlightWrites.remove(sequence);
+                    ready = takeReadyBarriers();
+                }
+                pendingWrites.decrementAndGet();
+                for (Runnable task : ready) {
+                    executor.execute(task);
+                }
+            }
+            onWriteFinished.run();
+        });
+    }
+
+    /**
+     * Runs a task once all the writes submitted so far are finished, whichever thread they run
+     * on. It is not limited by the queue depth.
+     */
+    void execute(Runnable runnable) {
+        synchronized (this) {
+            if (!inFlightWrites.isEmpty()) {
+                barriers.add(new Barrier(nextSequence, runnable));
+                return;
+            }
+        }
+        executor.execute(runnable);
+    }
+
+    private List<Runnable> takeReadyBarriers() {
+        List<Runnable> ready = new ArrayList<>();
+        long oldest = inFlightWrites.isEmpty() ? Long.MAX_VALUE : inFlightWrites.first();
+        for (int i = 0; i < barriers.size(); ) {
+            Barrier barrier = barriers.get(i);
+            if (barrier.sequence <= oldest) {
+                ready.add(barrier.task);
+                barriers.remove(i);
+            } else {
+                i++;
+            }
+        }
+        return ready;
+    }
+
+    synchronized void onDropped() {
+        droppedWrites++;
+    }
+
+    synchronized WriteStats getStats() {
+        return new WriteStats(pendingWrites.get(), maxPendingWrites, queueDepth, completedWrites,
+                droppedWrites, completedWrites == 0 ? 0 : totalWaitNanos / completedWrites,
+                completedWrites == 0 ? 0 : totalWriteNanos / completedWrites, maxWriteNanos);
+    }
+}
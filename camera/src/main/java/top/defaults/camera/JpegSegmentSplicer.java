@@ -0,0 +1,222 @@
+package top.defaults.camera;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces the EXIF and XMP segments of a JPEG while copying it, in one pass and without decoding
+ * it: only the segment headers in front of the scan are read, everything else, the entropy coded
+ * data above all, is written as slices of the source buffer.
+ *
+ * The new segments go right after the SOI, or after the JFIF APP0 if the picture starts with one,
+ * where readers look for them.
+ */
+class JpegSegmentSplicer {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    static final byte[] EXIF_HEADER = {'E', 'x', 'i', 'f', 0, 0};
+    static final byte[] XMP_HEADER = "http://ns.adobe.com/xap/1.0/\0".getBytes(ASCII);
+    private static final byte[] XMP_EXTENSION_HEADER = "http://ns.adobe.com/xmp/extension/\0".getBytes(ASCII);
+    private static final byte[] JFIF_HEADER = {'J', 'F', 'I', 'F', 0};
+
+    // the length field counts itself
+    static final int MAX_SEGMENT_PAYLOAD = 0xffff - 2;
+
+    private static final int MARKER_SOI = 0xd8;
+    private static final int MARKER_EOI = 0xd9;
+    private static final int MARKER_SOS = 0xda;
+    private static final int MARKER_APP0 = 0xe0;
+    private static final int MARKER_APP1 = 0xe1;
+
+    private static final int KIND_OTHER = 0;
+    private static final int KIND_JFIF = 1;
+    private static final int KIND_EXIF = 2;
+    private static final int KIND_XMP = 3;
+
+    private static final class Segment {
+        final int start;
+        final int length;
+        // after the marker, fill bytes and length
+        final int payload;
+        final int kind;
+
+        Segment(int start, int length, int payload, int kind) {
+            this.start = start;
+            this.length = length;
+            this.payload = payload;
+            this.kind = kind;
+        }
+    }
+
+    private final ByteBuffer jpeg;
+    private final List<Segment> segments;
+    // the SOS marker, or whatever follows the headers
+    private final int scanStart;
+
+    private JpegSegmentSplicer(ByteBuffer jpeg, List<Segment> segments, int scanStart) {
+        this.jpeg = jpeg;
+        this.segments = segments;
+        this.scanStart = scanStart;
+    }
+
+    /**
+     * Walk the segment headers of {@code jpeg}, from its position to its limit.
+     *
+     * @return The splicer, or {@code null} if the data is not a JPEG whose headers can be walked.
+     */
+    static JpegSegmentSplicer parse(ByteBuffer jpeg) {
+        ByteBuffer data = jpeg.slice();
+        int limit = data.limit();
+        if (limit < 4 || (data.get(0) & 0xff) != 0xff || (data.get(1) & 0xff) != MARKER_SOI) {
+            return null;
+        }
+        List<Segment> segments = new ArrayList<>();
+        int position = 2;
+        while (true) {
+            if (position >= limit || (data.get(position) & 0xff) != 0xff) {
+                return null;
+            }
+            int start = position;
+            // markers may be preceded by fill bytes
+            while (position < limit && (data.get(position) & 0xff) == 0xff) {
+                position++;
+            }
+            if (position >= limit) {
+                return null;
+            }
+            int marker = data.get(position++) & 0xff;
+            if (marker == MARKER_SOS || marker == MARKER_EOI) {
+                return new JpegSegmentSplicer(data, segments, start);
+            }
+            if (marker == 0x01 || (marker >= 0xd0 && marker <= 0xd7)) {
+                // standalone markers, no length
+                segments.add(new Segment(start, position - start, position, KIND_OTHER));
+                continue;
+            }
+            if (position + 2 > limit) {
+                return null;
+            }
+            int length = ((data.get(position) & 0xff) << 8) | (data.get(position + 1) & 0xff);
+            if (length < 2 || position + length > limit) {
+                return null;
+            }
+            int payload = position + 2;
+            position += length;
+            segments.add(new Segment(start, position - start, payload, kindOf(data, marker, payload, position)));
+        }
+    }
+
+    private static int kindOf(ByteBuffer data, int marker, int payload, int end) {
+        if (marker == MARKER_APP0 && startsWith(data, payload, end, JFIF_HEADER)) {
+            return KIND_JFIF;
+        }
+        if (marker == MARKER_APP1) {
+            if (startsWith(data, payload, end, EXIF_HEADER)) {
+                return KIND_EXIF;
+            }
+            if (startsWith(data, payload, end, XMP_HEADER) || startsWith(data, payload, end, XMP_EXTENSION_HEADER)) {
+                return KIND_XMP;
+            }
+        }
+        return KIND_OTHER;
+    }
+
+    private static boolean startsWith(ByteBuffer data, int position, int end, byte[] prefix) {
+        if (end - position < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data.get(position + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The TIFF data of the first EXIF segment, a view of the source, or {@code null}.
+     */
+    ByteBuffer getExif() {
+        for (Segment segment : segments) {
+            if (segment.kind == KIND_EXIF) {
+                int tiff = segment.payload + EXIF_HEADER.length;
+                return slice(tiff, segment.start + segment.length - tiff);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Write the JPEG to {@code channel} with new metadata segments, a {@code null} one keeps the
+     * segments of the source.
+     *
+     * @param exifTiff  The TIFF data of the EXIF segment.
+     * @param xmpPacket The XMP packet, it replaces the extended XMP segments too.
+     */
+    void writeTo(WritableByteChannel channel, byte[] exifTiff, byte[] xmpPacket) throws IOException {
+        byte[] exifSegment = exifTiff != null ? segment(EXIF_HEADER, exifTiff) : null;
+        byte[] xmpSegment = xmpPacket != null ? segment(XMP_HEADER, xmpPacket) : null;
+
+        write(channel, slice(0, 2));
+        int first = 0;
+        if (!segments.isEmpty() && segments.get(0).kind == KIND_JFIF) {
+            write(channel, slice(segments.get(0)));
+            first = 1;
+        }
+        if (exifSegment != null) {
+            write(channel, ByteBuffer.wrap(exifSegment));
+        }
+        if (xmpSegment != null) {
+            write(channel, ByteBuffer.wrap(xmpSegment));
+        }
+        for (int i = first; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            if ((segment.kind == KIND_EXIF && exifSegment != null)
+                    || (segment.kind == KIND_XMP && xmpSegment != null)) {
+                continue;
+            }
+            write(channel, slice(segment));
+        }
+        write(channel, slice(scanStart, jpeg.limit() - scanStart));
+    }
+
+    /**
+     * @return An APP1 segment, marker and length included.
+     * @throws IOException If the payload does not fit in a segment.
+     */
+    static byte[] segment(byte[] header, byte[] data) throws IOException {
+        int payload = header.length + data.length;
+        if (payload > MAX_SEGMENT_PAYLOAD) {
+            throw new IOException("Metadata too large for a JPEG segment: " + payload + " bytes");
+        }
+        byte[] segment = new byte[4 + payload];
+        segment[0] = (byte) 0xff;
+        segment[1] = (byte) MARKER_APP1;
+        segment[2] = (byte) ((payload + 2) >> 8);
+        segment[3] = (byte) (payload + 2);
+        System.arraycopy(header, 0, segment, 4, header.length);
+        System.arraycopy(data, 0, segment, 4 + header.length, data.length);
+        return segment;
+    }
+
+    private ByteBuffer slice(Segment segment) {
+        return slice(segment.start, segment.length);
+    }
+
+    private ByteBuffer slice(int start, int length) {
+        ByteBuffer slice = jpeg.duplicate();
+        slice.limit(start + length);
+        slice.position(start);
+        return slice;
+    }
+
+    private static void write(WritableByteChannel channel, ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+}
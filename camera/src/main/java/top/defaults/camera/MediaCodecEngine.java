@@ -0,0 +1,384 @@
+package top.defaults.camera;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.view.Surface;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+
+import top.defaults.logger.Logger;
+
+/**
+ * Records video with {@link MediaCodec} and {@link MediaMuxer}. The encoder runs for as long as
+ * the engine is prepared, so its input surface stays in the preview session across recordings
+ * and a recording starts by opening a file only. Samples encoded before a recording are kept in a
+ * {@link PreRollBuffer} if a pre-roll duration is set, and start the next recording.
+ *
+ * From API level 23 on the input surface is a persistent one, which outlives a failed encoder: a
+ * new encoder is started on it and the session is left as it is.
+ *
+ * The codec callbacks and the muxer run on a thread of their own, the listener is called on the
+ * given handler.
+ */
+class MediaCodecEngine implements VideoEncoderEngine {
+
+    private static final int I_FRAME_INTERVAL_SECONDS = 1;
+
+    private final Size videoSize;
+    private final int bitRate;
+    private final int frameRate;
+    private final int preRollSeconds;
+    private final Handler callbackHandler;
+    private final HandlerThread encoderThread;
+    private final Handler encoderHandler;
+    private volatile Listener listener;
+
+    // the state below is only touched on the encoder thread, except while prepare() waits for it
+    private MediaCodec codec;
+    private Surface inputSurface;
+    private boolean isPersistentSurface;
+    private PreRollBuffer preRoll;
+    private MediaFormat outputFormat;
+    private MediaMuxer muxer;
+    private String filePath;
+    private int track = -1;
+    private boolean isPaused;
+    private boolean isWaitingForKeyFrame;
+    private boolean isResuming;
+    private long pausedUs;
+    private long lastTimeUs;
+    private final MediaCodec.BufferInfo sampleInfo = new MediaCodec.BufferInfo();
+
+    private final MediaCodec.Callback codecCallback = new MediaCodec.Callback() {
+        @Override
+        public void onInputBufferAvailable(@NonNull MediaCodec codec, int index) {
+            // the input is a surface
+        }
+
+        @Override
+        public void onOutputBufferAvailable(@NonNull MediaCodec codec, int index, @NonNull MediaCodec.BufferInfo info) {
+            if (codec != MediaCodecEngine.this.codec) {
+                return;
+            }
+            ByteBuffer buffer = codec.getOutputBuffer(index);
+            if (buffer != null && info.size > 0 && (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0) {
+                buffer.limit(info.offset + info.size).position(info.offset);
+                if (track >= 0) {
+                    writeLiveSample(buffer, info);
+                } else if (preRoll != null) {
+                    preRoll.add(buffer, info.presentationTimeUs, info.flags);
+                }
+            }
+            codec.releaseOutputBuffer(index, false);
+        }
+
+        @Override
+        public void onError(@NonNull MediaCodec codec, @NonNull MediaCodec.CodecException e) {
+            if (codec == MediaCodecEngine.this.codec) {
+                onCodecError(new Error(Error.ERROR_CAMERA, "Video encoder failed", e));
+            }
+        }
+
+        @Override
+        public void onOutputFormatChanged(@NonNull MediaCodec codec, @NonNull MediaFormat format) {
+            outputFormat = format;
+            if (muxer != null && track < 0) {
+                startMuxer();
+            }
+        }
+    };
+
+    /**
+     * @param preRollSeconds How long the samples encoded before a recording are kept, 0 for none.
+     */
+    MediaCodecEngine(Size videoSize, int bitRate, int frameRate, int preRollSeconds, Handler callbackHandler) {
+        this.videoSize = videoSize;
+        this.bitRate = bitRate;
+        this.frameRate = frameRate;
+        this.preRollSeconds = preRollSeconds;
+        this.callbackHandler = callbackHandler;
+        encoderThread = new HandlerThread("CameraEncoder", Process.THREAD_PRIORITY_URGENT_DISPLAY);
+        encoderThread.start();
+        encoderHandler = new Handler(encoderThread.getLooper());
+    }
+
+    @Override
+    public boolean hasPersistentSurface() {
+        return true;
+    }
+
+    /**
+     * Start the encoder, waiting for it to be ready.
+     */
+    @Override
+    public Surface prepare(String filePath, int orientationHint) throws IOException {
+        IOException[] failure = new IOException[1];
+        CountDownLatch latch = new CountDownLatch(1);
+        // the codec delivers its callbacks to the looper of the thread it is created on
+        encoderHandler.post(() -> {
+            try {
+                startCodec();
+            } catch (IOException e) {
+                failure[0] = e;
+            } catch (RuntimeException e) {
+                failure[0] = new IOException(e);
+            } finally {
+                latch.countDown();
+            }
+        });
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while preparing the video encoder");
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return inputSurface;
+    }
+
+    private void startCodec() throws IOException {
+        MediaFormat format = MediaFormat.createVideoFormat(MediaFormat.MIMETYPE_VIDEO_AVC,
+                videoSize.getWidth(), videoSize.getHeight());
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, bitRate);
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, frameRate);
+        // short GOPs keep the pre-roll close to its duration and resuming quick
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, I_FRAME_INTERVAL_SECONDS);
+
+        if (preRollSeconds > 0 && preRoll == null) {
+            // one extra GOP, since the oldest one is only evicted once the newer ones cover the duration
+            int seconds = preRollSeconds + I_FRAME_INTERVAL_SECONDS;
+            preRoll = new PreRollBuffer((int) Math.min(Integer.MAX_VALUE, (long) bitRate / 8 * seconds * 3 / 2),
+                    preRollSeconds * 1000000L, frameRate * seconds * 2);
+        }
+
+        codec = MediaCodec.createEncoderByType(MediaFormat.MIMETYPE_VIDEO_AVC);
+        try {
+            codec.setCallback(codecCallback);
+            codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                if (inputSurface == null) {
+                    inputSurface = MediaCodec.createPersistentInputSurface();
+                    isPersistentSurface = true;
+                }
+                codec.setInputSurface(inputSurface);
+            } else {
+                inputSurface = codec.createInputSurface();
+            }
+            codec.start();
+        } catch (RuntimeException e) {
+            releaseCodec();
+            throw e;
+        }
+    }
+
+    @Override
+    public void start(String filePath, int orientationHint) throws IOException {
+        MediaMuxer muxer = new MediaMuxer(filePath, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        muxer.setOrientationHint(orientationHint);
+        encoderHandler.post(() -> {
+            if (codec == null || this.muxer != null) {
+                muxer.release();
+                new File(filePath).delete();
+                notifyFinished(null, new Error(Error.ERROR_CAMERA, "Video encoder is not running"));
+                return;
+            }
+            this.muxer = muxer;
+            this.filePath = filePath;
+            isPaused = false;
+            pausedUs = 0;
+            if (outputFormat != null) {
+                startMuxer();
+            }
+        });
+    }
+
+    @Override
+    public boolean canPause() {
+        return true;
+    }
+
+    @Override
+    public void pause() {
+        encoderHandler.post(() -> isPaused = true);
+    }
+
+    @Override
+    public void resume() {
+        encoderHandler.post(() -> {
+            if (!isPaused) {
+                return;
+            }
+            isPaused = false;
+            if (track >= 0) {
+                // the paused time is cut out from the first key frame on
+                isResuming = true;
+                requestKeyFrame();
+            }
+        });
+    }
+
+    @Override
+    public void stop() {
+        encoderHandler.post(() -> stopMuxer(null));
+    }
+
+    @Override
+    public void release() {
+        encoderHandler.post(() -> {
+            stopMuxer(null);
+            releaseCodec();
+            if (inputSurface != null) {
+                inputSurface.release();
+                inputSurface = null;
+            }
+            encoderThread.quitSafely();
+        });
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    private void startMuxer() {
+        track = muxer.addTrack(outputFormat);
+        muxer.start();
+        lastTimeUs = -1;
+        if (preRoll == null || preRoll.getSampleCount() == 0) {
+            // nothing buffered to start with, the first live sample should be a key frame
+            isWaitingForKeyFrame = true;
+            requestKeyFrame();
+            return;
+        }
+        isWaitingForKeyFrame = false;
+        try {
+            preRoll.drainTo((sample, presentationTimeUs, flags) -> {
+                sampleInfo.set(sample.position(), sample.remaining(), presentationTimeUs, flags);
+                muxer.writeSampleData(track, sample, sampleInfo);
+                lastTimeUs = presentationTimeUs;
+            });
+        } catch (IOException e) {
+            // what is left of the pre-roll is lost, the live samples follow
+            Logger.w("Unable to write the pre-roll: " + e);
+        }
+    }
+
+    private void writeLiveSample(ByteBuffer buffer, MediaCodec.BufferInfo info) {
+        if (isPaused) {
+            return;
+        }
+        boolean isKeyFrame = (info.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0;
+        if ((isWaitingForKeyFrame || isResuming) && !isKeyFrame) {
+            return;
+        }
+        isWaitingForKeyFrame = false;
+        long timeUs = info.presentationTimeUs - pausedUs;
+        if (isResuming) {
+            isResuming = false;
+            long nextTimeUs = lastTimeUs + 1000000L / frameRate;
+            pausedUs += timeUs - nextTimeUs;
+            timeUs = nextTimeUs;
+        }
+        sampleInfo.set(info.offset, info.size, timeUs, info.flags);
+        muxer.writeSampleData(track, buffer, sampleInfo);
+        lastTimeUs = timeUs;
+    }
+
+    private void requestKeyFrame() {
+        Bundle parameters = new Bundle();
+        parameters.putInt(MediaCodec.PARAMETER_KEY_REQUEST_SYNC_FRAME, 0);
+        codec.setParameters(parameters);
+    }
+
+    private void stopMuxer(Error cause) {
+        if (muxer == null) {
+            return;
+        }
+        boolean isStarted = track >= 0 && lastTimeUs >= 0;
+        String filePath = this.filePath;
+        try {
+            if (track >= 0) {
+                muxer.stop();
+            }
+        } catch (IllegalStateException e) {
+            isStarted = false;
+        } finally {
+            muxer.release();
+            muxer = null;
+            track = -1;
+            this.filePath = null;
+            isPaused = false;
+            isResuming = false;
+        }
+        if (isStarted) {
+            notifyFinished(filePath, cause);
+        } else {
+            new File(filePath).delete();
+            notifyFinished(null, cause != null ? cause : new Error(Error.ERROR_CAMERA, "Nothing was recorded"));
+        }
+    }
+
+    private void onCodecError(Error error) {
+        stopMuxer(error);
+        releaseCodec();
+        if (isPersistentSurface) {
+            try {
+                // the surface is still in the session, a new encoder takes it over
+                startCodec();
+                return;
+            } catch (IOException | RuntimeException e) {
+                Logger.w("Unable to restart the encoder: " + e);
+            }
+        }
+        if (inputSurface != null) {
+            inputSurface.release();
+            inputSurface = null;
+        }
+        Listener listener = this.listener;
+        if (listener != null) {
+            callbackHandler.post(() -> listener.onEngineError(error));
+        }
+    }
+
+    private void notifyFinished(String filePath, Error error) {
+        Listener listener = this.listener;
+        if (listener != null) {
+            callbackHandler.post(() -> listener.onRecordingFinished(filePath, error));
+        }
+    }
+
+    private void releaseCodec() {
+        if (codec != null) {
+            try {
+                codec.stop();
+            } catch (IllegalStateException e) {
+                // released anyway
+                Logger.w("Unable to stop the encoder: " + e);
+            }
+            codec.release();
+            codec = null;
+        }
+        if (!isPersistentSurface && inputSurface != null) {
+            inputSurface.release();
+            inputSurface = null;
+        }
+        outputFormat = null;
+        if (preRoll != null) {
+            preRoll.clear();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package top.defaults.camera;
+
+import android.media.MediaRecorder;
+import android.os.Build;
+import android.view.Surface;
+
+import java.io.IOException;
+
+/**
+ * Records video and audio with {@link MediaRecorder}, whose surface only exists once it is
+ * prepared for a given file, so every recording needs a capture session of its own.
+ */
+class MediaRecorderEngine implements VideoEncoderEngine {
+
+    private final Size videoSize;
+    private final int bitRate;
+    private final int frameRate;
+    private final Photographer.MediaRecorderConfigurator configurator;
+    private MediaRecorder mediaRecorder = new MediaRecorder();
+    private String filePath;
+    private boolean isStarted;
+    private Listener listener;
+
+    MediaRecorderEngine(Size videoSize, int bitRate, int frameRate,
+                        Photographer.MediaRecorderConfigurator configurator) {
+        this.videoSize = videoSize;
+        this.bitRate = bitRate;
+        this.frameRate = frameRate;
+        this.configurator = configurator;
+    }
+
+    @Override
+    public boolean hasPersistentSurface() {
+        return false;
+    }
+
+    @Override
+    public Surface prepare(String filePath, int orientationHint) throws IOException {
+        if (configurator == null || configurator.useDefaultConfigs()) {
+            mediaRecorder.setAudioSource(MediaRecorder.AudioSource.MIC);
+            mediaRecorder.setVideoSource(MediaRecorder.VideoSource.SURFACE);
+            mediaRecorder.setOutputFormat(MediaRecorder.OutputFormat.MPEG_4);
+            mediaRecorder.setOutputFile(filePath);
+            mediaRecorder.setVideoEncodingBitRate(bitRate);
+            mediaRecorder.setVideoFrameRate(frameRate);
+            mediaRecorder.setVideoSize(videoSize.getWidth(), videoSize.getHeight());
+            mediaRecorder.setVideoEncoder(MediaRecorder.VideoEncoder.H264);
+            mediaRecorder.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
+        }
+
+        if (configurator != null) {
+            configurator.configure(mediaRecorder);
+        }
+
+        mediaRecorder.setOrientationHint(orientationHint);
+        try {
+            mediaRecorder.prepare();
+        } catch (IOException | RuntimeException e) {
+            mediaRecorder.reset();
+            throw e;
+        }
+        this.filePath = filePath;
+        return mediaRecorder.getSurface();
+    }
+
+    @Override
+    public void start(String filePath, int orientationHint) {
+        // the file and orientation are set by prepare()
+        try {
+            mediaRecorder.start();
+        } catch (RuntimeException e) {
+            mediaRecorder.reset();
+            throw e;
+        }
+        isStarted = true;
+    }
+
+    @Override
+    public boolean canPause() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.N;
+    }
+
+    @Override
+    public void pause() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            mediaRecorder.pause();
+        }
+    }
+
+    @Override
+    public void resume() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            mediaRecorder.resume();
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted) {
+            return;
+        }
+        isStarted = false;
+        Error error = null;
+        try {
+            mediaRecorder.stop();
+        } catch (RuntimeException e) {
+            // stopped right after starting, no valid data was received
+            error = new Error(Error.ERROR_CAMERA, "Nothing was recorded", e);
+        } finally {
+            mediaRecorder.reset();
+        }
+        String filePath = this.filePath;
+        this.filePath = null;
+        if (listener != null) {
+            listener.onRecordingFinished(error == null ? filePath : null, error);
+        }
+    }
+
+    @Override
+    public void release() {
+        if (mediaRecorder == null) {
+            return;
+        }
+        stop();
+        mediaRecorder.release();
+        mediaRecorder = null;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+}
@@ -0,0 +1,41 @@
+package top.defaults.camera;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+
+/**
+ * Writes every picture to a stream opened by a {@link StreamProvider}, the stream is closed after
+ * the picture is written.
+ */
+public class OutputStreamCaptureSink implements CaptureSink {
+
+    private final StreamProvider streamProvider;
+
+    public OutputStreamCaptureSink(StreamProvider streamProvider) {
+        this.streamProvider = streamProvider;
+    }
+
+    @Override
+    public void onCapture(CaptureBuffer buffer) throws IOException {
+        OutputStream output = streamProvider.open(buffer);
+        if (output == null) {
+            return;
+        }
+        try {
+            // the channel copies the data through a small chunk instead of the whole picture
+            buffer.writeTo(Channels.newChannel(output));
+        } finally {
+            output.close();
+        }
+    }
+
+    public interface StreamProvider {
+
+        /**
+         * @param buffer The picture to be written.
+         * @return The stream to write the picture to, or {@code null} to skip it.
+         */
+        OutputStream open(CaptureBuffer buffer) throws IOException;
+    }
+}
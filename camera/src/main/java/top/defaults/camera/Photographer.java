@@ -2,17 +2,40 @@ package top.defaults.camera;
 
 import android.media.MediaRecorder;
 import android.support.annotation.Nullable;
+import android.view.animation.Interpolator;
 
+import java.util.List;
 import java.util.Set;
-
+import java.util.concurrent.Executor;
+
+/**
+ * All the methods can be called from any thread and return at once. Setters only check their
+ * arguments on the calling thread, the state they change and the camera work they ask for are
+ * queued and done on the camera thread, in the order of the calls, so a setter is reflected by its
+ * getter once applied there. Changes to the view, like the freeze frame shown by
+ * {@link #setFacing(int)}, are posted to the main thread. Repeated calls of
+ * {@link #setZoom(float)}, {@link #setFlash(int)}, {@link #setAutoFocus(boolean)} and
+ * {@link #setPreviewUpdateInterval(int)} still waiting are merged, only the latest is applied.
+ */
 public interface Photographer {
 
     Set<Size> getSupportedImageSizes();
 
     Set<Size> getSupportedVideoSizes();
 
+    /**
+     * Same as {@link #startPreviewAsync()}, for callers which only listen to the events.
+     */
     void startPreview();
 
+    /**
+     * Start the preview on the camera thread and return at once. The camera is opened and
+     * configured off the main thread, which is only used to deliver {@link OnEventListener} events.
+     *
+     * @return A future which completes when the first preview frame is drawn.
+     */
+    PreviewFuture startPreviewAsync();
+
     void restartPreview();
 
     void stopPreview();
@@ -37,6 +60,10 @@ public interface Photographer {
 
     boolean getAutoFocus();
 
+    /**
+     * Switch to the camera of the given facing. While previewing, the last frame is kept on screen
+     * until the other camera draws its first one.
+     */
     void setFacing(int facing);
 
     int getFacing();
@@ -49,21 +76,193 @@ public interface Photographer {
 
     float getZoom();
 
+    /**
+     * Zoom to {@code zoom} over {@code durationMs}, one step per captured frame. Interrupted by a
+     * pinch or {@link #setZoom(float)}, an animation already running is replaced.
+     *
+     * @param interpolator Linear if {@code null}.
+     */
+    void animateZoomTo(float zoom, long durationMs, @Nullable Interpolator interpolator);
+
+    /**
+     * Changes of zoom, flash and focus are merged and sent to the camera at most once per
+     * interval, 0 (the default) for once per preview frame.
+     */
+    void setPreviewUpdateInterval(int millis);
+
+    /**
+     * Switch between {@link Values#MODE_IMAGE} and {@link Values#MODE_VIDEO}. Like changing the
+     * sizes or aspect ratio, only the capture session is rebuilt, the camera is kept open.
+     */
     void setMode(int mode);
 
     int getMode();
 
-    void takePicture();
+    /**
+     * Decide how hard we try to get the record of captured pictures onto the storage device
+     * before reporting them, defaults to {@link Values#DURABILITY_NONE}. Whatever the policy, a
+     * picture only gets its path once completely written and synced, and the pictures a crash
+     * interrupted are finished or removed by the next {@link #startPreview()}, which also reports
+     * the ones saved but never reported. Only {@link Values#DURABILITY_SYNC_EACH} keeps that
+     * record across a power loss for every reported picture.
+     *
+     * @param durability One of {@link Values#DURABILITY_NONE} (leave it to the OS),
+     *                   {@link Values#DURABILITY_SYNC_EACH} (fsync the journal for every picture) and
+     *                   {@link Values#DURABILITY_SYNC_BATCHED} (fsync it in batches).
+     */
+    void setDurability(int durability);
+
+    int getDurability();
+
+    /**
+     * Set how many captured pictures may wait to be written at the same time, defaults to
+     * {@link Values#MAX_BURST_SIZE}.
+     *
+     * @param depth From 1 to {@link Values#MAX_BURST_SIZE}.
+     */
+    void setWriteQueueDepth(int depth);
+
+    /**
+     * Decide what happens to new pictures when the write queue is full, defaults to
+     * {@link Values#BACKPRESSURE_THROTTLE}.
+     *
+     * @param backpressure {@link Values#BACKPRESSURE_THROTTLE} keeps them in the camera pipeline,
+     *                     which slows down capturing until a write finishes;
+     *                     {@link Values#BACKPRESSURE_ERROR} drops them and reports
+     *                     {@link Error#ERROR_STORAGE}.
+     */
+    void setWriteBackpressure(int backpressure);
+
+    WriteStats getWriteStats();
+
+    /**
+     * @return Frame pacing of the preview since its capture session started.
+     */
+    PreviewStats getPreviewStats();
+
+    /**
+     * Add a sink which receives every captured picture. All the sinks share the same captured
+     * buffer, see {@link CaptureSink#onCapture(CaptureBuffer)}.
+     */
+    void addCaptureSink(CaptureSink sink);
+
+    void removeCaptureSink(CaptureSink sink);
+
+    /**
+     * @return The current sinks, initially a {@link FileCaptureSink} which can be removed if
+     * pictures should not be saved as files.
+     */
+    List<CaptureSink> getCaptureSinks();
+
+    /**
+     * Add an analyzer of the live preview frames, which come from a low resolution
+     * {@link android.graphics.ImageFormat#YUV_420_888} output added to the capture session while
+     * there are analyzers.
+     *
+     * @param executor Where {@link ImageAnalyzer#analyze(android.media.Image)} is called.
+     * @param strategy What to do with new frames while the analyzer is busy:
+     *                 {@link Values#ANALYSIS_KEEP_LATEST} skips them so the analyzer always gets
+     *                 the latest frame; {@link Values#ANALYSIS_BLOCK} keeps them until the analyzer
+     *                 is done, which slows down the camera, preview included.
+     */
+    void addImageAnalyzer(ImageAnalyzer analyzer, Executor executor, int strategy);
+
+    void removeImageAnalyzer(ImageAnalyzer analyzer);
+
+    /**
+     * Set the preferred size of the analyzed frames, in landscape orientation, defaults to 640x480.
+     * The largest supported size within it and of the preview's aspect ratio is used.
+     */
+    void setAnalysisSize(Size size);
+
+    /**
+     * @return The size of the analyzed frames, or {@code null} if there is no analyzer.
+     */
+    Size getAnalysisSize();
+
+    /**
+     * @param fps Maximum number of frames per second given to the analyzers, 0 (the default) for
+     *            all the frames.
+     */
+    void setAnalysisRate(int fps);
+
+    /**
+     * Keep the last few full resolution frames of the preview, so {@link #takePicture()} saves the
+     * frame on screen when it is called instead of locking focus and exposure first. Only works on
+     * cameras of {@code FULL} hardware level or better, others keep taking pictures the usual way.
+     * While the flash may fire, {@link Values#FLASH_ON}, {@link Values#FLASH_AUTO} or
+     * {@link Values#FLASH_RED_EYE}, pictures are taken the usual way too. Otherwise
+     * {@link #takeBurst(int)} and {@link #startContinuousShooting()} are not available meanwhile.
+     */
+    void setZeroShutterLag(boolean enabled);
+
+    boolean getZeroShutterLag();
+
+    /**
+     * Take a picture, which may be called again before the former pictures are saved. Pictures
+     * taken while focus and exposure are being locked for others are captured with them.
+     *
+     * @return A future completing once the picture is handed to all the capture sinks.
+     */
+    ShotFuture takePicture();
+
+    /**
+     * Take a picture like {@link #takePicture()}, with {@code metadata} stamped into its EXIF and
+     * XMP while it is written by {@link FileCaptureSink} and {@link OutputStreamCaptureSink}, see
+     * {@link CaptureMetadata}.
+     *
+     * @param metadata Copied, so it may be changed once this returns, {@code null} for none.
+     */
+    ShotFuture takePicture(CaptureMetadata metadata);
+
+    /**
+     * Lock focus and exposure once, then capture {@code count} pictures back to back.
+     *
+     * @param count Number of pictures to take, from 1 to {@link Values#MAX_BURST_SIZE}.
+     * @return A future per picture, in capture order, none if {@code count} is out of range.
+     */
+    List<ShotFuture> takeBurst(int count);
+
+    /**
+     * Lock focus and exposure once, then keep capturing pictures until
+     * {@link #stopContinuousShooting()} is called.
+     */
+    void startContinuousShooting();
+
+    void stopContinuousShooting();
+
+    /**
+     * Choose how videos are encoded, {@link Values#VIDEO_ENCODER_MEDIA_RECORDER} (the default) or
+     * {@link Values#VIDEO_ENCODER_MEDIA_CODEC}. The MediaCodec encoder keeps running in video mode,
+     * so recordings start without the capture session being rebuilt, but they have no audio and
+     * ignore the {@link MediaRecorderConfigurator}.
+     */
+    void setVideoEncoder(int encoder);
+
+    int getVideoEncoder();
+
+    /**
+     * Keep encoding the preview in video mode and hold its last seconds in memory, so a recording
+     * starts with what happened before {@link #startRecording} was called. Uses the
+     * {@link Values#VIDEO_ENCODER_MEDIA_CODEC} encoder whichever is set.
+     *
+     * @param seconds From 0 (the default, no pre-roll) to {@link Values#MAX_PRE_ROLL_SECONDS}.
+     */
+    void setPreRollDuration(int seconds);
+
+    int getPreRollDuration();
 
     void startRecording(@Nullable MediaRecorderConfigurator configurator);
 
     /**
-     * Only works when API level >= 24 (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N).
+     * Only works when API level >= 24 (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N), unless
+     * the MediaCodec encoder is used.
      */
     void pauseRecording();
 
     /**
-     * Only works when API level >= 24 (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N).
+     * Only works when API level >= 24 (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N), unless
+     * the MediaCodec encoder is used.
      */
     void resumeRecording();
 
@@ -101,13 +300,38 @@ public interface Photographer {
          * If you need to configure the MediaRecorder by yourself, please be carefully otherwise
          * {@link IllegalStateException} may be thrown. See javadoc for {@link MediaRecorder}
          *
+         * This is called on the camera thread.
+         *
          * @param recorder The recorder to be configured.
          */
         void configure(MediaRecorder recorder);
     }
 
+    /**
+     * Set the listener called on the main thread, replacing the previous one set here. Listeners
+     * added with {@link #addOnEventListener} are kept.
+     */
     void setOnEventListener(OnEventListener listener);
 
+    /**
+     * Add one more listener of the events, called on {@code executor}, which may be
+     * {@link #getMainExecutor()}, {@link #getCameraExecutor()} or any other. Zoom changes are
+     * coalesced per listener, one which is busy only gets the latest zoom.
+     */
+    void addOnEventListener(OnEventListener listener, Executor executor);
+
+    void removeOnEventListener(OnEventListener listener);
+
+    /**
+     * @return An executor running on the main thread.
+     */
+    Executor getMainExecutor();
+
+    /**
+     * @return An executor running on the camera thread, listeners using it must not block.
+     */
+    Executor getCameraExecutor();
+
     interface OnEventListener {
 
         void onDeviceConfigured();
@@ -125,5 +349,10 @@ public interface Photographer {
         void onShotFinished(String filePath);
 
         void onError(Error error);
+
+        /**
+         * Called once per {@link #startPreview()}, after the first preview frame is drawn.
+         */
+        void onStartupMetrics(StartupTrace trace);
     }
 }
@@ -0,0 +1,98 @@
+package top.defaults.camera;
+
+import android.graphics.ImageFormat;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.view.Surface;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * The JPEG {@link ImageReader} of still pictures. A reader which is replaced, by one of another
+ * size or when the preview stops, is only closed once every image taken from it is closed, as the
+ * pictures of the former session may still be written or held by a sink.
+ *
+ * Images are taken with {@link #acquireNextImage()} and given back with {@link #close(Image)}.
+ * Thread-safe, images are closed from the saver threads.
+ */
+class PictureReader {
+
+    private final ImageReader imageReader;
+    private final Set<Image> openImages = Collections.newSetFromMap(new IdentityHashMap<Image, Boolean>());
+    private boolean isRetired;
+    private boolean isClosed;
+
+    PictureReader(int width, int height, int maxImages, ImageReader.OnImageAvailableListener listener,
+                  Handler handler) {
+        imageReader = ImageReader.newInstance(width, height, ImageFormat.JPEG, maxImages);
+        imageReader.setOnImageAvailableListener(listener, handler);
+    }
+
+    int getWidth() {
+        return imageReader.getWidth();
+    }
+
+    int getHeight() {
+        return imageReader.getHeight();
+    }
+
+    Surface getSurface() {
+        return imageReader.getSurface();
+    }
+
+    /**
+     * @return The next image, or {@code null} if there is none or the reader is retired.
+     * @throws IllegalStateException If as many images as the reader holds are open.
+     */
+    synchronized Image acquireNextImage() {
+        if (isRetired) {
+            return null;
+        }
+        Image image = imageReader.acquireNextImage();
+        if (image != null) {
+            openImages.add(image);
+        }
+        return image;
+    }
+
+    /**
+     * Close an image, closing the reader too if it is retired and this was its last open image.
+     *
+     * @return {@code false} if the image was not taken from this reader, it is left open then.
+     */
+    synchronized boolean close(Image image) {
+        if (!openImages.remove(image)) {
+            return false;
+        }
+        image.close();
+        closeIfIdle();
+        return true;
+    }
+
+    /**
+     * No more images are taken from the reader, it is closed as soon as the open ones are.
+     */
+    synchronized void retire() {
+        if (isRetired) {
+            return;
+        }
+        isRetired = true;
+        imageReader.setOnImageAvailableListener(null, null);
+        closeIfIdle();
+    }
+
+    synchronized boolean isClosed() {
+        return isClosed;
+    }
+
+    private void closeIfIdle() {
+        if (isRetired && !isClosed && openImages.isEmpty()) {
+            isClosed = true;
+            // the images still queued in the reader go with it
+            imageReader.close();
+        }
+    }
+}
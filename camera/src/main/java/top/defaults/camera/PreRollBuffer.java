@@ -0,0 +1,190 @@
+package top.defaults.camera;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A bounded circular buffer of encoded video samples, copied into one byte array allocated up
+ * front. The buffer always starts with a key frame: samples are only evicted a whole group of
+ * pictures (GOP) at a time from the oldest end, either to make room for a new sample or once the
+ * newer GOPs alone cover the duration to keep.
+ *
+ * Not thread safe.
+ */
+class PreRollBuffer {
+
+    // same as MediaCodec.BUFFER_FLAG_KEY_FRAME
+    static final int FLAG_KEY_FRAME = 1;
+
+    private final byte[] data;
+    private final long durationUs;
+    private final int[] offsets;
+    private final int[] sizes;
+    private final long[] timesUs;
+    private final int[] flags;
+    private int first;
+    private int count;
+    private int size;
+    private boolean isWaitingForKeyFrame = true;
+
+    /**
+     * @param capacity   Maximum bytes of samples held.
+     * @param durationUs How long the kept samples should cover, older GOPs are evicted beyond it.
+     * @param maxSamples Maximum number of samples held.
+     */
+    PreRollBuffer(int capacity, long durationUs, int maxSamples) {
+        if (capacity <= 0 || durationUs <= 0 || maxSamples <= 0) {
+            throw new IllegalArgumentException("Invalid pre-roll buffer: " + capacity + " bytes, "
+                    + durationUs + "us, " + maxSamples + " samples");
+        }
+        data = new byte[capacity];
+        this.durationUs = durationUs;
+        offsets = new int[maxSamples];
+        sizes = new int[maxSamples];
+        timesUs = new long[maxSamples];
+        flags = new int[maxSamples];
+    }
+
+    /**
+     * Copy the remaining bytes of {@code sample}, its position is left unchanged.
+     *
+     * @return {@code false} if the sample is dropped, which happens until the next key frame
+     * whenever the GOP being written cannot be kept whole.
+     */
+    boolean add(ByteBuffer sample, long presentationTimeUs, int sampleFlags) {
+        int length = sample.remaining();
+        boolean isKeyFrame = (sampleFlags & FLAG_KEY_FRAME) != 0;
+        if (isKeyFrame) {
+            isWaitingForKeyFrame = false;
+        }
+        if (isWaitingForKeyFrame || length == 0) {
+            return false;
+        }
+        if (length > data.length) {
+            clear();
+            return false;
+        }
+
+        int offset;
+        while (count == offsets.length || (offset = allocate(length)) < 0) {
+            if (!evictGop()) {
+                // the current GOP fills the whole buffer, it cannot be kept
+                clear();
+                if (!isKeyFrame) {
+                    return false;
+                }
+                isWaitingForKeyFrame = false;
+            }
+        }
+
+        int index = (first + count) % offsets.length;
+        sample.duplicate().get(data, offset, length);
+        offsets[index] = offset;
+        sizes[index] = length;
+        timesUs[index] = presentationTimeUs;
+        flags[index] = sampleFlags;
+        count++;
+        size += length;
+
+        // keep evicting while the GOPs after the oldest one still cover the duration
+        int second;
+        while ((second = nextKeyFrame()) >= 0 && presentationTimeUs - timesUs[second] >= durationUs) {
+            evictGop();
+        }
+        return true;
+    }
+
+    int getSampleCount() {
+        return count;
+    }
+
+    /**
+     * @return Bytes of samples held.
+     */
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * @return Time between the oldest and the newest samples held.
+     */
+    long getDurationUs() {
+        if (count == 0) {
+            return 0;
+        }
+        return timesUs[(first + count - 1) % offsets.length] - timesUs[first];
+    }
+
+    /**
+     * Write all the samples held, oldest first, then clear the buffer. The buffer passed to the
+     * writer is only valid during the call.
+     */
+    void drainTo(SampleWriter writer) throws IOException {
+        ByteBuffer view = ByteBuffer.wrap(data);
+        try {
+            for (int i = 0; i < count; i++) {
+                int index = (first + i) % offsets.length;
+                view.limit(offsets[index] + sizes[index]).position(offsets[index]);
+                writer.writeSample(view, timesUs[index], flags[index]);
+            }
+        } finally {
+            clear();
+        }
+    }
+
+    /**
+     * Drop all the samples, the next one kept will be a key frame.
+     */
+    void clear() {
+        first = 0;
+        count = 0;
+        size = 0;
+        isWaitingForKeyFrame = true;
+    }
+
+    // returns the offset of a free contiguous range of length bytes, or -1
+    private int allocate(int length) {
+        if (count == 0) {
+            return 0;
+        }
+        int last = (first + count - 1) % offsets.length;
+        int head = offsets[first];
+        int tail = offsets[last] + sizes[last];
+        if (offsets[last] < head) {
+            // wrapped, the free range is between the newest and the oldest samples
+            return head - tail >= length ? tail : -1;
+        }
+        if (data.length - tail >= length) {
+            return tail;
+        }
+        return head >= length ? 0 : -1;
+    }
+
+    // returns the index of the first key frame after the oldest sample, or -1
+    private int nextKeyFrame() {
+        for (int i = 1; i < count; i++) {
+            int index = (first + i) % offsets.length;
+            if ((flags[index] & FLAG_KEY_FRAME) != 0) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private boolean evictGop() {
+        int next = nextKeyFrame();
+        if (next < 0) {
+            return false;
+        }
+        while (first != next) {
+            size -= sizes[first];
+            first = (first + 1) % offsets.length;
+            count--;
+        }
+        return true;
+    }
+
+    interface SampleWriter {
+        void writeSample(ByteBuffer sample, long presentationTimeUs, int flags) throws IOException;
+    }
+}
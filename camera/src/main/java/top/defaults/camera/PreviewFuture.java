@@ -0,0 +1,143 @@
+package top.defaults.camera;
+
+import android.os.Handler;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Completes when the first preview frame is drawn after {@link Photographer#startPreviewAsync()},
+ * fails with the {@link Error} which stopped the preview from starting, or is cancelled by
+ * {@link #cancel(boolean)} and {@link Photographer#stopPreview()}.
+ *
+ * Frames are drawn on the main thread, so never wait for this future there, add a listener instead.
+ */
+public final class PreviewFuture implements Future<Void> {
+
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_COMPLETED = 1;
+    private static final int STATE_FAILED = 2;
+    private static final int STATE_CANCELLED = 3;
+
+    private final Handler mainHandler;
+    private final Runnable onCancel;
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final List<Runnable> listeners = new ArrayList<>();
+    private int state = STATE_PENDING;
+    private Error error;
+    private volatile boolean isArmed;
+
+    PreviewFuture(Handler mainHandler, Runnable onCancel) {
+        this.mainHandler = mainHandler;
+        this.onCancel = onCancel;
+    }
+
+    /**
+     * Run {@code listener} on the main thread once this future is done, or right away if it is.
+     */
+    public void addListener(@NonNull Runnable listener) {
+        synchronized (this) {
+            if (state == STATE_PENDING) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        mainHandler.post(listener);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!finish(STATE_CANCELLED, null)) {
+            return false;
+        }
+        onCancel.run();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return state == STATE_CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return state != STATE_PENDING;
+    }
+
+    @Override
+    public Void get() throws InterruptedException, ExecutionException {
+        latch.await();
+        return result();
+    }
+
+    @Override
+    public Void get(long timeout, @NonNull TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        if (!latch.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return result();
+    }
+
+    private synchronized Void result() throws ExecutionException {
+        if (state == STATE_CANCELLED) {
+            throw new CancellationException();
+        }
+        if (state == STATE_FAILED) {
+            throw new ExecutionException(error);
+        }
+        return null;
+    }
+
+    /**
+     * Frames drawn before the capture session is configured belong to an earlier session.
+     */
+    void arm() {
+        isArmed = true;
+    }
+
+    boolean isArmed() {
+        return isArmed;
+    }
+
+    /**
+     * Cancel without running the cancel action, when the preview is already being stopped or
+     * started again.
+     */
+    void abandon() {
+        finish(STATE_CANCELLED, null);
+    }
+
+    void complete() {
+        finish(STATE_COMPLETED, null);
+    }
+
+    void fail(Error error) {
+        finish(STATE_FAILED, error);
+    }
+
+    private boolean finish(int newState, Error error) {
+        List<Runnable> toNotify;
+        synchronized (this) {
+            if (state != STATE_PENDING) {
+                return false;
+            }
+            state = newState;
+            this.error = error;
+            toNotify = new ArrayList<>(listeners);
+            listeners.clear();
+        }
+        latch.countDown();
+        for (Runnable listener : toNotify) {
+            mainHandler.post(listener);
+        }
+        return true;
+    }
+}
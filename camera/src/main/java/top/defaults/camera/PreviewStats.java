@@ -0,0 +1,88 @@
+package top.defaults.camera;
+
+import java.util.Locale;
+
+/**
+ * Immutable snapshot of the preview frame pacing since the current capture session started.
+ */
+public class PreviewStats {
+
+    private final long frameCount;
+    private final long droppedFrames;
+    private final int expectedFps;
+    private final float deliveredFps;
+    private final long p50IntervalNanos;
+    private final long p95IntervalNanos;
+    private final long p99IntervalNanos;
+    private final long maxIntervalNanos;
+    private final long[] intervalHistogram;
+
+    PreviewStats(long frameCount, long droppedFrames, int expectedFps, float deliveredFps,
+                 long p50IntervalNanos, long p95IntervalNanos, long p99IntervalNanos,
+                 long maxIntervalNanos, long[] intervalHistogram) {
+        this.frameCount = frameCount;
+        this.droppedFrames = droppedFrames;
+        this.expectedFps = expectedFps;
+        this.deliveredFps = deliveredFps;
+        this.p50IntervalNanos = p50IntervalNanos;
+        this.p95IntervalNanos = p95IntervalNanos;
+        this.p99IntervalNanos = p99IntervalNanos;
+        this.maxIntervalNanos = maxIntervalNanos;
+        this.intervalHistogram = intervalHistogram;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @return Estimated number of frames missing, judged by intervals longer than 1.5 times the
+     * one of {@link #getExpectedFps()}.
+     */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * @return Upper bound of the AE target FPS range of the preview.
+     */
+    public int getExpectedFps() {
+        return expectedFps;
+    }
+
+    public float getDeliveredFps() {
+        return deliveredFps;
+    }
+
+    public long getP50IntervalNanos() {
+        return p50IntervalNanos;
+    }
+
+    public long getP95IntervalNanos() {
+        return p95IntervalNanos;
+    }
+
+    public long getP99IntervalNanos() {
+        return p99IntervalNanos;
+    }
+
+    public long getMaxIntervalNanos() {
+        return maxIntervalNanos;
+    }
+
+    /**
+     * @return Frame interval counts, bucket {@code i} holds intervals in [i, i + 1) milliseconds,
+     * the last one also holds all the longer intervals.
+     */
+    public long[] getIntervalHistogram() {
+        return intervalHistogram.clone();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "frames %d, dropped %d, fps %.1f/%d, "
+                        + "interval p50 %.1fms p95 %.1fms p99 %.1fms max %.1fms",
+                frameCount, droppedFrames, deliveredFps, expectedFps, p50IntervalNanos / 1e6,
+                p95IntervalNanos / 1e6, p99IntervalNanos / 1e6, maxIntervalNanos / 1e6);
+    }
+}
@@ -0,0 +1,221 @@
+package top.defaults.camera;
+
+import android.view.Surface;
+
+import java.io.IOException;
+
+/**
+ * The states of video recording on top of a {@link VideoEncoderEngine}. Requests which don't fit
+ * the current state are reported to the listener as errors and leave the state alone.
+ *
+ * <pre>
+ * IDLE --prepare--> PREPARED --start--> RECORDING <--pause/resume--> PAUSED
+ * RECORDING/PAUSED --stop--> STOPPING --finished--> PREPARED (persistent surface) or IDLE
+ * any --engine error--> IDLE, any --release--> RELEASED
+ * </pre>
+ *
+ * Only used on the camera thread, where the engine reports to it too.
+ */
+class RecordingController {
+
+    static final int STATE_IDLE = 0;
+    static final int STATE_PREPARED = 1;
+    static final int STATE_RECORDING = 2;
+    static final int STATE_PAUSED = 3;
+    static final int STATE_STOPPING = 4;
+    static final int STATE_RELEASED = 5;
+
+    private final VideoEncoderEngine engine;
+    private final Listener listener;
+    private int state = STATE_IDLE;
+    private Surface surface;
+    private String filePath;
+
+    RecordingController(VideoEncoderEngine engine, Listener listener) {
+        this.engine = engine;
+        this.listener = listener;
+        engine.setListener(new VideoEncoderEngine.Listener() {
+            @Override
+            public void onRecordingFinished(String filePath, Error error) {
+                RecordingController.this.onRecordingFinished(filePath, error);
+            }
+
+            @Override
+            public void onEngineError(Error error) {
+                RecordingController.this.onEngineError(error);
+            }
+        });
+    }
+
+    int getState() {
+        return state;
+    }
+
+    boolean isRecording() {
+        return state == STATE_RECORDING || state == STATE_PAUSED || state == STATE_STOPPING;
+    }
+
+    boolean hasPersistentSurface() {
+        return engine.hasPersistentSurface();
+    }
+
+    /**
+     * @return The surface to keep in the preview session, prepared on the first call, or
+     * {@code null} if the engine prepares a surface per recording or cannot be prepared.
+     */
+    Surface getPersistentSurface() {
+        if (!engine.hasPersistentSurface() || state == STATE_RELEASED) {
+            return null;
+        }
+        if (state == STATE_IDLE && !prepare(null, 0)) {
+            return null;
+        }
+        return surface;
+    }
+
+    /**
+     * Prepare a recording of an engine without a persistent surface.
+     *
+     * @return The surface to build the recording session with, or {@code null} on failure.
+     */
+    Surface prepareRecording(String filePath, int orientationHint) {
+        if (engine.hasPersistentSurface()) {
+            return surface;
+        }
+        if (state != STATE_IDLE) {
+            reportState("prepare");
+            return null;
+        }
+        return prepare(filePath, orientationHint) ? surface : null;
+    }
+
+    private boolean prepare(String filePath, int orientationHint) {
+        try {
+            surface = engine.prepare(filePath, orientationHint);
+        } catch (IOException | RuntimeException e) {
+            listener.onError(new Error(Error.ERROR_CAMERA, "Cannot prepare the video encoder", e));
+            return false;
+        }
+        state = STATE_PREPARED;
+        return true;
+    }
+
+    boolean start(String filePath, int orientationHint) {
+        if (state != STATE_PREPARED) {
+            reportState("start");
+            return false;
+        }
+        try {
+            engine.start(filePath, orientationHint);
+        } catch (IOException | RuntimeException e) {
+            // the surface of a persistent engine is still fine, others need to be prepared again
+            state = engine.hasPersistentSurface() ? STATE_PREPARED : STATE_IDLE;
+            listener.onError(new Error(Error.ERROR_CAMERA, e));
+            return false;
+        }
+        this.filePath = filePath;
+        state = STATE_RECORDING;
+        listener.onRecordingStarted();
+        return true;
+    }
+
+    boolean pause() {
+        if (state != STATE_RECORDING) {
+            reportState("pause");
+            return false;
+        }
+        if (!engine.canPause()) {
+            listener.onError(new Error(Error.ERROR_UNSUPPORTED_OPERATION, "Cannot pause this recording"));
+            return false;
+        }
+        engine.pause();
+        state = STATE_PAUSED;
+        return true;
+    }
+
+    boolean resume() {
+        if (state != STATE_PAUSED) {
+            reportState("resume");
+            return false;
+        }
+        engine.resume();
+        state = STATE_RECORDING;
+        return true;
+    }
+
+    boolean stop() {
+        if (state != STATE_RECORDING && state != STATE_PAUSED) {
+            reportState("stop");
+            return false;
+        }
+        state = STATE_STOPPING;
+        // may report the recording right away
+        engine.stop();
+        return true;
+    }
+
+    void release() {
+        if (state == STATE_RELEASED) {
+            return;
+        }
+        state = STATE_RELEASED;
+        surface = null;
+        engine.release();
+    }
+
+    private void onRecordingFinished(String filePath, Error error) {
+        if (state != STATE_STOPPING && state != STATE_RECORDING && state != STATE_PAUSED) {
+            // a late report after a release
+            return;
+        }
+        String requestedPath = this.filePath;
+        this.filePath = null;
+        if (engine.hasPersistentSurface()) {
+            state = STATE_PREPARED;
+        } else {
+            state = STATE_IDLE;
+            surface = null;
+        }
+        if (error != null) {
+            listener.onError(error);
+        }
+        listener.onRecordingFinished(filePath != null ? filePath : requestedPath, filePath != null);
+    }
+
+    private void onEngineError(Error error) {
+        if (state == STATE_RELEASED) {
+            return;
+        }
+        boolean wasRecording = isRecording();
+        String requestedPath = filePath;
+        filePath = null;
+        state = STATE_IDLE;
+        surface = null;
+        listener.onError(error);
+        if (wasRecording) {
+            listener.onRecordingFinished(requestedPath, false);
+        }
+        listener.onSurfaceLost();
+    }
+
+    private void reportState(String operation) {
+        listener.onError(new Error(Error.ERROR_INVALID_PARAM, "Cannot " + operation + " recording in state " + state));
+    }
+
+    interface Listener {
+
+        void onRecordingStarted();
+
+        /**
+         * @param isRecorded {@code false} if the recording failed and {@code filePath} holds nothing.
+         */
+        void onRecordingFinished(String filePath, boolean isRecorded);
+
+        void onError(Error error);
+
+        /**
+         * The persistent surface is gone, the preview session should be rebuilt.
+         */
+        void onSurfaceLost();
+    }
+}
@@ -0,0 +1,112 @@
+package top.defaults.camera;
+
+import android.hardware.camera2.CameraAccessException;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merges the updates of the repeating preview request, so a storm of setter calls, like the
+ * events of a pinch, sends the request at most once per interval. An update comes in after the
+ * interval since the last submission at the latest, so the final state is always applied.
+ *
+ * If a submission fails, the rollbacks of all the updates merged into it are run, latest first.
+ *
+ * Only used on the camera thread.
+ */
+class RepeatingRequestCoalescer {
+
+    interface Submitter {
+        void submit() throws CameraAccessException;
+    }
+
+    interface ErrorListener {
+        void onSubmitFailed(CameraAccessException e);
+    }
+
+    private final Handler handler;
+    private final Submitter submitter;
+    private final ErrorListener errorListener;
+    private final List<Runnable> rollbacks = new ArrayList<>();
+    private final Runnable submitPending = this::submitPending;
+    private long intervalNanos;
+    private long lastSubmitNanos;
+    private boolean isDirty;
+    private boolean isScheduled;
+
+    RepeatingRequestCoalescer(Handler handler, Submitter submitter, ErrorListener errorListener) {
+        this.handler = handler;
+        this.submitter = submitter;
+        this.errorListener = errorListener;
+    }
+
+    void setInterval(long intervalNanos) {
+        this.intervalNanos = intervalNanos;
+    }
+
+    /**
+     * The request has changed, send it once the interval since the last submission has passed.
+     */
+    void request(@Nullable Runnable rollback) {
+        isDirty = true;
+        if (rollback != null) {
+            rollbacks.add(rollback);
+        }
+        if (isScheduled) {
+            return;
+        }
+        long waitNanos = lastSubmitNanos + intervalNanos - SystemClock.elapsedRealtimeNanos();
+        if (waitNanos <= 0) {
+            submitPending();
+        } else {
+            isScheduled = true;
+            handler.postDelayed(submitPending, (waitNanos + 999999) / 1000000);
+        }
+    }
+
+    /**
+     * Send the request right away, with the pending updates merged in.
+     */
+    void submitNow(@Nullable Runnable rollback) {
+        isDirty = true;
+        if (rollback != null) {
+            rollbacks.add(rollback);
+        }
+        submitPending();
+    }
+
+    /**
+     * Drop the pending updates, when the session they were meant for is gone.
+     */
+    void cancel() {
+        handler.removeCallbacks(submitPending);
+        isScheduled = false;
+        isDirty = false;
+        rollbacks.clear();
+    }
+
+    private void submitPending() {
+        if (isScheduled) {
+            handler.removeCallbacks(submitPending);
+            isScheduled = false;
+        }
+        if (!isDirty) {
+            return;
+        }
+        isDirty = false;
+        lastSubmitNanos = SystemClock.elapsedRealtimeNanos();
+        try {
+            submitter.submit();
+            rollbacks.clear();
+        } catch (CameraAccessException e) {
+            for (int i = rollbacks.size() - 1; i >= 0; i--) {
+                rollbacks.get(i).run();
+            }
+            rollbacks.clear();
+            errorListener.onSubmitFailed(e);
+        }
+    }
+}
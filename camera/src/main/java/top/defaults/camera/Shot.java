@@ -0,0 +1,88 @@
+package top.defaults.camera;
+
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+import android.media.Image;
+import android.os.SystemClock;
+
+/**
+ * One picture on its way from the shutter to the capture sinks, the tag of its capture request.
+ *
+ * Filled in on the camera thread, finished on the thread saving the picture.
+ */
+class Shot {
+
+    final int id;
+    final long pressTime;
+    // null for the pictures of continuous shooting, which nobody waits for one by one
+    final ShotFuture future;
+    // a copy of the one given by the caller, or null
+    final CaptureMetadata metadata;
+    String filePath;
+    volatile long sensorTimestamp;
+    volatile TotalCaptureResult captureResult;
+    // the captured image while it waits for room in the write queue
+    Image parkedImage;
+
+    Shot(int id, long pressTime, ShotFuture future, CaptureMetadata metadata) {
+        this.id = id;
+        this.pressTime = pressTime;
+        this.future = future;
+        this.metadata = metadata;
+    }
+
+    /**
+     * @return The metadata to stamp into the picture, its capture settings completed with the
+     * capture result if it has come, or {@code null}.
+     */
+    CaptureMetadata resolveMetadata() {
+        TotalCaptureResult result = captureResult;
+        if (metadata == null || result == null) {
+            return metadata;
+        }
+        CaptureMetadata resolved = new CaptureMetadata(metadata);
+        Long exposureTime = result.get(CaptureResult.SENSOR_EXPOSURE_TIME);
+        if (resolved.getExposureTime() <= 0 && exposureTime != null) {
+            resolved.setExposureTime(exposureTime);
+        }
+        Integer iso = result.get(CaptureResult.SENSOR_SENSITIVITY);
+        if (resolved.getIso() <= 0 && iso != null) {
+            resolved.setIso(iso);
+        }
+        Float focalLength = result.get(CaptureResult.LENS_FOCAL_LENGTH);
+        if (resolved.getFocalLength() <= 0 && focalLength != null) {
+            resolved.setFocalLength(focalLength);
+        }
+        Float aperture = result.get(CaptureResult.LENS_APERTURE);
+        if (resolved.getAperture() <= 0 && aperture != null) {
+            resolved.setAperture(aperture);
+        }
+        return resolved;
+    }
+
+    boolean isCancelled() {
+        return future != null && future.isCancelled();
+    }
+
+    /**
+     * @param savedFilePath The path of the saved file, or {@code null} if no file is saved.
+     * @param error         The first error happened while saving, or {@code null}.
+     */
+    void finish(String savedFilePath, Error error) {
+        if (future == null) {
+            return;
+        }
+        if (error != null) {
+            future.fail(error);
+        } else {
+            future.complete(new ShotResult(id, savedFilePath, pressTime, sensorTimestamp,
+                    SystemClock.elapsedRealtimeNanos(), captureResult));
+        }
+    }
+
+    void fail(Error error) {
+        if (future != null) {
+            future.fail(error);
+        }
+    }
+}
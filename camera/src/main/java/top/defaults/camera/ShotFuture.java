@@ -0,0 +1,128 @@
+package top.defaults.camera;
+
+import android.os.Handler;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Completes with the {@link ShotResult} of one picture once it is handed to all the capture
+ * sinks, or fails with the {@link Error} which lost it. Cancelling a picture not captured yet
+ * keeps it from being captured, a picture already captured is still saved.
+ *
+ * Pictures are saved off the main thread, still prefer a listener to waiting there.
+ */
+public final class ShotFuture implements Future<ShotResult> {
+
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_COMPLETED = 1;
+    private static final int STATE_FAILED = 2;
+    private static final int STATE_CANCELLED = 3;
+
+    private final int shotId;
+    private final Handler mainHandler;
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final List<Runnable> listeners = new ArrayList<>();
+    private int state = STATE_PENDING;
+    private ShotResult result;
+    private Error error;
+
+    ShotFuture(int shotId, Handler mainHandler) {
+        this.shotId = shotId;
+        this.mainHandler = mainHandler;
+    }
+
+    /**
+     * @return The id of the shot, the same as {@link ShotResult#getShotId()}.
+     */
+    public int getShotId() {
+        return shotId;
+    }
+
+    /**
+     * Run {@code listener} on the main thread once this future is done, or right away if it is.
+     */
+    public void addListener(@NonNull Runnable listener) {
+        synchronized (this) {
+            if (state == STATE_PENDING) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        mainHandler.post(listener);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return finish(STATE_CANCELLED, null, null);
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return state == STATE_CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return state != STATE_PENDING;
+    }
+
+    @Override
+    public ShotResult get() throws InterruptedException, ExecutionException {
+        latch.await();
+        return result();
+    }
+
+    @Override
+    public ShotResult get(long timeout, @NonNull TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        if (!latch.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return result();
+    }
+
+    private synchronized ShotResult result() throws ExecutionException {
+        if (state == STATE_CANCELLED) {
+            throw new CancellationException();
+        }
+        if (state == STATE_FAILED) {
+            throw new ExecutionException(error);
+        }
+        return result;
+    }
+
+    void complete(ShotResult result) {
+        finish(STATE_COMPLETED, result, null);
+    }
+
+    void fail(Error error) {
+        finish(STATE_FAILED, null, error);
+    }
+
+    private boolean finish(int newState, ShotResult result, Error error) {
+        List<Runnable> toNotify;
+        synchronized (this) {
+            if (state != STATE_PENDING) {
+                return false;
+            }
+            state = newState;
+            this.result = result;
+            this.error = error;
+            toNotify = new ArrayList<>(listeners);
+            listeners.clear();
+        }
+        latch.countDown();
+        for (Runnable listener : toNotify) {
+            mainHandler.post(listener);
+        }
+        return true;
+    }
+}
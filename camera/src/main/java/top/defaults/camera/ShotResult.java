@@ -0,0 +1,76 @@
+package top.defaults.camera;
+
+import android.hardware.camera2.TotalCaptureResult;
+import android.support.annotation.Nullable;
+
+/**
+ * What became of a picture taken by {@link Photographer#takePicture()} or
+ * {@link Photographer#takeBurst(int)}. Times are {@link android.os.SystemClock#elapsedRealtimeNanos()},
+ * except the sensor timestamp which is in the time base of the camera, see
+ * {@link android.hardware.camera2.CameraCharacteristics#SENSOR_INFO_TIMESTAMP_SOURCE}.
+ */
+public final class ShotResult {
+
+    private final int shotId;
+    private final String filePath;
+    private final long pressTime;
+    private final long sensorTimestamp;
+    private final long finishTime;
+    private final TotalCaptureResult captureResult;
+
+    ShotResult(int shotId, String filePath, long pressTime, long sensorTimestamp, long finishTime,
+               TotalCaptureResult captureResult) {
+        this.shotId = shotId;
+        this.filePath = filePath;
+        this.pressTime = pressTime;
+        this.sensorTimestamp = sensorTimestamp;
+        this.finishTime = finishTime;
+        this.captureResult = captureResult;
+    }
+
+    /**
+     * @return The id of the shot, unique within the photographer, increasing in the order the
+     * pictures are asked for.
+     */
+    public int getShotId() {
+        return shotId;
+    }
+
+    /**
+     * @return The path of the saved file, or {@code null} if no {@link FileCaptureSink} saved it.
+     */
+    @Nullable
+    public String getFilePath() {
+        return filePath;
+    }
+
+    /**
+     * @return When the picture was asked for.
+     */
+    public long getPressTime() {
+        return pressTime;
+    }
+
+    /**
+     * @return When the sensor started exposing the picture.
+     */
+    public long getSensorTimestamp() {
+        return sensorTimestamp;
+    }
+
+    /**
+     * @return When the picture was handed to all the capture sinks.
+     */
+    public long getFinishTime() {
+        return finishTime;
+    }
+
+    /**
+     * @return The metadata of the capture, or {@code null} for zero shutter lag pictures and
+     * pictures finished before their capture completed.
+     */
+    @Nullable
+    public TotalCaptureResult getCaptureResult() {
+        return captureResult;
+    }
+}
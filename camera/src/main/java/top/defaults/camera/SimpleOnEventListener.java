@@ -40,4 +40,9 @@ public class SimpleOnEventListener implements Photographer.OnEventListener {
     public void onError(Error error) {
 
     }
+
+    @Override
+    public void onStartupMetrics(StartupTrace trace) {
+
+    }
 }
@@ -0,0 +1,115 @@
+package top.defaults.camera;
+
+import android.os.SystemClock;
+
+import java.util.Locale;
+
+/**
+ * Where the time goes from {@link Photographer#startPreview()} to the first preview frame, each
+ * phase timed with {@link SystemClock#elapsedRealtimeNanos()}. Delivered by
+ * {@link Photographer.OnEventListener#onStartupMetrics(StartupTrace)} once the first frame and the
+ * first capture result have both arrived.
+ */
+public final class StartupTrace {
+
+    public static final int PHASE_PERMISSION_CHECK = 0;
+    public static final int PHASE_CAMERA_SELECTION = 1;
+    public static final int PHASE_INFO_COLLECTION = 2;
+    public static final int PHASE_PREPARE_WORKERS = 3;
+    // openCamera() to onOpened()
+    public static final int PHASE_OPEN_CAMERA = 4;
+    // createCaptureSession() to onConfigured()
+    public static final int PHASE_CONFIGURE_SESSION = 5;
+    // onConfigured() to the first onCaptureCompleted() of the preview
+    public static final int PHASE_FIRST_CAPTURE_RESULT = 6;
+    // onConfigured() to the first onSurfaceTextureUpdated()
+    public static final int PHASE_FIRST_FRAME = 7;
+    public static final int PHASE_COUNT = 8;
+
+    private static final String[] PHASE_NAMES = {
+            "permissionCheck", "cameraSelection", "infoCollection", "prepareWorkers",
+            "openCamera", "configureSession", "firstCaptureResult", "firstFrame"
+    };
+
+    private final long startNanos;
+    private String cameraId;
+    private final long[] beginNanos = new long[PHASE_COUNT];
+    private final long[] endNanos = new long[PHASE_COUNT];
+
+    StartupTrace(long startNanos) {
+        this.startNanos = startNanos;
+    }
+
+    synchronized void setCameraId(String cameraId) {
+        this.cameraId = cameraId;
+    }
+
+    synchronized void begin(int phase) {
+        beginNanos[phase] = SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * @return {@code true} if the phase has not ended before.
+     */
+    synchronized boolean end(int phase) {
+        if (endNanos[phase] != 0) {
+            return false;
+        }
+        endNanos[phase] = SystemClock.elapsedRealtimeNanos();
+        return true;
+    }
+
+    synchronized boolean isEnded(int phase) {
+        return endNanos[phase] != 0;
+    }
+
+    /**
+     * End one of the last two phases, which run on different threads.
+     *
+     * @return {@code true} for the one call which completes the trace.
+     */
+    synchronized boolean endFinalPhase(int phase) {
+        return end(phase) && endNanos[PHASE_FIRST_CAPTURE_RESULT] != 0 && endNanos[PHASE_FIRST_FRAME] != 0;
+    }
+
+    public synchronized String getCameraId() {
+        return cameraId;
+    }
+
+    public static String getPhaseName(int phase) {
+        return PHASE_NAMES[phase];
+    }
+
+    /**
+     * @return Duration of the phase in nanoseconds, or -1 if it did not complete.
+     */
+    public synchronized long getPhaseNanos(int phase) {
+        if (beginNanos[phase] == 0 || endNanos[phase] == 0) {
+            return -1;
+        }
+        return endNanos[phase] - beginNanos[phase];
+    }
+
+    /**
+     * @return Nanoseconds from the start of the preview to the first frame, or -1 if no frame has
+     * been drawn.
+     */
+    public synchronized long getTotalNanos() {
+        long firstFrame = endNanos[PHASE_FIRST_FRAME];
+        return firstFrame != 0 ? firstFrame - startNanos : -1;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder("StartupTrace{camera=").append(cameraId);
+        for (int phase = 0; phase < PHASE_COUNT; phase++) {
+            builder.append(", ").append(PHASE_NAMES[phase]).append('=')
+                    .append(formatMillis(getPhaseNanos(phase)));
+        }
+        return builder.append(", total=").append(formatMillis(getTotalNanos())).append('}').toString();
+    }
+
+    private static String formatMillis(long nanos) {
+        return nanos < 0 ? "n/a" : String.format(Locale.US, "%.1fms", nanos / 1e6);
+    }
+}
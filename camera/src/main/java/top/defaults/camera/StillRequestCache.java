@@ -0,0 +1,87 @@
+package top.defaults.camera;
+
+import android.graphics.Rect;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CaptureRequest;
+
+/**
+ * Still capture requests of the current session, built ahead of the press. A builder comes from
+ * the camera service once per session, which is the costly part, then only the settings which
+ * changed since it was last used are set on it again.
+ *
+ * Only used on the camera thread.
+ */
+class StillRequestCache {
+
+    interface Factory {
+
+        /**
+         * @param keepPreview Whether the request feeds the preview too, for bursts and continuous
+         *                    shooting.
+         * @return A builder with its targets and the settings which don't change in a session.
+         */
+        CaptureRequest.Builder create(boolean keepPreview) throws CameraAccessException;
+    }
+
+    private final Factory factory;
+    // the single picture request and the one keeping the preview
+    private final Entry[] entries = new Entry[2];
+
+    StillRequestCache(Factory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * @return The builder with the given settings, built on a miss. Its tag is left to the caller.
+     */
+    CaptureRequest.Builder get(boolean keepPreview, int flash, int afMode, Rect cropRegion, int orientation)
+            throws CameraAccessException {
+        int index = keepPreview ? 1 : 0;
+        Entry entry = entries[index];
+        if (entry == null) {
+            entry = new Entry(factory.create(keepPreview));
+            entries[index] = entry;
+        }
+        entry.update(flash, afMode, cropRegion, orientation);
+        return entry.builder;
+    }
+
+    /**
+     * Forget the builders, whose targets are gone with the session.
+     */
+    void clear() {
+        entries[0] = null;
+        entries[1] = null;
+    }
+
+    private static class Entry {
+        final CaptureRequest.Builder builder;
+        int flash = -1;
+        int afMode = -1;
+        Rect cropRegion;
+        int orientation = -1;
+
+        Entry(CaptureRequest.Builder builder) {
+            this.builder = builder;
+        }
+
+        void update(int flash, int afMode, Rect cropRegion, int orientation) {
+            if (this.flash != flash) {
+                Camera2Photographer.applyFlash(builder, flash);
+                this.flash = flash;
+            }
+            if (this.afMode != afMode) {
+                builder.set(CaptureRequest.CONTROL_AF_MODE, afMode);
+                this.afMode = afMode;
+            }
+            if (cropRegion == null ? this.cropRegion != null : !cropRegion.equals(this.cropRegion)) {
+                builder.set(CaptureRequest.SCALER_CROP_REGION, cropRegion);
+                this.cropRegion = cropRegion;
+            }
+            if (this.orientation != orientation) {
+                builder.set(CaptureRequest.JPEG_ORIENTATION, orientation);
+                this.orientation = orientation;
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package top.defaults.camera;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+
+import java.io.IOException;
+
+/**
+ * Writes every picture to a content {@link Uri}, e.g. one inserted into the MediaStore.
+ */
+public class UriCaptureSink extends OutputStreamCaptureSink {
+
+    public UriCaptureSink(Context context, UriProvider uriProvider) {
+        this(context.getApplicationContext().getContentResolver(), uriProvider);
+    }
+
+    private UriCaptureSink(ContentResolver contentResolver, UriProvider uriProvider) {
+        super(buffer -> {
+            Uri uri = uriProvider.uriFor(buffer);
+            if (uri == null) {
+                return null;
+            }
+            return contentResolver.openOutputStream(uri);
+        });
+    }
+
+    public interface UriProvider {
+
+        /**
+         * @param buffer The picture to be written.
+         * @return The uri to write the picture to, or {@code null} to skip it.
+         */
+        Uri uriFor(CaptureBuffer buffer) throws IOException;
+    }
+}
@@ -131,6 +131,13 @@ public class Utils {
         return getFilePath(".jpg");
     }
 
+    /**
+     * Images of a burst share the same timestamp, so they are told apart by their index.
+     */
+    static String getImageFilePath(long timestamp, int index) throws IOException {
+        return getFilePath(timestamp, "_" + index + ".jpg");
+    }
+
     static String getVideoFilePath() throws IOException {
         return getFilePath(".mp4");
     }
@@ -141,7 +148,15 @@ public class Utils {
         Utils.fileDir = fileDir;
     }
 
+    static File getFileDir() {
+        return new File(fileDir);
+    }
+
     private static String getFilePath(String fileSuffix) throws IOException {
+        return getFilePath(System.currentTimeMillis(), fileSuffix);
+    }
+
+    private static String getFilePath(long timestamp, String fileSuffix) throws IOException {
         final File dir = new File(fileDir);
         if (!dir.exists()) {
             boolean result = dir.mkdirs();
@@ -149,7 +164,7 @@ public class Utils {
                 throw new IOException(Utils.exceptionMessage(Error.ERROR_STORAGE, "Unable to create folder"));
             }
         }
-        return dir.getAbsolutePath() + "/" + System.currentTimeMillis() + fileSuffix;
+        return dir.getAbsolutePath() + "/" + timestamp + fileSuffix;
     }
 
     static boolean checkFloatEqual(float a, float b) {
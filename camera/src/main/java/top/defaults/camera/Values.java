@@ -16,4 +16,21 @@ public interface Values {
 
     int FACING_BACK = 0;
     int FACING_FRONT = 1;
+
+    int MAX_BURST_SIZE = 10;
+
+    int DURABILITY_NONE = 0;
+    int DURABILITY_SYNC_EACH = 1;
+    int DURABILITY_SYNC_BATCHED = 2;
+
+    int BACKPRESSURE_THROTTLE = 0;
+    int BACKPRESSURE_ERROR = 1;
+
+    int ANALYSIS_KEEP_LATEST = 0;
+    int ANALYSIS_BLOCK = 1;
+
+    int MAX_PRE_ROLL_SECONDS = 10;
+
+    int VIDEO_ENCODER_MEDIA_RECORDER = 0;
+    int VIDEO_ENCODER_MEDIA_CODEC = 1;
 }
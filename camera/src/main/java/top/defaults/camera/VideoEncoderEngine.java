@@ -0,0 +1,63 @@
+package top.defaults.camera;
+
+import android.support.annotation.Nullable;
+import android.view.Surface;
+
+import java.io.IOException;
+
+/**
+ * Encodes the frames the camera renders into its surface and writes them to video files, driven
+ * by a {@link RecordingController} on the camera thread.
+ */
+interface VideoEncoderEngine {
+
+    /**
+     * @return {@code true} if the surface of {@link #prepare} stays valid across recordings, so it
+     * can be added to the preview session once and the session is kept when recording starts.
+     * Otherwise every recording is prepared on its own and needs a session of its own.
+     */
+    boolean hasPersistentSurface();
+
+    /**
+     * @param filePath        The file of the next recording, {@code null} for engines with a
+     *                        persistent surface, which get it from {@link #start}.
+     * @param orientationHint Clockwise rotation of the video in degrees, same as for the file.
+     * @return The surface the camera renders into.
+     */
+    Surface prepare(@Nullable String filePath, int orientationHint) throws IOException;
+
+    void start(String filePath, int orientationHint) throws IOException;
+
+    boolean canPause();
+
+    void pause();
+
+    void resume();
+
+    /**
+     * Finish the recording, which is reported to the listener, at once or later.
+     */
+    void stop();
+
+    /**
+     * Finish the recording if any, then free the encoder. The engine cannot be used again.
+     */
+    void release();
+
+    void setListener(Listener listener);
+
+    interface Listener {
+
+        /**
+         * @param filePath The recorded file, or {@code null} if nothing was recorded.
+         * @param error    Why the recording failed or was cut short, or {@code null}.
+         */
+        void onRecordingFinished(@Nullable String filePath, @Nullable Error error);
+
+        /**
+         * The encoder is gone, the surface is no longer valid and the engine needs to be prepared
+         * again.
+         */
+        void onEngineError(Error error);
+    }
+}
@@ -0,0 +1,83 @@
+package top.defaults.camera;
+
+import java.util.Locale;
+
+/**
+ * Immutable snapshot of the statistics about writing captured pictures to storage.
+ */
+public class WriteStats {
+
+    private final int queueDepth;
+    private final int maxQueueDepth;
+    private final int queueCapacity;
+    private final long completedWrites;
+    private final long droppedWrites;
+    private final long averageWaitNanos;
+    private final long averageWriteNanos;
+    private final long maxWriteNanos;
+
+    WriteStats(int queueDepth, int maxQueueDepth, int queueCapacity, long completedWrites,
+               long droppedWrites, long averageWaitNanos, long averageWriteNanos, long maxWriteNanos) {
+        this.queueDepth = queueDepth;
+        this.maxQueueDepth = maxQueueDepth;
+        this.queueCapacity = queueCapacity;
+        this.completedWrites = completedWrites;
+        this.droppedWrites = droppedWrites;
+        this.averageWaitNanos = averageWaitNanos;
+        this.averageWriteNanos = averageWriteNanos;
+        this.maxWriteNanos = maxWriteNanos;
+    }
+
+    /**
+     * @return Number of pictures waiting for or being written right now.
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return The highest queue depth seen so far.
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getCompletedWrites() {
+        return completedWrites;
+    }
+
+    /**
+     * @return Number of pictures dropped (and reported) because the queue was full, only happens
+     * with {@link Values#BACKPRESSURE_ERROR}.
+     */
+    public long getDroppedWrites() {
+        return droppedWrites;
+    }
+
+    /**
+     * @return Average time a picture spent in the queue before being written.
+     */
+    public long getAverageWaitNanos() {
+        return averageWaitNanos;
+    }
+
+    public long getAverageWriteNanos() {
+        return averageWriteNanos;
+    }
+
+    public long getMaxWriteNanos() {
+        return maxWriteNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "queue %d/%d (max %d), written %d, dropped %d, "
+                        + "wait avg %.1fms, write avg %.1fms max %.1fms",
+                queueDepth, queueCapacity, maxQueueDepth, completedWrites, droppedWrites,
+                averageWaitNanos / 1e6, averageWriteNanos / 1e6, maxWriteNanos / 1e6);
+    }
+}
@@ -0,0 +1,253 @@
+package top.defaults.camera;
+
+import android.graphics.Rect;
+import android.media.Image;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts {@link android.graphics.ImageFormat#YUV_420_888} frames, of any row and pixel strides,
+ * to NV21, I420, ARGB_8888 and grayscale. Output goes to buffers supplied by the caller, and the
+ * row buffers a converter needs are kept for the next frame, so converting a stream of frames of
+ * the same size allocates nothing.
+ *
+ * A converter is not thread safe, use one per thread.
+ */
+public class YuvConverter {
+
+    // BT.601 full range (JFIF) coefficients in 16.16 fixed point
+    private static final int V_TO_R = 91881;
+    private static final int U_TO_G = 22554;
+    private static final int V_TO_G = 46802;
+    private static final int U_TO_B = 116130;
+
+    private ByteBuffer yBuffer;
+    private ByteBuffer uBuffer;
+    private ByteBuffer vBuffer;
+    private int yRowStride;
+    private int uvRowStride;
+    private int uvPixelStride;
+    private int sourceWidth;
+    private int sourceHeight;
+    private int cropLeft;
+    private int cropTop;
+    private int width;
+    private int height;
+
+    private byte[] uRow = new byte[0];
+    private byte[] vRow = new byte[0];
+    private byte[] yRow = new byte[0];
+
+    /**
+     * Convert {@code image} from now on, with its crop rect if any.
+     */
+    public YuvConverter setSource(Image image) {
+        Image.Plane[] planes = image.getPlanes();
+        setSource(planes[0].getBuffer(), planes[0].getRowStride(),
+                planes[1].getBuffer(), planes[2].getBuffer(),
+                planes[1].getRowStride(), planes[1].getPixelStride(),
+                image.getWidth(), image.getHeight());
+        Rect crop = image.getCropRect();
+        if (crop != null && !crop.isEmpty()) {
+            setCrop(crop.left, crop.top, crop.width(), crop.height());
+        }
+        return this;
+    }
+
+    /**
+     * Convert the given planes from now on. U and V planes share their strides, as they do in
+     * {@link android.graphics.ImageFormat#YUV_420_888}. The buffers are read from index 0 whatever
+     * their positions are.
+     */
+    public YuvConverter setSource(ByteBuffer y, int yRowStride, ByteBuffer u, ByteBuffer v,
+                                  int uvRowStride, int uvPixelStride, int width, int height) {
+        if (width <= 0 || height <= 0 || yRowStride < width || uvPixelStride < 1
+                || uvRowStride < ((width + 1) / 2 - 1) * uvPixelStride + 1) {
+            throw new IllegalArgumentException("Invalid planes of " + width + "x" + height);
+        }
+        yBuffer = y;
+        uBuffer = u;
+        vBuffer = v;
+        this.yRowStride = yRowStride;
+        this.uvRowStride = uvRowStride;
+        this.uvPixelStride = uvPixelStride;
+        sourceWidth = width;
+        sourceHeight = height;
+        cropLeft = 0;
+        cropTop = 0;
+        this.width = width;
+        this.height = height;
+        return this;
+    }
+
+    /**
+     * Convert a part of the source only, in source coordinates. Left and top are rounded down to
+     * even numbers, so the chroma samples stay aligned with the luma ones.
+     */
+    public YuvConverter setCrop(int left, int top, int width, int height) {
+        left &= ~1;
+        top &= ~1;
+        if (left < 0 || top < 0 || width <= 0 || height <= 0
+                || left + width > sourceWidth || top + height > sourceHeight) {
+            throw new IllegalArgumentException("Crop out of the source: " + left + ", " + top + ", "
+                    + width + "x" + height);
+        }
+        cropLeft = left;
+        cropTop = top;
+        this.width = width;
+        this.height = height;
+        return this;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return Bytes needed for an NV21 or I420 frame of the given size.
+     */
+    public static int getYuv420Size(int width, int height) {
+        return width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+    }
+
+    /**
+     * @return Bytes written, {@link #getYuv420Size(int, int)} of the current width and height.
+     */
+    public int toNv21(byte[] output) {
+        int size = getYuv420Size(width, height);
+        checkOutput(output.length, size);
+        int offset = copyLuma(output);
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        for (int row = 0; row < chromaHeight; row++) {
+            readChromaRows(row, chromaWidth);
+            for (int i = 0, uv = 0; i < chromaWidth; i++, uv += uvPixelStride) {
+                output[offset++] = vRow[uv];
+                output[offset++] = uRow[uv];
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return Bytes written, {@link #getYuv420Size(int, int)} of the current width and height.
+     */
+    public int toI420(byte[] output) {
+        int size = getYuv420Size(width, height);
+        checkOutput(output.length, size);
+        int uOffset = copyLuma(output);
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        int vOffset = uOffset + chromaWidth * chromaHeight;
+        for (int row = 0; row < chromaHeight; row++) {
+            if (uvPixelStride == 1) {
+                // planar already, copy whole rows
+                readRow(uBuffer, chromaRowIndex(row), output, uOffset, chromaWidth);
+                readRow(vBuffer, chromaRowIndex(row), output, vOffset, chromaWidth);
+                uOffset += chromaWidth;
+                vOffset += chromaWidth;
+                continue;
+            }
+            readChromaRows(row, chromaWidth);
+            for (int i = 0, uv = 0; i < chromaWidth; i++, uv += uvPixelStride) {
+                output[uOffset++] = uRow[uv];
+                output[vOffset++] = vRow[uv];
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return Bytes written, the current width times height.
+     */
+    public int toGray(byte[] output) {
+        checkOutput(output.length, width * height);
+        return copyLuma(output);
+    }
+
+    /**
+     * @param output Receives {@code 0xAARRGGBB} pixels, as {@link android.graphics.Bitmap#setPixels}
+     *               expects them.
+     * @return Pixels written, the current width times height.
+     */
+    public int toArgb(int[] output) {
+        int size = width * height;
+        checkOutput(output.length, size);
+        if (yRow.length < width) {
+            yRow = new byte[width];
+        }
+        int chromaWidth = (width + 1) / 2;
+        int offset = 0;
+        for (int row = 0; row < height; row++) {
+            readRow(yBuffer, (cropTop + row) * yRowStride + cropLeft, yRow, 0, width);
+            if ((row & 1) == 0) {
+                readChromaRows(row >> 1, chromaWidth);
+            }
+            for (int column = 0; column < width; column++) {
+                int uv = (column >> 1) * uvPixelStride;
+                int y = (yRow[column] & 0xff) << 16;
+                int u = (uRow[uv] & 0xff) - 128;
+                int v = (vRow[uv] & 0xff) - 128;
+                int r = clamp((y + V_TO_R * v) >> 16);
+                int g = clamp((y - U_TO_G * u - V_TO_G * v) >> 16);
+                int b = clamp((y + U_TO_B * u) >> 16);
+                output[offset++] = 0xff000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+        return size;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : value > 255 ? 255 : value;
+    }
+
+    private static void checkOutput(int length, int required) {
+        if (length < required) {
+            throw new IllegalArgumentException("Output too small: " + length + " < " + required);
+        }
+    }
+
+    private int copyLuma(byte[] output) {
+        int offset = 0;
+        if (yRowStride == width && cropLeft == 0) {
+            readRow(yBuffer, cropTop * yRowStride, output, 0, width * height);
+            return width * height;
+        }
+        for (int row = 0; row < height; row++) {
+            readRow(yBuffer, (cropTop + row) * yRowStride + cropLeft, output, offset, width);
+            offset += width;
+        }
+        return offset;
+    }
+
+    private int chromaRowIndex(int row) {
+        return ((cropTop >> 1) + row) * uvRowStride + (cropLeft >> 1) * uvPixelStride;
+    }
+
+    private void readChromaRows(int row, int chromaWidth) {
+        // the last pixel of a row may be the last byte of the plane, no full pixel stride after it
+        int length = (chromaWidth - 1) * uvPixelStride + 1;
+        if (uRow.length < length) {
+            uRow = new byte[length];
+            vRow = new byte[length];
+        }
+        int index = chromaRowIndex(row);
+        readRow(uBuffer, index, uRow, 0, length);
+        readRow(vBuffer, index, vRow, 0, length);
+    }
+
+    private static void readRow(ByteBuffer buffer, int index, byte[] output, int offset, int length) {
+        if (buffer.hasArray()) {
+            System.arraycopy(buffer.array(), buffer.arrayOffset() + index, output, offset, length);
+            return;
+        }
+        int position = buffer.position();
+        buffer.position(index);
+        buffer.get(output, offset, length);
+        buffer.position(position);
+    }
+}
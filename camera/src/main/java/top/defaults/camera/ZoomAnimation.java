@@ -0,0 +1,54 @@
+package top.defaults.camera;
+
+import android.support.annotation.Nullable;
+import android.view.animation.Interpolator;
+
+/**
+ * A zoom ramp timed by the sensor timestamps of the preview frames, so it keeps to the frames the
+ * camera actually captures. Zoom levels are interpolated geometrically, which makes equal times
+ * look like equal changes of zoom.
+ *
+ * Only used on the camera thread.
+ */
+class ZoomAnimation {
+
+    private final float fromZoom;
+    private final float toZoom;
+    private final long durationNanos;
+    private final Interpolator interpolator;
+    private long startTimestamp = -1;
+    private boolean isFinished;
+
+    /**
+     * @param interpolator Linear if {@code null}.
+     */
+    ZoomAnimation(float fromZoom, float toZoom, long durationNanos, @Nullable Interpolator interpolator) {
+        this.fromZoom = fromZoom;
+        this.toZoom = toZoom;
+        this.durationNanos = durationNanos;
+        this.interpolator = interpolator;
+    }
+
+    /**
+     * @param timestamp The sensor timestamp of a frame, the first one starts the animation.
+     * @return The zoom for the next frames.
+     */
+    float zoomAt(long timestamp) {
+        if (startTimestamp < 0) {
+            startTimestamp = timestamp;
+        }
+        float fraction = durationNanos > 0 ? (float) (timestamp - startTimestamp) / durationNanos : 1.f;
+        if (fraction >= 1.f) {
+            isFinished = true;
+            return toZoom;
+        }
+        if (interpolator != null) {
+            fraction = interpolator.getInterpolation(Math.max(0.f, fraction));
+        }
+        return (float) (fromZoom * Math.pow(toZoom / fromZoom, fraction));
+    }
+
+    boolean isFinished() {
+        return isFinished;
+    }
+}
@@ -0,0 +1,121 @@
+package top.defaults.camera;
+
+/**
+ * The zoom of a photographer: its level, the crop region selected for it and the scale factors of
+ * a pinch waiting for the camera thread. The crop regions come from a {@link ZoomTable} and the
+ * level is sent to the listeners unboxed, so a pinch allocates nothing.
+ *
+ * Called on the camera thread, except {@link #getZoom()} and {@link #addScale(float)}.
+ *
+ * @param <T> The crop region type, {@link android.graphics.Rect} for the camera.
+ */
+class ZoomState<T> {
+
+    private final EventBus eventBus;
+    private volatile float zoom = 1.f;
+    private volatile float maxZoom = 2.f;
+    private ZoomTable<T> table;
+    // the crop region of the preview, which the still requests share
+    private T cropRegion;
+
+    // scale factors of a pinch waiting for the camera thread, guarded by scaleLock
+    private final Object scaleLock = new Object();
+    private float pendingScale = 1.f;
+    private boolean isScalePending;
+
+    ZoomState(EventBus eventBus) {
+        this.eventBus = eventBus;
+    }
+
+    /**
+     * @param table The crop regions of the camera, {@code null} if it reports no active array.
+     */
+    void setCamera(float maxZoom, ZoomTable<T> table) {
+        this.maxZoom = maxZoom;
+        this.table = table;
+    }
+
+    float getZoom() {
+        return zoom;
+    }
+
+    float clamp(float zoom) {
+        return Math.max(1.f, Math.min(maxZoom, zoom));
+    }
+
+    /**
+     * Set the zoom without telling anyone, when there is no preview to apply it to.
+     */
+    void set(float zoom) {
+        this.zoom = clamp(zoom);
+    }
+
+    /**
+     * Set the zoom and send it to the listeners if it changed.
+     *
+     * @return Whether another crop region is selected.
+     */
+    boolean update(float newZoom) {
+        newZoom = clamp(newZoom);
+        if (Math.abs(zoom - newZoom) < 0.001) {
+            return false;
+        }
+        zoom = newZoom;
+        eventBus.onZoomChanged(newZoom);
+        T formerCropRegion = cropRegion;
+        return updateCropRegion() != formerCropRegion;
+    }
+
+    /**
+     * @return The crop region of the current zoom, shared by the table so never modify it.
+     */
+    T updateCropRegion() {
+        cropRegion = table != null ? table.cropFor(zoom) : null;
+        return cropRegion;
+    }
+
+    T getCropRegion() {
+        return cropRegion;
+    }
+
+    /**
+     * Merge a scale factor of a pinch into the pending one.
+     *
+     * @return Whether {@link #applyPendingScale()} must be scheduled, it is not yet.
+     */
+    boolean addScale(float scaleFactor) {
+        synchronized (scaleLock) {
+            pendingScale *= scaleFactor;
+            if (isScalePending) {
+                return false;
+            }
+            isScalePending = true;
+            return true;
+        }
+    }
+
+    private float takePendingScale() {
+        synchronized (scaleLock) {
+            float scale = pendingScale;
+            pendingScale = 1.f;
+            isScalePending = false;
+            return scale;
+        }
+    }
+
+    /**
+     * Zoom by the scale factors merged so far.
+     *
+     * @return Whether another crop region is selected.
+     */
+    boolean applyPendingScale() {
+        return update(zoom * takePendingScale());
+    }
+
+    /**
+     * Drop the scale factors merged so far, when there is no preview to apply them to.
+     */
+    void clearPendingScale() {
+        takePendingScale();
+    }
+}
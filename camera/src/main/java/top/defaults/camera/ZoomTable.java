@@ -0,0 +1,58 @@
+package top.defaults.camera;
+
+/**
+ * The crop regions of a camera for zoom levels from 1 to its max zoom, in steps of 1/100, created
+ * once so zooming allocates nothing. The crop regions are shared, never modify them.
+ *
+ * @param <T> The crop region type, {@link android.graphics.Rect} for the camera.
+ */
+class ZoomTable<T> {
+
+    static final int STEPS_PER_ZOOM = 100;
+
+    interface CropFactory<T> {
+        T create(int left, int top, int right, int bottom);
+    }
+
+    private final float maxZoom;
+    private final Object[] crops;
+
+    ZoomTable(int left, int top, int right, int bottom, float maxZoom, CropFactory<T> factory) {
+        this.maxZoom = Math.max(1.f, maxZoom);
+        int count = (int) Math.floor((this.maxZoom - 1.f) * STEPS_PER_ZOOM + 1e-3) + 1;
+        crops = new Object[count];
+        int width = right - left;
+        int height = bottom - top;
+        for (int i = 0; i < count; i++) {
+            float zoom = 1.f + (float) i / STEPS_PER_ZOOM;
+            int xOffset = (int) (((1 - 1 / zoom) / 2) * width);
+            int yOffset = (int) (((1 - 1 / zoom) / 2) * height);
+            crops[i] = factory.create(left + xOffset, top + yOffset, right - xOffset, bottom - yOffset);
+        }
+    }
+
+    float getMaxZoom() {
+        return maxZoom;
+    }
+
+    int size() {
+        return crops.length;
+    }
+
+    /**
+     * @return The index of the step nearest to {@code zoom}, which is clamped to the table.
+     */
+    int indexOf(float zoom) {
+        int index = Math.round((zoom - 1.f) * STEPS_PER_ZOOM);
+        return index < 0 ? 0 : index >= crops.length ? crops.length - 1 : index;
+    }
+
+    @SuppressWarnings("unchecked")
+    T cropAt(int index) {
+        return (T) crops[index];
+    }
+
+    T cropFor(float zoom) {
+        return cropAt(indexOf(zoom));
+    }
+}
@@ -0,0 +1,76 @@
+package top.defaults.camera;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * The memory {@link ZslImageSaver} converts and encodes pictures in, reused from one picture to
+ * the next, so zero shutter lag pictures allocate nothing once the first ones are taken.
+ *
+ * Thread-safe, the savers take and give back buffers from their own threads.
+ */
+class ZslBuffers {
+
+    // one slot for each saver thread, the others are left to the garbage collector
+    private static final int MAX_RETAINED = 2;
+
+    private final ArrayDeque<Slot> free = new ArrayDeque<>(MAX_RETAINED);
+
+    /**
+     * The buffers of one picture, owned by a single saver until given back.
+     */
+    static final class Slot {
+        private byte[] nv21 = new byte[0];
+        final JpegOutputStream jpeg = new JpegOutputStream();
+
+        /**
+         * @return An array of at least {@code size} bytes, its content is undefined.
+         */
+        byte[] nv21(int size) {
+            if (nv21.length < size) {
+                nv21 = new byte[size];
+            }
+            return nv21;
+        }
+    }
+
+    /**
+     * A {@link ByteArrayOutputStream} whose data is read in place rather than copied.
+     */
+    static final class JpegOutputStream extends ByteArrayOutputStream {
+
+        void ensureCapacity(int capacity) {
+            if (buf.length < capacity) {
+                buf = Arrays.copyOf(buf, capacity);
+            }
+        }
+
+        /**
+         * @return A view of the data written so far, valid until the stream is written or reset.
+         */
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    synchronized Slot acquire() {
+        Slot slot = free.poll();
+        return slot != null ? slot : new Slot();
+    }
+
+    synchronized void release(Slot slot) {
+        slot.jpeg.reset();
+        if (free.size() < MAX_RETAINED) {
+            free.push(slot);
+        }
+    }
+
+    /**
+     * Drops the buffers not in use, when no more zero shutter lag pictures are coming.
+     */
+    synchronized void clear() {
+        free.clear();
+    }
+}
@@ -0,0 +1,122 @@
+package top.defaults.camera;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.media.Image;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Encodes a zero shutter lag frame of the {@link ZslRing} to JPEG, then hands it over like
+ * {@link ImageSaver} does. The frame is given back to the ring as soon as it is converted, before
+ * the slow part of the encoding. The picture is converted and encoded in {@link ZslBuffers}, the
+ * encoded data is handed over in place and the buffers given back once every sink released it.
+ */
+class ZslImageSaver extends ImageSaver {
+
+    private static final int JPEG_QUALITY = 95;
+
+    private final ZslRing.Frame frame;
+    private final int orientation;
+    private final ZslBuffers buffers;
+
+    /**
+     * @param orientation Clockwise rotation of the picture in degrees, written to its EXIF.
+     */
+    ZslImageSaver(ZslRing.Frame frame, int orientation, ZslBuffers buffers, Shot shot,
+                  List<CaptureSink> sinks, Callback callback) {
+        // createBuffer() releases the frame once converted, releasing it again is a no-op
+        super(frame.image, frame::release, shot, sinks, callback);
+        this.frame = frame;
+        this.orientation = orientation;
+        this.buffers = buffers;
+    }
+
+    @Override
+    CaptureBuffer createBuffer(Image image, String filePath, CaptureMetadata metadata) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long timestamp = image.getTimestamp();
+        ZslBuffers.Slot slot = buffers.acquire();
+        boolean isHandedOver = false;
+        try {
+            byte[] nv21;
+            int size;
+            try {
+                YuvConverter converter = new YuvConverter().setSource(image);
+                width = converter.getWidth();
+                height = converter.getHeight();
+                size = YuvConverter.getYuv420Size(width, height);
+                nv21 = slot.nv21(size);
+                converter.toNv21(nv21);
+            } finally {
+                frame.release();
+            }
+
+            // YuvImage writes no EXIF, put a segment holding the orientation right after the SOI
+            ZslBuffers.JpegOutputStream output = slot.jpeg;
+            output.ensureCapacity(size / 4);
+            output.write(0xff);
+            output.write(0xd8);
+            writeOrientation(output, orientation);
+            YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, width, height, null);
+            if (!yuvImage.compressToJpeg(new Rect(0, 0, width, height), JPEG_QUALITY, new SkipOutputStream(output, 2))) {
+                throw new IOException("Unable to encode the picture");
+            }
+            CaptureBuffer buffer = new CaptureBuffer(output.toByteBuffer(), width, height, timestamp,
+                    filePath, metadata, () -> buffers.release(slot));
+            isHandedOver = true;
+            return buffer;
+        } finally {
+            if (!isHandedOver) {
+                buffers.release(slot);
+            }
+        }
+    }
+
+    private static void writeOrientation(OutputStream output, int degrees) throws IOException {
+        int value;
+        switch (degrees) {
+            case 90: value = 6; break;
+            case 180: value = 3; break;
+            case 270: value = 8; break;
+            default: value = 1; break;
+        }
+        ExifEditor exif = new ExifEditor();
+        exif.setShort(ExifEditor.IFD_0, ExifEditor.TAG_ORIENTATION, value);
+        output.write(JpegSegmentSplicer.segment(JpegSegmentSplicer.EXIF_HEADER, exif.toTiff()));
+    }
+
+    /**
+     * Drops the first bytes written to it, the SOI marker of the encoded picture here.
+     */
+    private static class SkipOutputStream extends FilterOutputStream {
+        private int remaining;
+
+        SkipOutputStream(OutputStream out, int count) {
+            super(out);
+            remaining = count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (remaining > 0) {
+                remaining--;
+                return;
+            }
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int skipped = Math.min(remaining, len);
+            remaining -= skipped;
+            out.write(b, off + skipped, len - skipped);
+        }
+    }
+}
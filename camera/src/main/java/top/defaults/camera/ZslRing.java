@@ -0,0 +1,224 @@
+package top.defaults.camera;
+
+import android.graphics.ImageFormat;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.view.Surface;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the last few frames of a full resolution {@link ImageFormat#YUV_420_888} output fed by
+ * the preview request, for zero shutter lag pictures. Every frame is matched by its sensor
+ * timestamp to the {@link TotalCaptureResult} of its capture, so the frame taken for a picture
+ * can be a focused one.
+ *
+ * Runs on the camera thread, except {@link Frame#release()}.
+ */
+class ZslRing {
+
+    private static final int CAPACITY = 3;
+    // frames taken out of the ring and still being encoded
+    private static final int MAX_TAKEN = 2;
+    // results arrive apart from the frames, a few more than the ring holds are kept to match them
+    private static final int RESULT_HISTORY = CAPACITY * 4;
+    // a focused frame is preferred to the closest one if it is not much farther from the press
+    private static final long FOCUS_SLACK_NANOS = 100000000L;
+
+    private final Handler cameraHandler;
+    private final Frame[] frames = new Frame[CAPACITY];
+    private int frameCount;
+    private final long[] resultTimestamps = new long[RESULT_HISTORY];
+    private final boolean[] resultFocused = new boolean[RESULT_HISTORY];
+    private int nextResult;
+    private Stream stream;
+
+    ZslRing(Handler cameraHandler) {
+        this.cameraHandler = cameraHandler;
+    }
+
+    Surface open(Size size) {
+        close();
+        ImageReader imageReader = ImageReader.newInstance(size.getWidth(), size.getHeight(),
+                ImageFormat.YUV_420_888, CAPACITY + MAX_TAKEN);
+        stream = new Stream(imageReader);
+        imageReader.setOnImageAvailableListener(reader -> drain(), cameraHandler);
+        return imageReader.getSurface();
+    }
+
+    /**
+     * Drop the frames, the reader is closed as soon as the taken frames are released.
+     */
+    void close() {
+        for (int i = 0; i < frameCount; i++) {
+            frames[i].image.close();
+            frames[i] = null;
+        }
+        frameCount = 0;
+        for (int i = 0; i < RESULT_HISTORY; i++) {
+            resultTimestamps[i] = 0;
+        }
+        if (stream == null) {
+            return;
+        }
+        stream.imageReader.setOnImageAvailableListener(null, null);
+        stream.isClosing = true;
+        stream.closeIfIdle();
+        stream = null;
+    }
+
+    void onCaptureResult(TotalCaptureResult result) {
+        if (stream == null) {
+            return;
+        }
+        Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+        if (timestamp == null) {
+            return;
+        }
+        Integer afMode = result.get(CaptureResult.CONTROL_AF_MODE);
+        Integer afState = result.get(CaptureResult.CONTROL_AF_STATE);
+        boolean isFocused = (afMode != null && afMode == CaptureResult.CONTROL_AF_MODE_OFF)
+                || (afState != null && (afState == CaptureResult.CONTROL_AF_STATE_PASSIVE_FOCUSED
+                || afState == CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED));
+        resultTimestamps[nextResult] = timestamp;
+        resultFocused[nextResult] = isFocused;
+        nextResult = (nextResult + 1) % RESULT_HISTORY;
+    }
+
+    /**
+     * Take the frame closest to {@code pressNanos} out of the ring, or a focused one captured
+     * shortly before or after it.
+     *
+     * @param pressNanos        {@link SystemClock#elapsedRealtimeNanos()} when the picture was asked for.
+     * @param isRealtimeSensor  Whether the sensor timestamps share the clock of {@code pressNanos},
+     *                          if not the frames are compared by the time they arrived.
+     * @return The frame, which must be released, or {@code null} if the ring is empty.
+     */
+    Frame take(long pressNanos, boolean isRealtimeSensor) {
+        int closest = -1;
+        long closestDistance = Long.MAX_VALUE;
+        for (int i = 0; i < frameCount; i++) {
+            long distance = Math.abs(frames[i].getTime(isRealtimeSensor) - pressNanos);
+            if (distance < closestDistance) {
+                closest = i;
+                closestDistance = distance;
+            }
+        }
+        if (closest < 0) {
+            return null;
+        }
+
+        int chosen = closest;
+        if (!isFocused(frames[closest].image.getTimestamp())) {
+            long chosenDistance = Long.MAX_VALUE;
+            for (int i = 0; i < frameCount; i++) {
+                long distance = Math.abs(frames[i].getTime(isRealtimeSensor) - pressNanos);
+                if (distance <= closestDistance + FOCUS_SLACK_NANOS && distance < chosenDistance
+                        && isFocused(frames[i].image.getTimestamp())) {
+                    chosen = i;
+                    chosenDistance = distance;
+                }
+            }
+        }
+
+        Frame frame = frames[chosen];
+        removeFrame(chosen);
+        frame.stream.openImages.incrementAndGet();
+        frame.isTaken = true;
+        return frame;
+    }
+
+    private boolean isFocused(long timestamp) {
+        for (int i = 0; i < RESULT_HISTORY; i++) {
+            if (resultTimestamps[i] == timestamp) {
+                return resultFocused[i];
+            }
+        }
+        // the result has not arrived yet or is too old
+        return false;
+    }
+
+    private void drain() {
+        Stream stream = this.stream;
+        while (stream != null && stream == this.stream) {
+            Image image;
+            try {
+                image = stream.imageReader.acquireNextImage();
+            } catch (IllegalStateException e) {
+                // the reader is full of kept and taken frames, make room by dropping the oldest
+                if (frameCount == 0) {
+                    return;
+                }
+                frames[0].image.close();
+                removeFrame(0);
+                continue;
+            }
+            if (image == null) {
+                return;
+            }
+            if (frameCount == CAPACITY) {
+                frames[0].image.close();
+                removeFrame(0);
+            }
+            frames[frameCount++] = new Frame(image, SystemClock.elapsedRealtimeNanos(), stream);
+        }
+    }
+
+    private void removeFrame(int index) {
+        System.arraycopy(frames, index + 1, frames, index, frameCount - index - 1);
+        frames[--frameCount] = null;
+    }
+
+    final class Frame {
+        final Image image;
+        final long arrivalNanos;
+        private final Stream stream;
+        private boolean isTaken;
+
+        private Frame(Image image, long arrivalNanos, Stream stream) {
+            this.image = image;
+            this.arrivalNanos = arrivalNanos;
+            this.stream = stream;
+        }
+
+        private long getTime(boolean isRealtimeSensor) {
+            return isRealtimeSensor ? image.getTimestamp() : arrivalNanos;
+        }
+
+        /**
+         * Give a taken frame back to the reader, can be called from any thread.
+         */
+        void release() {
+            if (!isTaken) {
+                return;
+            }
+            isTaken = false;
+            image.close();
+            stream.openImages.decrementAndGet();
+            cameraHandler.post(stream::closeIfIdle);
+        }
+    }
+
+    private static class Stream {
+        final ImageReader imageReader;
+        final AtomicInteger openImages = new AtomicInteger();
+        // only touched on the camera thread
+        boolean isClosing;
+        boolean isClosed;
+
+        Stream(ImageReader imageReader) {
+            this.imageReader = imageReader;
+        }
+
+        void closeIfIdle() {
+            if (isClosing && !isClosed && openImages.get() == 0) {
+                imageReader.close();
+                isClosed = true;
+            }
+        }
+    }
+}
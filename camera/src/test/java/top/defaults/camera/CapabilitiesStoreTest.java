@@ -0,0 +1,97 @@
+package top.defaults.camera;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class CapabilitiesStoreTest {
+
+    private static final String FINGERPRINT = "vendor/device/device:9/PQ1A/1:user/release-keys";
+
+    private File directory;
+    private File file;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("capabilities").toFile();
+        file = new File(directory, "camera_capabilities.bin");
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static List<CameraCapabilities> cameras() {
+        List<CameraCapabilities> cameras = new ArrayList<>();
+        cameras.add(new CameraCapabilities("0", 1, 1, 90, 1, true, 0, 0, 4032, 3024, 8.f, true, 1, true,
+                Arrays.asList(new Size(1920, 1080), new Size(1280, 720)),
+                Arrays.asList(new Size(4032, 3024), new Size(1920, 1080)),
+                Collections.singletonList(new Size(1920, 1080)),
+                Arrays.asList(new Size(1280, 720), new Size(640, 480))));
+        // a camera with no stream configurations nor active array
+        cameras.add(new CameraCapabilities("1", 0, 2, 270, 0, false, 0, 0, 0, 0, 1.f, false, 0, false,
+                Collections.<Size>emptyList(), Collections.<Size>emptyList(),
+                Collections.<Size>emptyList(), Collections.<Size>emptyList()));
+        return cameras;
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        List<CameraCapabilities> cameras = cameras();
+        new CapabilitiesStore(file, FINGERPRINT).write(cameras);
+
+        Map<String, CameraCapabilities> stored = new CapabilitiesStore(file, FINGERPRINT).read();
+        assertNotNull(stored);
+        assertEquals(Arrays.asList("0", "1"), new ArrayList<>(stored.keySet()));
+        assertEquals(cameras.get(0), stored.get("0"));
+        assertEquals(cameras.get(1), stored.get("1"));
+        // written again over the former file
+        new CapabilitiesStore(file, FINGERPRINT).write(cameras.subList(1, 2));
+        assertEquals(Collections.singletonList("1"),
+                new ArrayList<>(new CapabilitiesStore(file, FINGERPRINT).read().keySet()));
+    }
+
+    @Test
+    public void staleFingerprintIsRejected() throws IOException {
+        new CapabilitiesStore(file, FINGERPRINT).write(cameras());
+
+        assertNull(new CapabilitiesStore(file, FINGERPRINT + ".1").read());
+        assertNull(new CapabilitiesStore(file, null).read());
+    }
+
+    @Test
+    public void brokenFileIsIgnored() throws IOException {
+        assertNull(new CapabilitiesStore(file, FINGERPRINT).read());
+
+        new CapabilitiesStore(file, FINGERPRINT).write(cameras());
+        byte[] data = Files.readAllBytes(file.toPath());
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(data, 0, data.length / 2);
+        } finally {
+            output.close();
+        }
+        assertNull(new CapabilitiesStore(file, FINGERPRINT).read());
+    }
+}
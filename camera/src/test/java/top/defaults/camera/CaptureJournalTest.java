@@ -0,0 +1,154 @@
+package top.defaults.camera;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CaptureJournalTest {
+
+    private static final byte[] JPEG = {(byte) 0xff, (byte) 0xd8, 1, 2, 3, 4, (byte) 0xff, (byte) 0xd9};
+    private static final byte[] TRUNCATED = {(byte) 0xff, (byte) 0xd8, 1, 2, 3};
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("journal").toFile();
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private File file(String name) {
+        return new File(directory, name);
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(data);
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Saves a picture the way {@link FileCaptureSink} does, stopping where a crash would.
+     */
+    private static void save(CaptureJournal journal, File target, byte[] data, boolean commit) throws IOException {
+        File temp = CaptureJournal.tempFileFor(target);
+        journal.pending(target);
+        write(temp, data);
+        if (commit) {
+            journal.commit(temp, target, false);
+        }
+    }
+
+    @Test
+    public void savedPictureIsRenamed() throws IOException {
+        CaptureJournal journal = new CaptureJournal(directory, "session");
+        File target = file("1.jpg");
+        save(journal, target, JPEG, true);
+        assertTrue(target.exists());
+        assertFalse(CaptureJournal.tempFileFor(target).exists());
+        assertArrayEquals(JPEG, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    public void crashedSessionIsRecovered() throws IOException {
+        CaptureJournal crashed = new CaptureJournal(directory, "crashed");
+        // complete but not renamed yet
+        save(crashed, file("1.jpg"), JPEG, false);
+        // cut short
+        save(crashed, file("2.jpg"), TRUNCATED, false);
+        // saved, never reported
+        save(crashed, file("3.jpg"), JPEG, true);
+        // saved and reported
+        save(crashed, file("4.jpg"), JPEG, true);
+        crashed.delivered(file("4.jpg").getPath());
+
+        CaptureJournal journal = new CaptureJournal(directory, "next");
+        List<String> undelivered = journal.recover();
+        Collections.sort(undelivered);
+
+        assertEquals(2, undelivered.size());
+        assertEquals(file("1.jpg").getPath(), undelivered.get(0));
+        assertEquals(file("3.jpg").getPath(), undelivered.get(1));
+        assertTrue(file("1.jpg").exists());
+        assertFalse(CaptureJournal.tempFileFor(file("1.jpg")).exists());
+        assertFalse(file("2.jpg").exists());
+        assertFalse(CaptureJournal.tempFileFor(file("2.jpg")).exists());
+
+        // announced until marked delivered
+        assertEquals(undelivered.size(), new CaptureJournal(directory, "another").recover().size());
+        for (String filePath : undelivered) {
+            journal.delivered(filePath);
+        }
+        assertTrue(new CaptureJournal(directory, "last").recover().isEmpty());
+    }
+
+    @Test
+    public void runningSessionIsLeftAlone() throws IOException {
+        CaptureJournal journal = new CaptureJournal(directory, "session");
+        File target = file("1.jpg");
+        File temp = CaptureJournal.tempFileFor(target);
+        // being written right now
+        journal.pending(target);
+        write(temp, TRUNCATED);
+
+        assertTrue(journal.recover().isEmpty());
+        assertTrue(temp.exists());
+
+        // the compacted journal still knows the picture
+        write(temp, JPEG);
+        journal.commit(temp, target, false);
+        assertEquals(1, new CaptureJournal(directory, "next").recover().size());
+    }
+
+    @Test
+    public void paddedPictureIsComplete() throws IOException {
+        File padded = file("padded.jpg");
+        byte[] data = new byte[JPEG.length + 100];
+        System.arraycopy(JPEG, 0, data, 0, JPEG.length);
+        write(padded, data);
+        assertTrue(CaptureJournal.isCompleteJpeg(padded));
+
+        File truncated = file("truncated.jpg");
+        write(truncated, TRUNCATED);
+        assertFalse(CaptureJournal.isCompleteJpeg(truncated));
+    }
+
+    @Test
+    public void damagedLinesAreSkipped() throws IOException {
+        CaptureJournal crashed = new CaptureJournal(directory, "crashed");
+        save(crashed, file("1.jpg"), JPEG, true);
+        FileOutputStream output = new FileOutputStream(file(CaptureJournal.JOURNAL_NAME), true);
+        try {
+            // a line the crash cut short
+            output.write("C cras".getBytes("UTF-8"));
+        } finally {
+            output.close();
+        }
+        assertEquals(1, new CaptureJournal(directory, "next").recover().size());
+    }
+}
@@ -0,0 +1,96 @@
+package top.defaults.camera;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class CaptureMatcherTest {
+
+    private final List<String> events = new ArrayList<>();
+
+    private final CaptureMatcher<String, String> matcher = new CaptureMatcher<>(2,
+            new CaptureMatcher.Listener<String, String>() {
+                @Override
+                public void onMatched(String shot, String image) {
+                    events.add(shot + "=" + image);
+                }
+
+                @Override
+                public void onImageDropped(String image) {
+                    events.add("closed " + image);
+                }
+
+                @Override
+                public void onShotDropped(String shot) {
+                    events.add("failed " + shot);
+                }
+            });
+
+    @Test
+    public void shotBeforeImage() {
+        matcher.addShot(100, "shot1");
+        matcher.addShot(200, "shot2");
+        matcher.addImage(100, "image1");
+        matcher.addImage(200, "image2");
+        assertEquals("[shot1=image1, shot2=image2]", events.toString());
+        assertEquals(0, matcher.getPendingShotCount());
+    }
+
+    @Test
+    public void imageBeforeShot() {
+        matcher.addImage(100, "image1");
+        assertEquals(1, matcher.getPendingImageCount());
+        matcher.addShot(100, "shot1");
+        assertEquals("[shot1=image1]", events.toString());
+        assertEquals(0, matcher.getPendingImageCount());
+    }
+
+    @Test
+    public void imagesOutOfOrder() {
+        // a burst whose pictures are encoded faster than they are captured
+        matcher.addShot(100, "shot1");
+        matcher.addShot(200, "shot2");
+        matcher.addShot(300, "shot3");
+        matcher.addImage(300, "image3");
+        matcher.addImage(100, "image1");
+        matcher.addImage(200, "image2");
+        assertEquals("[shot3=image3, shot1=image1, shot2=image2]", events.toString());
+    }
+
+    @Test
+    public void failedCaptureDropsItsShot() {
+        matcher.addShot(100, "shot1");
+        matcher.addShot(200, "shot2");
+        matcher.removeShot(100);
+        matcher.addImage(200, "image2");
+        assertEquals("[failed shot1, shot2=image2]", events.toString());
+        // nothing left for an unknown timestamp
+        matcher.removeShot(300);
+        assertEquals(2, events.size());
+    }
+
+    @Test
+    public void oldestUnmatchedImageIsClosed() {
+        matcher.addImage(300, "image3");
+        matcher.addImage(100, "image1");
+        matcher.addImage(200, "image2");
+        assertEquals("[closed image1]", events.toString());
+        assertEquals(2, matcher.getPendingImageCount());
+    }
+
+    @Test
+    public void clearDropsEverything() {
+        matcher.addShot(100, "shot1");
+        matcher.addImage(200, "image2");
+        matcher.clear();
+        assertEquals("[closed image2, failed shot1]", events.toString());
+        assertEquals(0, matcher.getPendingShotCount());
+        assertEquals(0, matcher.getPendingImageCount());
+        // a late image of a dropped shot is not matched to it
+        matcher.addImage(100, "image1");
+        assertEquals(1, matcher.getPendingImageCount());
+    }
+}
@@ -0,0 +1,236 @@
+package top.defaults.camera;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CommandQueueTest {
+
+    private static final int KEY_ZOOM = 0;
+    private static final int KEY_FLASH = 1;
+
+    /**
+     * Runs what it is given only when told to, like a handler whose thread is busy.
+     */
+    private static class ManualExecutor implements Executor {
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runNext() {
+            tasks.poll().run();
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                runNext();
+            }
+        }
+    }
+
+    @Test
+    public void commandsRunInOrder() {
+        ManualExecutor executor = new ManualExecutor();
+        CommandQueue queue = new CommandQueue(executor, 2);
+        List<Integer> runs = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            int value = i;
+            queue.post(() -> runs.add(value));
+        }
+        // one drain for all of them
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+        assertEquals("[0, 1, 2, 3, 4]", runs.toString());
+    }
+
+    @Test
+    public void keyedCommandsAreCoalesced() {
+        ManualExecutor executor = new ManualExecutor();
+        CommandQueue queue = new CommandQueue(executor, 2);
+        List<String> runs = new ArrayList<>();
+        queue.post(KEY_ZOOM, () -> runs.add("zoom 1"));
+        queue.post(KEY_FLASH, () -> runs.add("flash on"));
+        queue.post(() -> runs.add("takePicture"));
+        queue.post(KEY_ZOOM, () -> runs.add("zoom 2"));
+        queue.post(KEY_ZOOM, () -> runs.add("zoom 3"));
+        executor.runAll();
+        // the latest zoom keeps its place after the commands posted before it
+        assertEquals("[flash on, takePicture, zoom 3]", runs.toString());
+
+        // a key is free again once its command ran
+        queue.post(KEY_ZOOM, () -> runs.add("zoom 4"));
+        executor.runAll();
+        assertEquals("zoom 4", runs.get(runs.size() - 1));
+    }
+
+    @Test
+    public void longQueuesLetOtherWorkIn() {
+        ManualExecutor executor = new ManualExecutor();
+        CommandQueue queue = new CommandQueue(executor, 2);
+        AtomicInteger runs = new AtomicInteger();
+        for (int i = 0; i < 40; i++) {
+            queue.post(runs::incrementAndGet);
+        }
+        executor.runNext();
+        assertTrue(runs.get() < 40);
+        // the rest is run by a drain posted behind the other work
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+        assertEquals(40, runs.get());
+    }
+
+    /**
+     * Stands in for the camera: its state is not thread safe and must only be touched by the
+     * commands, one at a time.
+     */
+    private static class FakeCamera {
+        final AtomicInteger busy = new AtomicInteger();
+        volatile boolean isConfined = true;
+        Thread owner;
+        Object captureSession;
+        float zoom;
+        int zoomUpdates;
+        int pictures;
+        int missedPictures;
+        final int[] lastSequence;
+
+        FakeCamera(int threads) {
+            lastSequence = new int[threads];
+            for (int i = 0; i < threads; i++) {
+                lastSequence[i] = -1;
+            }
+        }
+
+        void enter() {
+            if (busy.incrementAndGet() != 1) {
+                isConfined = false;
+            }
+            if (owner == null) {
+                owner = Thread.currentThread();
+            } else if (owner != Thread.currentThread()) {
+                isConfined = false;
+            }
+        }
+
+        void exit() {
+            busy.decrementAndGet();
+        }
+
+        void command(int thread, int sequence, Runnable body) {
+            enter();
+            try {
+                if (sequence <= lastSequence[thread]) {
+                    isConfined = false;
+                }
+                lastSequence[thread] = sequence;
+                body.run();
+            } finally {
+                exit();
+            }
+        }
+
+        void startPreview() {
+            captureSession = new Object();
+        }
+
+        void stopPreview() {
+            captureSession = null;
+        }
+
+        void takePicture() {
+            // what crashed when a picture raced with stopPreview(): checked and used in one go
+            if (captureSession == null) {
+                missedPictures++;
+                return;
+            }
+            captureSession.hashCode();
+            pictures++;
+        }
+
+        void setZoom(float zoom) {
+            this.zoom = zoom;
+            zoomUpdates++;
+        }
+    }
+
+    @Test
+    public void stress() throws Exception {
+        int threads = 8;
+        int callsPerThread = 20000;
+        ExecutorService cameraThread = Executors.newSingleThreadExecutor();
+        CommandQueue queue = new CommandQueue(cameraThread, 2);
+        FakeCamera camera = new FakeCamera(threads);
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> callers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread caller = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < callsPerThread; i++) {
+                    int sequence = i;
+                    switch (i % 4) {
+                        case 0:
+                            queue.post(() -> camera.command(thread, sequence, camera::startPreview));
+                            break;
+                        case 1:
+                            queue.post(() -> camera.command(thread, sequence, camera::takePicture));
+                            break;
+                        case 2:
+                            queue.post(() -> camera.command(thread, sequence, camera::stopPreview));
+                            break;
+                        default:
+                            float zoom = 1.f + sequence;
+                            queue.post(KEY_ZOOM, () -> {
+                                camera.enter();
+                                camera.setZoom(zoom);
+                                camera.exit();
+                            });
+                            break;
+                    }
+                }
+            });
+            callers.add(caller);
+            caller.start();
+        }
+        start.countDown();
+        for (Thread caller : callers) {
+            caller.join();
+        }
+        // the last zoom posted wins
+        queue.post(KEY_ZOOM, () -> camera.setZoom(42.f));
+        CountDownLatch done = new CountDownLatch(1);
+        queue.post(done::countDown);
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        cameraThread.shutdown();
+
+        assertTrue(camera.isConfined);
+        assertEquals(threads * callsPerThread / 4, camera.pictures + camera.missedPictures);
+        for (int t = 0; t < threads; t++) {
+            // every command of every thread ran, the last one being its last stopPreview()
+            assertEquals(callsPerThread - 2, camera.lastSequence[t]);
+        }
+        assertEquals(42.f, camera.zoom, 0);
+        assertTrue(camera.zoomUpdates <= threads * callsPerThread / 4 + 1);
+        assertEquals(0, camera.busy.get());
+    }
+}
@@ -0,0 +1,196 @@
+package top.defaults.camera;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JpegSegmentSplicerTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * @param name A fixture: {@code plain.jpg} starts with a JFIF APP0 like encoders write it,
+     *             {@code camera.jpg} with a little endian EXIF holding the make, the orientation,
+     *             an ISO, a maker note, an interoperability directory and a thumbnail.
+     */
+    private static byte[] fixture(String name) throws IOException {
+        InputStream input = JpegSegmentSplicerTest.class.getResourceAsStream(name);
+        assertNotNull(name, input);
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] chunk = new byte[4096];
+            int read;
+            while ((read = input.read(chunk)) != -1) {
+                output.write(chunk, 0, read);
+            }
+            return output.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+    private static byte[] write(byte[] jpeg, CaptureMetadata metadata) throws IOException {
+        CaptureBuffer buffer = new CaptureBuffer(ByteBuffer.wrap(jpeg), 32, 24, 0, "1.jpg", metadata, () -> {});
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        buffer.writeTo(Channels.newChannel(output));
+        buffer.release();
+        return output.toByteArray();
+    }
+
+    private static ExifEditor exifOf(byte[] jpeg) throws IOException {
+        JpegSegmentSplicer splicer = JpegSegmentSplicer.parse(ByteBuffer.wrap(jpeg));
+        assertNotNull(splicer);
+        ByteBuffer exif = splicer.getExif();
+        assertNotNull(exif);
+        return ExifEditor.parse(exif);
+    }
+
+    /**
+     * @return The data from the SOS marker on.
+     */
+    private static byte[] scanOf(byte[] jpeg) {
+        int i = 2;
+        while ((jpeg[i + 1] & 0xff) != 0xda) {
+            i += 2 + ((jpeg[i + 2] & 0xff) << 8 | (jpeg[i + 3] & 0xff));
+        }
+        return Arrays.copyOfRange(jpeg, i, jpeg.length);
+    }
+
+    /**
+     * @return The number of APP1 segments whose payload starts with {@code header}.
+     */
+    private static int countApp1(byte[] jpeg, byte[] header) {
+        int count = 0;
+        int i = 2;
+        while (i < jpeg.length - 3 && (jpeg[i + 1] & 0xff) != 0xda) {
+            int length = (jpeg[i + 2] & 0xff) << 8 | (jpeg[i + 3] & 0xff);
+            if ((jpeg[i + 1] & 0xff) == 0xe1 && length - 2 >= header.length
+                    && Arrays.equals(header, Arrays.copyOfRange(jpeg, i + 4, i + 4 + header.length))) {
+                count++;
+            }
+            i += 2 + length;
+        }
+        return count;
+    }
+
+    private static void assertSamePixels(byte[] expected, byte[] actual) throws IOException {
+        BufferedImage expectedImage = ImageIO.read(new ByteArrayInputStream(expected));
+        BufferedImage actualImage = ImageIO.read(new ByteArrayInputStream(actual));
+        assertEquals(expectedImage.getWidth(), actualImage.getWidth());
+        assertEquals(expectedImage.getHeight(), actualImage.getHeight());
+        for (int y = 0; y < expectedImage.getHeight(); y++) {
+            for (int x = 0; x < expectedImage.getWidth(); x++) {
+                assertEquals(expectedImage.getRGB(x, y), actualImage.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void metadataIsStampedIntoPlainPicture() throws IOException {
+        byte[] plain = fixture("plain.jpg");
+        CaptureMetadata metadata = new CaptureMetadata()
+                .setLocation(48.858370, -2.294481)
+                .setAltitude(-12.5)
+                .put(CaptureMetadata.KEY_DEVICE_ID, "device-42")
+                .put(CaptureMetadata.KEY_JOB_ID, "job <\"7\"> & more");
+        byte[] output = write(plain, metadata);
+
+        // the JFIF APP0 stays first
+        assertEquals(0xe0, output[3] & 0xff);
+        assertArrayEquals(Arrays.copyOfRange(plain, 0, 20), Arrays.copyOfRange(output, 0, 20));
+        assertArrayEquals(scanOf(plain), scanOf(output));
+        assertSamePixels(plain, output);
+
+        ExifEditor exif = exifOf(output);
+        assertEquals("N", exif.getAscii(ExifEditor.IFD_GPS, ExifEditor.TAG_GPS_LATITUDE_REF));
+        assertEquals(48, exif.getRational(ExifEditor.IFD_GPS, ExifEditor.TAG_GPS_LATITUDE, 0), 0);
+        assertEquals(51, exif.getRational(ExifEditor.IFD_GPS, ExifEditor.TAG_GPS_LATITUDE, 1), 0);
+        assertEquals(30.132, exif.getRational(ExifEditor.IFD_GPS, ExifEditor.TAG_GPS_LATITUDE, 2), 1e-9);
+        assertEquals("W", exif.getAscii(ExifEditor.IFD_GPS, ExifEditor.TAG_GPS_LONGITUDE_REF));
+        assertEquals(12.5, exif.getRational(ExifEditor.IFD_GPS, ExifEditor.TAG_GPS_ALTITUDE, 0), 0);
+        assertEquals("device-42", exif.getAscii(ExifEditor.IFD_EXIF, ExifEditor.TAG_BODY_SERIAL_NUMBER));
+
+        assertEquals(1, countApp1(output, JpegSegmentSplicer.XMP_HEADER));
+        String packet = new String(output, UTF_8);
+        assertTrue(packet.contains("tdc:DeviceId=\"device-42\""));
+        assertTrue(packet.contains("tdc:JobId=\"job &lt;&quot;7&quot;&gt; &amp; more\""));
+    }
+
+    @Test
+    public void cameraExifIsCompleted() throws IOException {
+        byte[] camera = fixture("camera.jpg");
+        ExifEditor original = exifOf(camera);
+        CaptureMetadata metadata = new CaptureMetadata()
+                .setLocation(-33.856784, 151.215297)
+                .setExposureTime(8333333)
+                .setIso(400);
+        byte[] output = write(camera, metadata);
+
+        assertArrayEquals(scanOf(camera), scanOf(output));
+        assertSamePixels(camera, output);
+        assertEquals(1, countApp1(output, JpegSegmentSplicer.EXIF_HEADER));
+
+        ExifEditor exif = exifOf(output);
+        assertEquals("TestCam", exif.getAscii(ExifEditor.IFD_0, 0x010f));
+        assertEquals(6, exif.getInt(ExifEditor.IFD_0, ExifEditor.TAG_ORIENTATION));
+        assertEquals("R98", exif.getAscii(ExifEditor.IFD_INTEROP, 0x0001));
+        assertTrue(exif.has(ExifEditor.IFD_EXIF, 0x927c));
+        assertArrayEquals(original.getThumbnail(), exif.getThumbnail());
+        // set ones win over the camera's
+        assertEquals(400, exif.getInt(ExifEditor.IFD_EXIF, ExifEditor.TAG_ISO));
+        assertEquals(1 / 120.0, exif.getRational(ExifEditor.IFD_EXIF, ExifEditor.TAG_EXPOSURE_TIME, 0), 1e-5);
+        assertEquals("S", exif.getAscii(ExifEditor.IFD_GPS, ExifEditor.TAG_GPS_LATITUDE_REF));
+        assertEquals("E", exif.getAscii(ExifEditor.IFD_GPS, ExifEditor.TAG_GPS_LONGITUDE_REF));
+        // no properties, no XMP
+        assertEquals(0, countApp1(output, JpegSegmentSplicer.XMP_HEADER));
+    }
+
+    @Test
+    public void metadataIsReplaced() throws IOException {
+        byte[] first = write(fixture("camera.jpg"), new CaptureMetadata()
+                .put(CaptureMetadata.KEY_DEVICE_ID, "first")
+                .put(CaptureMetadata.KEY_JOB_ID, "first"));
+        byte[] second = write(first, new CaptureMetadata()
+                .put(CaptureMetadata.KEY_DEVICE_ID, "second"));
+
+        assertEquals(1, countApp1(second, JpegSegmentSplicer.EXIF_HEADER));
+        assertEquals(1, countApp1(second, JpegSegmentSplicer.XMP_HEADER));
+        assertEquals("second", exifOf(second).getAscii(ExifEditor.IFD_EXIF, ExifEditor.TAG_BODY_SERIAL_NUMBER));
+        String packet = new String(second, UTF_8);
+        assertTrue(packet.contains("tdc:DeviceId=\"second\""));
+        assertTrue(!packet.contains("JobId"));
+    }
+
+    @Test
+    public void pictureIsCopiedAsIsWithoutMetadata() throws IOException {
+        byte[] camera = fixture("camera.jpg");
+        assertArrayEquals(camera, write(camera, null));
+        // nothing to stamp in, the segments are only moved around
+        assertArrayEquals(camera, write(camera, new CaptureMetadata()));
+
+        byte[] garbage = {1, 2, 3, 4, 5, 6, 7, 8};
+        assertNull(JpegSegmentSplicer.parse(ByteBuffer.wrap(garbage)));
+        assertArrayEquals(garbage, write(garbage, new CaptureMetadata().put("Key", "value")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void propertyNamesAreChecked() {
+        new CaptureMetadata().put("not a name", "value");
+    }
+}
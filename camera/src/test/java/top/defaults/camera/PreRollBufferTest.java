@@ -0,0 +1,218 @@
+package top.defaults.camera;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PreRollBufferTest {
+
+    private static final long FRAME_US = 33333;
+
+    /**
+     * Synthetic encoder output: a key frame every {@code gop} frames, each sample filled with its
+     * frame number so it can be told apart after draining.
+     */
+    private static class Encoder {
+        final int gop;
+        final int frameSize;
+        int frame;
+
+        Encoder(int gop, int frameSize) {
+            this.gop = gop;
+            this.frameSize = frameSize;
+        }
+
+        boolean feed(PreRollBuffer buffer) {
+            return feed(buffer, frameSize);
+        }
+
+        boolean feed(PreRollBuffer buffer, int size) {
+            byte[] sample = new byte[size];
+            Arrays.fill(sample, (byte) frame);
+            int flags = frame % gop == 0 ? PreRollBuffer.FLAG_KEY_FRAME : 0;
+            boolean added = buffer.add(ByteBuffer.wrap(sample), frame * FRAME_US, flags);
+            frame++;
+            return added;
+        }
+
+        void feedFrames(PreRollBuffer buffer, int frames) {
+            for (int i = 0; i < frames; i++) {
+                feed(buffer);
+            }
+        }
+    }
+
+    private static class Sample {
+        final byte[] data;
+        final long timeUs;
+        final int flags;
+
+        Sample(ByteBuffer buffer, long timeUs, int flags) {
+            data = new byte[buffer.remaining()];
+            buffer.get(data);
+            this.timeUs = timeUs;
+            this.flags = flags;
+        }
+
+        int frame() {
+            return (int) (timeUs / FRAME_US);
+        }
+    }
+
+    private static List<Sample> drain(PreRollBuffer buffer) throws IOException {
+        List<Sample> samples = new ArrayList<>();
+        buffer.drainTo((sample, timeUs, flags) -> samples.add(new Sample(sample, timeUs, flags)));
+        return samples;
+    }
+
+    private static void assertFrames(List<Sample> samples, int firstFrame, int lastFrame) {
+        assertEquals(lastFrame - firstFrame + 1, samples.size());
+        for (int i = 0; i < samples.size(); i++) {
+            Sample sample = samples.get(i);
+            assertEquals(firstFrame + i, sample.frame());
+            for (byte b : sample.data) {
+                assertEquals((byte) sample.frame(), b);
+            }
+        }
+        assertTrue((samples.get(0).flags & PreRollBuffer.FLAG_KEY_FRAME) != 0);
+    }
+
+    @Test
+    public void dropsSamplesBeforeTheFirstKeyFrame() throws IOException {
+        PreRollBuffer buffer = new PreRollBuffer(10000, 10000000, 100);
+        Encoder encoder = new Encoder(5, 10);
+        encoder.frame = 3;
+        assertFalse(encoder.feed(buffer));
+        assertFalse(encoder.feed(buffer));
+        assertTrue(encoder.feed(buffer));
+        encoder.feedFrames(buffer, 3);
+        assertEquals(4, buffer.getSampleCount());
+        assertEquals(40, buffer.getSize());
+        assertFrames(drain(buffer), 5, 8);
+    }
+
+    @Test
+    public void evictsWholeGopsWhenFull() throws IOException {
+        // room for 25 frames, GOPs of 10
+        PreRollBuffer buffer = new PreRollBuffer(250, 100000000, 100);
+        Encoder encoder = new Encoder(10, 10);
+        encoder.feedFrames(buffer, 26);
+        // frame 25 needs room, frames 0 to 9 go as a whole
+        assertEquals(16, buffer.getSampleCount());
+        assertFrames(drain(buffer), 10, 25);
+    }
+
+    @Test
+    public void keepsTheDuration() throws IOException {
+        // a second of GOPs of 10 frames
+        PreRollBuffer buffer = new PreRollBuffer(100000, 1000000, 1000);
+        Encoder encoder = new Encoder(10, 10);
+        encoder.feedFrames(buffer, 95);
+        // frames 60 to 94 cover 34 frames, 70 to 94 would not cover a second
+        List<Sample> samples = drain(buffer);
+        assertFrames(samples, 60, 94);
+        long covered = samples.get(samples.size() - 1).timeUs - samples.get(0).timeUs;
+        assertTrue(covered >= 1000000);
+    }
+
+    @Test
+    public void samplesWrapAroundTheEnd() throws IOException {
+        PreRollBuffer buffer = new PreRollBuffer(100, 100000000, 100);
+        Encoder encoder = new Encoder(3, 15);
+        for (int i = 0; i < 50; i++) {
+            assertTrue(encoder.feed(buffer));
+            assertTrue(buffer.getSize() <= 100);
+        }
+        List<Sample> samples = drain(buffer);
+        assertFrames(samples, samples.get(0).frame(), 49);
+        assertTrue(samples.size() >= 3);
+    }
+
+    @Test
+    public void sampleSlotsAreBounded() throws IOException {
+        PreRollBuffer buffer = new PreRollBuffer(100000, 100000000, 8);
+        Encoder encoder = new Encoder(4, 1);
+        encoder.feedFrames(buffer, 9);
+        assertEquals(5, buffer.getSampleCount());
+        assertFrames(drain(buffer), 4, 8);
+    }
+
+    @Test
+    public void gopLargerThanTheBufferIsDropped() throws IOException {
+        PreRollBuffer buffer = new PreRollBuffer(100, 100000000, 100);
+        Encoder encoder = new Encoder(20, 10);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(encoder.feed(buffer));
+        }
+        // the 11th frame of the GOP does not fit, nothing of it can be kept
+        assertFalse(encoder.feed(buffer));
+        assertEquals(0, buffer.getSampleCount());
+        for (int i = 11; i < 20; i++) {
+            assertFalse(encoder.feed(buffer));
+        }
+        assertTrue(encoder.feed(buffer));
+        assertFrames(drain(buffer), 20, 20);
+    }
+
+    @Test
+    public void oversizedSampleClearsTheBuffer() {
+        PreRollBuffer buffer = new PreRollBuffer(100, 100000000, 100);
+        Encoder encoder = new Encoder(2, 10);
+        encoder.feedFrames(buffer, 4);
+        assertFalse(encoder.feed(buffer, 101));
+        assertEquals(0, buffer.getSampleCount());
+        assertFalse(encoder.feed(buffer));
+        assertTrue(encoder.feed(buffer));
+    }
+
+    @Test
+    public void drainClearsAndWaitsForAKeyFrame() throws IOException {
+        PreRollBuffer buffer = new PreRollBuffer(1000, 100000000, 100);
+        Encoder encoder = new Encoder(5, 10);
+        encoder.feedFrames(buffer, 7);
+        assertEquals(6 * FRAME_US, buffer.getDurationUs());
+        assertFrames(drain(buffer), 0, 6);
+        assertEquals(0, buffer.getSampleCount());
+        assertEquals(0, buffer.getSize());
+        assertFalse(encoder.feed(buffer));
+        assertFalse(encoder.feed(buffer));
+        assertFalse(encoder.feed(buffer));
+        assertTrue(encoder.feed(buffer));
+        assertFrames(drain(buffer), 10, 10);
+    }
+
+    @Test
+    public void addLeavesTheSamplePosition() {
+        PreRollBuffer buffer = new PreRollBuffer(100, 100000000, 10);
+        ByteBuffer sample = ByteBuffer.wrap(new byte[]{1, 2, 3, 4});
+        sample.position(1);
+        assertTrue(buffer.add(sample, 0, PreRollBuffer.FLAG_KEY_FRAME));
+        assertEquals(1, sample.position());
+        assertEquals(3, buffer.getSize());
+    }
+
+    @Test
+    public void drainedBytesMatch() throws IOException {
+        PreRollBuffer buffer = new PreRollBuffer(100, 100000000, 10);
+        buffer.add(ByteBuffer.wrap(new byte[]{1, 2, 3}), 0, PreRollBuffer.FLAG_KEY_FRAME);
+        buffer.add(ByteBuffer.wrap(new byte[]{4, 5}), 1, 0);
+        List<Sample> samples = drain(buffer);
+        assertArrayEquals(new byte[]{1, 2, 3}, samples.get(0).data);
+        assertArrayEquals(new byte[]{4, 5}, samples.get(1).data);
+        assertEquals(0, samples.get(1).flags);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCapacity() {
+        new PreRollBuffer(0, 1000000, 10);
+    }
+}
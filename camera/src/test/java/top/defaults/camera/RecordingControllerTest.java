@@ -0,0 +1,275 @@
+package top.defaults.camera;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RecordingControllerTest {
+
+    /**
+     * Stands in for an encoder, recording the calls and finishing recordings when told to.
+     */
+    private static class FakeEngine implements VideoEncoderEngine {
+        final boolean isPersistent;
+        boolean canPause = true;
+        boolean finishOnStop = true;
+        IOException startFailure;
+        VideoEncoderEngine.Listener listener;
+        final List<String> calls = new ArrayList<>();
+        String filePath;
+
+        FakeEngine(boolean isPersistent) {
+            this.isPersistent = isPersistent;
+        }
+
+        @Override
+        public boolean hasPersistentSurface() {
+            return isPersistent;
+        }
+
+        @Override
+        public android.view.Surface prepare(String filePath, int orientationHint) {
+            calls.add("prepare");
+            // the surface is opaque to the controller, no need for a real one
+            return null;
+        }
+
+        @Override
+        public void start(String filePath, int orientationHint) throws IOException {
+            calls.add("start");
+            if (startFailure != null) {
+                throw startFailure;
+            }
+            this.filePath = filePath;
+        }
+
+        @Override
+        public boolean canPause() {
+            return canPause;
+        }
+
+        @Override
+        public void pause() {
+            calls.add("pause");
+        }
+
+        @Override
+        public void resume() {
+            calls.add("resume");
+        }
+
+        @Override
+        public void stop() {
+            calls.add("stop");
+            if (finishOnStop) {
+                finish(null);
+            }
+        }
+
+        @Override
+        public void release() {
+            calls.add("release");
+        }
+
+        @Override
+        public void setListener(VideoEncoderEngine.Listener listener) {
+            this.listener = listener;
+        }
+
+        void finish(Error error) {
+            listener.onRecordingFinished(error == null ? filePath : null, error);
+            filePath = null;
+        }
+    }
+
+    private static class Events implements RecordingController.Listener {
+        final List<String> events = new ArrayList<>();
+        final List<Error> errors = new ArrayList<>();
+
+        @Override
+        public void onRecordingStarted() {
+            events.add("started");
+        }
+
+        @Override
+        public void onRecordingFinished(String filePath, boolean isRecorded) {
+            events.add((isRecorded ? "recorded " : "failed ") + filePath);
+        }
+
+        @Override
+        public void onError(Error error) {
+            events.add("error " + error.getCode());
+            errors.add(error);
+        }
+
+        @Override
+        public void onSurfaceLost() {
+            events.add("surface lost");
+        }
+    }
+
+    private final Events events = new Events();
+
+    @Test
+    public void startBeforePrepareIsRejected() {
+        FakeEngine engine = new FakeEngine(true);
+        RecordingController controller = new RecordingController(engine, events);
+        assertFalse(controller.start("a.mp4", 0));
+        assertEquals(RecordingController.STATE_IDLE, controller.getState());
+        assertEquals(1, events.errors.size());
+        assertEquals(Error.ERROR_INVALID_PARAM, events.errors.get(0).getCode());
+        assertTrue(engine.calls.isEmpty());
+    }
+
+    @Test
+    public void persistentEngineIsKeptAcrossRecordings() {
+        FakeEngine engine = new FakeEngine(true);
+        RecordingController controller = new RecordingController(engine, events);
+        controller.getPersistentSurface();
+        controller.getPersistentSurface();
+        assertEquals(RecordingController.STATE_PREPARED, controller.getState());
+
+        assertTrue(controller.start("a.mp4", 90));
+        assertTrue(controller.isRecording());
+        assertTrue(controller.pause());
+        assertEquals(RecordingController.STATE_PAUSED, controller.getState());
+        assertTrue(controller.resume());
+        assertTrue(controller.stop());
+        assertEquals(RecordingController.STATE_PREPARED, controller.getState());
+
+        assertTrue(controller.start("b.mp4", 90));
+        assertTrue(controller.stop());
+
+        assertEquals("[prepare, start, pause, resume, stop, start, stop]", engine.calls.toString());
+        assertEquals("[started, recorded a.mp4, started, recorded b.mp4]", events.events.toString());
+    }
+
+    @Test
+    public void engineWithoutPersistentSurfaceIsPreparedPerRecording() {
+        FakeEngine engine = new FakeEngine(false);
+        RecordingController controller = new RecordingController(engine, events);
+        assertNull(controller.getPersistentSurface());
+        assertEquals(RecordingController.STATE_IDLE, controller.getState());
+
+        controller.prepareRecording("a.mp4", 0);
+        assertEquals(RecordingController.STATE_PREPARED, controller.getState());
+        assertTrue(controller.start("a.mp4", 0));
+        assertTrue(controller.stop());
+        assertEquals(RecordingController.STATE_IDLE, controller.getState());
+        assertFalse(controller.start("b.mp4", 0));
+
+        assertEquals("[prepare, start, stop]", engine.calls.toString());
+        assertEquals("[started, recorded a.mp4, error " + Error.ERROR_INVALID_PARAM + "]", events.events.toString());
+    }
+
+    @Test
+    public void stoppingUntilTheEngineFinishes() {
+        FakeEngine engine = new FakeEngine(true);
+        engine.finishOnStop = false;
+        RecordingController controller = new RecordingController(engine, events);
+        controller.getPersistentSurface();
+        controller.start("a.mp4", 0);
+        assertTrue(controller.stop());
+        assertEquals(RecordingController.STATE_STOPPING, controller.getState());
+        assertTrue(controller.isRecording());
+        assertFalse(controller.stop());
+        assertFalse(controller.start("b.mp4", 0));
+
+        engine.finish(new Error(Error.ERROR_CAMERA, "Nothing was recorded"));
+        assertEquals(RecordingController.STATE_PREPARED, controller.getState());
+        assertEquals("[started, error " + Error.ERROR_INVALID_PARAM + ", error " + Error.ERROR_INVALID_PARAM
+                + ", error " + Error.ERROR_CAMERA + ", failed a.mp4]", events.events.toString());
+    }
+
+    @Test
+    public void failedStartKeepsThePersistentSurface() {
+        FakeEngine engine = new FakeEngine(true);
+        engine.startFailure = new IOException("disk full");
+        RecordingController controller = new RecordingController(engine, events);
+        controller.getPersistentSurface();
+        assertFalse(controller.start("a.mp4", 0));
+        assertEquals(RecordingController.STATE_PREPARED, controller.getState());
+
+        engine.startFailure = null;
+        assertTrue(controller.start("a.mp4", 0));
+        assertEquals("[error " + Error.ERROR_CAMERA + ", started]", events.events.toString());
+    }
+
+    @Test
+    public void failedStartNeedsANewPreparation() {
+        FakeEngine engine = new FakeEngine(false);
+        engine.startFailure = new IOException("disk full");
+        RecordingController controller = new RecordingController(engine, events);
+        controller.prepareRecording("a.mp4", 0);
+        assertFalse(controller.start("a.mp4", 0));
+        assertEquals(RecordingController.STATE_IDLE, controller.getState());
+    }
+
+    @Test
+    public void pauseUnsupported() {
+        FakeEngine engine = new FakeEngine(true);
+        engine.canPause = false;
+        RecordingController controller = new RecordingController(engine, events);
+        controller.getPersistentSurface();
+        controller.start("a.mp4", 0);
+        assertFalse(controller.pause());
+        assertEquals(RecordingController.STATE_RECORDING, controller.getState());
+        assertEquals(Error.ERROR_UNSUPPORTED_OPERATION, events.errors.get(0).getCode());
+        assertFalse(controller.resume());
+        assertFalse(engine.calls.contains("pause"));
+    }
+
+    @Test
+    public void engineErrorWhileRecording() {
+        FakeEngine engine = new FakeEngine(true);
+        RecordingController controller = new RecordingController(engine, events);
+        assertNull(controller.getPersistentSurface());
+        controller.start("a.mp4", 0);
+        controller.pause();
+
+        engine.listener.onEngineError(new Error(Error.ERROR_CAMERA, "Video encoder failed"));
+        assertEquals(RecordingController.STATE_IDLE, controller.getState());
+        assertFalse(controller.isRecording());
+        assertEquals("[started, error " + Error.ERROR_CAMERA + ", failed a.mp4, surface lost]",
+                events.events.toString());
+
+        // the next session prepares the engine again
+        controller.getPersistentSurface();
+        assertEquals(RecordingController.STATE_PREPARED, controller.getState());
+        assertEquals(2, engine.calls.stream().filter("prepare"::equals).count());
+    }
+
+    @Test
+    public void engineErrorWhileIdle() {
+        FakeEngine engine = new FakeEngine(true);
+        RecordingController controller = new RecordingController(engine, events);
+        controller.getPersistentSurface();
+        engine.listener.onEngineError(new Error(Error.ERROR_CAMERA));
+        assertEquals("[error " + Error.ERROR_CAMERA + ", surface lost]", events.events.toString());
+    }
+
+    @Test
+    public void releaseIgnoresLateReports() {
+        FakeEngine engine = new FakeEngine(true);
+        engine.finishOnStop = false;
+        RecordingController controller = new RecordingController(engine, events);
+        controller.getPersistentSurface();
+        controller.start("a.mp4", 0);
+        controller.release();
+        controller.release();
+        assertEquals(RecordingController.STATE_RELEASED, controller.getState());
+        assertNull(controller.getPersistentSurface());
+
+        engine.finish(null);
+        engine.listener.onEngineError(new Error(Error.ERROR_CAMERA));
+        assertEquals("[started]", events.events.toString());
+        assertEquals(1, engine.calls.stream().filter("release"::equals).count());
+    }
+}
@@ -0,0 +1,250 @@
+package top.defaults.camera;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class YuvConverterTest {
+
+    /**
+     * A YUV_420_888 frame laid out like camera HALs do, with padded rows and either planar or
+     * interleaved (pixel stride 2) chroma.
+     */
+    private static class Frame {
+        final int width;
+        final int height;
+        final byte[][] y;
+        final byte[][] u;
+        final byte[][] v;
+        final ByteBuffer yBuffer;
+        final ByteBuffer uBuffer;
+        final ByteBuffer vBuffer;
+        final int yRowStride;
+        final int uvRowStride;
+        final int uvPixelStride;
+
+        Frame(int width, int height, int padding, int uvPixelStride, long seed) {
+            this.width = width;
+            this.height = height;
+            this.uvPixelStride = uvPixelStride;
+            int chromaWidth = (width + 1) / 2;
+            int chromaHeight = (height + 1) / 2;
+            Random random = new Random(seed);
+            y = new byte[height][width];
+            u = new byte[chromaHeight][chromaWidth];
+            v = new byte[chromaHeight][chromaWidth];
+            for (byte[] row : y) random.nextBytes(row);
+            for (byte[] row : u) random.nextBytes(row);
+            for (byte[] row : v) random.nextBytes(row);
+
+            yRowStride = width + padding;
+            yBuffer = ByteBuffer.allocateDirect(yRowStride * (height - 1) + width);
+            for (int row = 0; row < height; row++) {
+                yBuffer.position(row * yRowStride);
+                yBuffer.put(y[row]);
+            }
+            yBuffer.clear();
+
+            uvRowStride = chromaWidth * uvPixelStride + padding;
+            if (uvPixelStride == 1) {
+                int size = uvRowStride * (chromaHeight - 1) + chromaWidth;
+                uBuffer = ByteBuffer.allocateDirect(size);
+                vBuffer = ByteBuffer.allocateDirect(size);
+                for (int row = 0; row < chromaHeight; row++) {
+                    uBuffer.position(row * uvRowStride);
+                    uBuffer.put(u[row]);
+                    vBuffer.position(row * uvRowStride);
+                    vBuffer.put(v[row]);
+                }
+                uBuffer.clear();
+                vBuffer.clear();
+            } else {
+                // U and V interleaved in one buffer, V one byte after U, and each plane ends
+                // right after its last sample
+                ByteBuffer interleaved = ByteBuffer.allocateDirect(uvRowStride * (chromaHeight - 1)
+                        + (chromaWidth - 1) * uvPixelStride + 2);
+                for (int row = 0; row < chromaHeight; row++) {
+                    for (int column = 0; column < chromaWidth; column++) {
+                        int index = row * uvRowStride + column * uvPixelStride;
+                        interleaved.put(index, u[row][column]);
+                        interleaved.put(index + 1, v[row][column]);
+                    }
+                }
+                interleaved.limit(interleaved.capacity() - 1);
+                uBuffer = interleaved.slice();
+                interleaved.clear().position(1);
+                vBuffer = interleaved.slice();
+            }
+        }
+
+        YuvConverter converter() {
+            return new YuvConverter().setSource(yBuffer, yRowStride, uBuffer, vBuffer,
+                    uvRowStride, uvPixelStride, width, height);
+        }
+
+        byte[] expectedNv21(int left, int top, int w, int h) {
+            byte[] expected = new byte[YuvConverter.getYuv420Size(w, h)];
+            int offset = copyLuma(expected, left, top, w, h);
+            for (int row = 0; row < (h + 1) / 2; row++) {
+                for (int column = 0; column < (w + 1) / 2; column++) {
+                    expected[offset++] = v[top / 2 + row][left / 2 + column];
+                    expected[offset++] = u[top / 2 + row][left / 2 + column];
+                }
+            }
+            return expected;
+        }
+
+        byte[] expectedI420(int left, int top, int w, int h) {
+            byte[] expected = new byte[YuvConverter.getYuv420Size(w, h)];
+            int offset = copyLuma(expected, left, top, w, h);
+            int chromaSize = ((w + 1) / 2) * ((h + 1) / 2);
+            for (int row = 0; row < (h + 1) / 2; row++) {
+                for (int column = 0; column < (w + 1) / 2; column++) {
+                    expected[offset] = u[top / 2 + row][left / 2 + column];
+                    expected[offset + chromaSize] = v[top / 2 + row][left / 2 + column];
+                    offset++;
+                }
+            }
+            return expected;
+        }
+
+        int copyLuma(byte[] output, int left, int top, int w, int h) {
+            int offset = 0;
+            for (int row = 0; row < h; row++) {
+                System.arraycopy(y[top + row], left, output, offset, w);
+                offset += w;
+            }
+            return offset;
+        }
+    }
+
+    @Test
+    public void nv21FromInterleavedChroma() {
+        Frame frame = new Frame(64, 48, 16, 2, 1);
+        byte[] output = new byte[YuvConverter.getYuv420Size(64, 48)];
+        assertEquals(output.length, frame.converter().toNv21(output));
+        assertArrayEquals(frame.expectedNv21(0, 0, 64, 48), output);
+    }
+
+    @Test
+    public void nv21FromPlanarChroma() {
+        Frame frame = new Frame(64, 48, 8, 1, 2);
+        byte[] output = new byte[YuvConverter.getYuv420Size(64, 48)];
+        frame.converter().toNv21(output);
+        assertArrayEquals(frame.expectedNv21(0, 0, 64, 48), output);
+    }
+
+    @Test
+    public void i420FromBothLayouts() {
+        for (int pixelStride = 1; pixelStride <= 2; pixelStride++) {
+            Frame frame = new Frame(40, 30, 24, pixelStride, 3);
+            byte[] output = new byte[YuvConverter.getYuv420Size(40, 30)];
+            frame.converter().toI420(output);
+            assertArrayEquals("pixel stride " + pixelStride, frame.expectedI420(0, 0, 40, 30), output);
+        }
+    }
+
+    @Test
+    public void oddSizes() {
+        Frame frame = new Frame(37, 21, 3, 2, 4);
+        byte[] output = new byte[YuvConverter.getYuv420Size(37, 21)];
+        frame.converter().toNv21(output);
+        assertArrayEquals(frame.expectedNv21(0, 0, 37, 21), output);
+        frame.converter().toI420(output);
+        assertArrayEquals(frame.expectedI420(0, 0, 37, 21), output);
+    }
+
+    @Test
+    public void crop() {
+        Frame frame = new Frame(64, 48, 16, 2, 5);
+        YuvConverter converter = frame.converter().setCrop(10, 6, 32, 20);
+        byte[] nv21 = new byte[YuvConverter.getYuv420Size(32, 20)];
+        converter.toNv21(nv21);
+        assertArrayEquals(frame.expectedNv21(10, 6, 32, 20), nv21);
+
+        byte[] gray = new byte[32 * 20];
+        assertEquals(gray.length, converter.toGray(gray));
+        byte[] expected = new byte[32 * 20];
+        frame.copyLuma(expected, 10, 6, 32, 20);
+        assertArrayEquals(expected, gray);
+    }
+
+    @Test
+    public void cropIsAlignedToChroma() {
+        Frame frame = new Frame(64, 48, 0, 2, 6);
+        YuvConverter converter = frame.converter().setCrop(11, 7, 20, 10);
+        byte[] output = new byte[YuvConverter.getYuv420Size(20, 10)];
+        converter.toNv21(output);
+        assertArrayEquals(frame.expectedNv21(10, 6, 20, 10), output);
+    }
+
+    @Test
+    public void grayWithoutPadding() {
+        Frame frame = new Frame(32, 16, 0, 1, 7);
+        byte[] output = new byte[32 * 16];
+        frame.converter().toGray(output);
+        byte[] expected = new byte[32 * 16];
+        frame.copyLuma(expected, 0, 0, 32, 16);
+        assertArrayEquals(expected, output);
+    }
+
+    @Test
+    public void argbMatchesBt601() {
+        Frame frame = new Frame(30, 20, 10, 2, 8);
+        int[] output = new int[30 * 20];
+        assertEquals(output.length, frame.converter().toArgb(output));
+        for (int row = 0; row < 20; row++) {
+            for (int column = 0; column < 30; column++) {
+                int y = frame.y[row][column] & 0xff;
+                int u = (frame.u[row / 2][column / 2] & 0xff) - 128;
+                int v = (frame.v[row / 2][column / 2] & 0xff) - 128;
+                int pixel = output[row * 30 + column];
+                assertEquals(0xff, pixel >>> 24);
+                assertChannel(y + 1.402 * v, (pixel >> 16) & 0xff);
+                assertChannel(y - 0.344136 * u - 0.714136 * v, (pixel >> 8) & 0xff);
+                assertChannel(y + 1.772 * u, pixel & 0xff);
+            }
+        }
+    }
+
+    @Test
+    public void argbOfGrays() {
+        int[] output = new int[2 * 2];
+        ByteBuffer y = ByteBuffer.wrap(new byte[]{0, (byte) 255, (byte) 128, 16});
+        ByteBuffer chroma = ByteBuffer.wrap(new byte[]{(byte) 128});
+        new YuvConverter().setSource(y, 2, chroma, chroma, 1, 1, 2, 2).toArgb(output);
+        assertArrayEquals(new int[]{0xff000000, 0xffffffff, 0xff808080, 0xff101010}, output);
+    }
+
+    @Test
+    public void buffersAreReadFromIndexZero() {
+        Frame frame = new Frame(16, 8, 4, 2, 9);
+        frame.yBuffer.position(5);
+        frame.uBuffer.position(3);
+        byte[] output = new byte[YuvConverter.getYuv420Size(16, 8)];
+        frame.converter().toNv21(output);
+        assertArrayEquals(frame.expectedNv21(0, 0, 16, 8), output);
+        assertEquals(5, frame.yBuffer.position());
+        assertEquals(3, frame.uBuffer.position());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void outputTooSmall() {
+        new Frame(16, 8, 0, 2, 10).converter().toNv21(new byte[16 * 8]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cropOutOfSource() {
+        new Frame(16, 8, 0, 2, 11).converter().setCrop(8, 0, 10, 8);
+    }
+
+    private static void assertChannel(double expected, int actual) {
+        int clamped = (int) Math.max(0, Math.min(255, Math.floor(expected)));
+        assertTrue("expected " + clamped + " but was " + actual, Math.abs(clamped - actual) <= 1);
+    }
+}
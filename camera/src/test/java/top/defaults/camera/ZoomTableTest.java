@@ -0,0 +1,142 @@
+package top.defaults.camera;
+
+import com.sun.management.ThreadMXBean;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ZoomTableTest {
+
+    private static class Crop {
+        final int left;
+        final int top;
+        final int right;
+        final int bottom;
+
+        Crop(int left, int top, int right, int bottom) {
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+        }
+    }
+
+    private static ZoomTable<Crop> table(float maxZoom) {
+        return new ZoomTable<>(0, 0, 4000, 3000, maxZoom, Crop::new);
+    }
+
+    @Test
+    public void stepsFromOneToMaxZoom() {
+        ZoomTable<Crop> table = table(8.f);
+        assertEquals(701, table.size());
+        assertEquals(0, table.indexOf(1.f));
+        assertEquals(100, table.indexOf(2.f));
+        assertEquals(700, table.indexOf(8.f));
+        // rounded to the nearest step
+        assertEquals(1, table.indexOf(1.006f));
+        assertEquals(0, table.indexOf(1.004f));
+    }
+
+    @Test
+    public void zoomIsClamped() {
+        ZoomTable<Crop> table = table(4.f);
+        assertSame(table.cropAt(0), table.cropFor(0.5f));
+        assertSame(table.cropAt(table.size() - 1), table.cropFor(10.f));
+    }
+
+    @Test
+    public void cropsAreCentered() {
+        ZoomTable<Crop> table = table(4.f);
+        Crop full = table.cropFor(1.f);
+        assertEquals(0, full.left);
+        assertEquals(0, full.top);
+        assertEquals(4000, full.right);
+        assertEquals(3000, full.bottom);
+
+        Crop half = table.cropFor(2.f);
+        assertEquals(1000, half.left);
+        assertEquals(750, half.top);
+        assertEquals(3000, half.right);
+        assertEquals(2250, half.bottom);
+    }
+
+    @Test
+    public void cropsAreRelativeToTheActiveArray() {
+        ZoomTable<Crop> table = new ZoomTable<>(16, 8, 4016, 3008, 4.f, Crop::new);
+        Crop half = table.cropFor(2.f);
+        assertEquals(1016, half.left);
+        assertEquals(758, half.top);
+        assertEquals(3016, half.right);
+        assertEquals(2258, half.bottom);
+    }
+
+    @Test
+    public void noZoomSupported() {
+        ZoomTable<Crop> table = table(0.f);
+        assertEquals(1, table.size());
+        assertEquals(1.f, table.getMaxZoom(), 0);
+        assertSame(table.cropAt(0), table.cropFor(3.f));
+    }
+
+    @Test
+    public void pinchAllocatesNothing() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean);
+        ThreadMXBean allocations = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+
+        // the listener is called right away, as if its executor were idle
+        EventBus eventBus = new EventBus(Runnable::run);
+        ZoomListener listener = new ZoomListener();
+        eventBus.subscribe(listener, Runnable::run);
+        ZoomState<Crop> zoom = new ZoomState<>(eventBus);
+        zoom.setCamera(8.f, table(8.f));
+        // warm up, so class loading and compilation don't count
+        pinch(zoom, 20000);
+
+        long threadId = Thread.currentThread().getId();
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        long overhead = allocations.getThreadAllocatedBytes(threadId) - before;
+        // the best of a few rounds, a late compilation may allocate in one of them
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < 5 && allocated > 0; round++) {
+            before = allocations.getThreadAllocatedBytes(threadId);
+            pinch(zoom, 20000);
+            allocated = Math.min(allocated, allocations.getThreadAllocatedBytes(threadId) - before - overhead);
+        }
+
+        assertTrue(listener.events > 0);
+        assertEquals(zoom.getZoom(), listener.zoom, 0);
+        assertEquals(0, allocated);
+    }
+
+    /**
+     * Spreads the fingers for a while then pinches them back, applying the scale factors the way
+     * the camera thread does.
+     */
+    private static void pinch(ZoomState<Crop> zoom, int steps) {
+        for (int i = 0; i < steps; i++) {
+            float scaleFactor = (i / 500) % 2 == 0 ? 1.01f : 1 / 1.01f;
+            if (zoom.addScale(scaleFactor)) {
+                zoom.applyPendingScale();
+            }
+        }
+    }
+
+    private static class ZoomListener extends SimpleOnEventListener {
+        float zoom;
+        int events;
+
+        @Override
+        public void onZoomChanged(float zoom) {
+            this.zoom = zoom;
+            events++;
+        }
+    }
+}